@@ -0,0 +1,136 @@
+package com.xiuyukeji.pictureplayerview;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
+
+import com.xiuyukeji.pictureplayerview.utils.DeltaArchive;
+import com.xiuyukeji.pictureplayerview.utils.ImageUtil;
+
+import java.io.IOException;
+
+/**
+ * 把差量帧的图块画到一张一直保留的图片上，只在读取线程使用
+ * <p>
+ * 每次输出一帧时记录序号和相对的上一帧序号，渲染时两帧连续就只需要重画改变的区域
+ */
+class DeltaComposer {
+
+    private final DeltaArchive mArchive;
+    private final int[] mDirty = new int[4];
+    private final Paint mCopyPaint;
+    private final Rect mCopyRect = new Rect();
+
+    private Bitmap mBitmap;//当前帧的完整图片
+    private int mFrame = -1;//已经画好的帧
+    private long mSerial = -1;//上一次输出的序号
+    private boolean mIsFull;//上一次输出是否需要整张重画
+
+    DeltaComposer(DeltaArchive archive) {
+        this.mArchive = archive;
+        mCopyPaint = new Paint();
+        mCopyPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC));//透明的像素也直接覆盖
+        mCopyPaint.setFilterBitmap(true);//只在缩小时起作用
+    }
+
+    /**
+     * 画到某一帧，可以继续画时只画中间的帧，否则从前面的关键帧开始画
+     *
+     * @param frame 帧序列
+     * @param dirty 返回和上一次输出相比改变的区域
+     * @return 改变的区域是否有效，无效时需要整张重画
+     */
+    boolean compose(int frame, Rect dirty) throws IOException {
+        if (mBitmap == null) {
+            mBitmap = Bitmap.createBitmap(mArchive.getWidth(), mArchive.getHeight(), Bitmap.Config.ARGB_8888);
+        }
+        int keyframe = mArchive.getKeyframe(frame);
+        boolean isContinue = mFrame != -1 && mFrame <= frame && mFrame >= keyframe;
+        int from = isContinue ? mFrame + 1 : keyframe;
+        dirty.setEmpty();
+        for (int i = from; i <= frame; i++) {
+            apply(i);
+            mArchive.getDirty(i, mDirty);
+            if (mDirty[0] < mDirty[2] && mDirty[1] < mDirty[3]) {
+                dirty.union(mDirty[0], mDirty[1], mDirty[2], mDirty[3]);
+            }
+        }
+        mFrame = frame;
+        mIsFull = !isContinue;
+        return isContinue;
+    }
+
+    private void apply(int frame) throws IOException {
+        DeltaArchive.Frame tiles = mArchive.readFrame(frame);
+        int[] pixels = tiles.getPixels();
+        int offset = 0;
+        int count = tiles.getTileCount();
+        for (int i = 0; i < count; i++) {
+            int width = tiles.getWidth(i);
+            int height = tiles.getHeight(i);
+            mBitmap.setPixels(pixels, offset, width, tiles.getLeft(i), tiles.getTop(i), width, height);
+            offset += width * height;
+        }
+    }
+
+    /**
+     * 把当前帧复制到输出的图片上，输出的图片比较小时缩小
+     *
+     * @return 这一次输出的序号
+     */
+    long copyTo(Bitmap bitmap) {
+        Canvas canvas = new Canvas(bitmap);
+        if (bitmap.getWidth() == mBitmap.getWidth() && bitmap.getHeight() == mBitmap.getHeight()) {
+            canvas.drawBitmap(mBitmap, 0, 0, mCopyPaint);
+        } else {
+            mCopyRect.set(0, 0, bitmap.getWidth(), bitmap.getHeight());
+            canvas.drawBitmap(mBitmap, null, mCopyRect, mCopyPaint);
+        }
+        return ++mSerial;
+    }
+
+    /**
+     * 改变的区域换算到缩小后的输出上，过滤会用到周围的像素，多扩大一个像素
+     *
+     * @param width  输出的宽
+     * @param height 输出的高
+     */
+    void scaleDirty(Rect dirty, int width, int height) {
+        if (dirty.isEmpty() || (width == getWidth() && height == getHeight())) {
+            return;
+        }
+        float scaleX = width / (float) getWidth();
+        float scaleY = height / (float) getHeight();
+        dirty.set((int) Math.floor(dirty.left * scaleX) - 1,
+                (int) Math.floor(dirty.top * scaleY) - 1,
+                (int) Math.ceil(dirty.right * scaleX) + 1,
+                (int) Math.ceil(dirty.bottom * scaleY) + 1);
+        if (!dirty.intersect(0, 0, width, height)) {
+            dirty.setEmpty();
+        }
+    }
+
+    /**
+     * 返回上一次输出相对的序号，需要整张重画时返回-1
+     */
+    long getBaseSerial() {
+        return mIsFull ? -1 : mSerial - 1;
+    }
+
+    int getWidth() {
+        return mArchive.getWidth();
+    }
+
+    int getHeight() {
+        return mArchive.getHeight();
+    }
+
+    void release() {
+        ImageUtil.recycleBitmap(mBitmap);
+        mBitmap = null;
+        mFrame = -1;
+    }
+}
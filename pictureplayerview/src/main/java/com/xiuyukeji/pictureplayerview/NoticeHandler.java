@@ -4,6 +4,7 @@ import android.os.Handler;
 import android.os.Message;
 
 import com.xiuyukeji.pictureplayerview.interfaces.OnErrorListener;
+import com.xiuyukeji.pictureplayerview.interfaces.OnSeekCompleteListener;
 import com.xiuyukeji.pictureplayerview.interfaces.OnStopListener;
 import com.xiuyukeji.pictureplayerview.interfaces.OnUpdateListener;
 
@@ -14,10 +15,11 @@ import com.xiuyukeji.pictureplayerview.interfaces.OnUpdateListener;
  */
 class NoticeHandler extends Handler {
 
-    private static final int UPDATE = 0, STOP = 1, ERROR = -1;
+    private static final int UPDATE = 0, STOP = 1, SEEK_COMPLETE = 2, ERROR = -1;
 
     private OnUpdateListener mOnUpdateListener;
     private OnStopListener mOnStopListener;
+    private OnSeekCompleteListener mOnSeekCompleteListener;
     private OnErrorListener mOnErrorListener;
 
     @Override
@@ -32,6 +34,9 @@ class NoticeHandler extends Handler {
             case STOP:
                 ((OnStopListener) object.listener).onStop();
                 break;
+            case SEEK_COMPLETE:
+                ((OnSeekCompleteListener) object.listener).onSeekComplete((int) object.value);
+                break;
             case ERROR:
                 ((OnErrorListener) object.listener).onError((String) object.value);
                 break;
@@ -68,6 +73,20 @@ class NoticeHandler extends Handler {
         this.mOnStopListener = l;
     }
 
+    void noticeSeekComplete(int frame) {
+        if (mOnSeekCompleteListener == null) {
+            return;
+        }
+        Message message = Message.obtain();
+        message.what = SEEK_COMPLETE;
+        message.obj = new HandlerObject(mOnSeekCompleteListener, frame);
+        sendMessage(message);
+    }
+
+    void setOnSeekCompleteListener(OnSeekCompleteListener l) {
+        this.mOnSeekCompleteListener = l;
+    }
+
     void noticeError(String msg) {
         if (mOnErrorListener == null) {
             return;
@@ -1,26 +1,54 @@
 package com.xiuyukeji.pictureplayerview;
 
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.Rect;
+import android.os.Build;
 import android.os.SystemClock;
 import android.support.annotation.IntRange;
 import android.support.annotation.NonNull;
 
 import com.xiuyukeji.pictureplayerview.annotations.PictureSource;
+import com.xiuyukeji.pictureplayerview.annotations.PlayMode;
 import com.xiuyukeji.pictureplayerview.utils.CacheList;
+import com.xiuyukeji.pictureplayerview.utils.DeltaArchive;
+import com.xiuyukeji.pictureplayerview.utils.FrameArchive;
+import com.xiuyukeji.pictureplayerview.utils.FrameIndex;
 import com.xiuyukeji.pictureplayerview.utils.ImageUtil;
+import com.xiuyukeji.pictureplayerview.utils.RawFrameCache;
+import com.xiuyukeji.pictureplayerview.utils.ReadQueue;
+import com.xiuyukeji.scheduler.FrameLatencyHistogram;
+import com.xiuyukeji.scheduler.FrameTimeline;
+import com.xiuyukeji.scheduler.OnAsyncSeekToListener;
 import com.xiuyukeji.scheduler.OnFrameUpdateListener;
-import com.xiuyukeji.scheduler.OnSeekToListener;
 import com.xiuyukeji.scheduler.OnSimpleFrameListener;
 import com.xiuyukeji.scheduler.Scheduler;
 import com.xiuyukeji.scheduler.SchedulerUtil;
 
 import java.io.BufferedInputStream;
+import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static com.xiuyukeji.pictureplayerview.annotations.PictureSource.ARCHIVE_ASSETS;
+import static com.xiuyukeji.pictureplayerview.annotations.PictureSource.ARCHIVE_FILE;
+import static com.xiuyukeji.pictureplayerview.annotations.PictureSource.ASSETS;
 import static com.xiuyukeji.pictureplayerview.annotations.PictureSource.FILE;
+import static com.xiuyukeji.pictureplayerview.annotations.PlayMode.BOUNCE;
+import static com.xiuyukeji.pictureplayerview.annotations.PlayMode.FORWARD;
+import static com.xiuyukeji.pictureplayerview.annotations.PlayMode.REVERSE;
 
 /**
  * 播放实现
@@ -30,33 +58,81 @@ import static com.xiuyukeji.pictureplayerview.annotations.PictureSource.FILE;
 class PicturePlayer {
     public static final int DEFAULT_MAX_CACHE_NUMBER = 12;
 
+    private static final ThreadFactory DECODE_THREAD_FACTORY = new ThreadFactory() {
+        @Override
+        public Thread newThread(@NonNull Runnable r) {
+            return new Thread(r, "picture-decode");
+        }
+    };
+    //每个解码线程一个，和BitmapFactory默认的大小一样，解码时不用每次分配
+    private static final ThreadLocal<byte[]> TEMP_STORAGE = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[16 * 1024];
+        }
+    };
+
     private Context mContext;
 
     private int mSource;//设置来源
-    private final int mCacheFrameNumber;//最大缓存帧数
+    private final int mCacheFrameNumber;//最大缓存帧数，按ARGB_8888计算
     private final int mReusableFrameNumber;//最大复用缓存帧数
+    private volatile int mBudgetScale = 1;//为2时这次播放用RGB_565解码，同样的内存可以缓存两倍的帧
+
+    private volatile int mReadAheadNumber;//需要提前读取的帧数，随播放速度变化
+    private volatile long mReadWakeupStart;//开始播放时读取信号的唤醒次数
+    private volatile long mReadStartMs;
+
+    private final ReadQueue<CacheFrame, DecodeJob> mReadQueue;//解码好的帧和解码中的任务
+    private CacheList<CacheFrame> mReusableBitmaps;//复用池里的图片在被覆盖前仍然保留原来的内容
 
-    private volatile int mReadFrame;
-    private volatile int mSeekToIndex = -1;
+    private int mDecodeThreadCount = 1;
+    private ExecutorService mDecodeExecutor;//解码线程，单线程解码时为null
 
-    private CacheList<Bitmap> mCacheBitmaps;
-    private CacheList<Bitmap> mReusableBitmaps;
+    private final ConcurrentLinkedQueue<int[]> mRanges = new ConcurrentLinkedQueue<>();//还没有交给调度器的片段
+    private volatile boolean mIsRange;//是否分段播放
 
-    private final Object mSeekToLock = new Object();
+    private volatile boolean mIsRestart;//循环播放时由读取线程从第一帧重新开始
+    private boolean mIsWaitRestart;//读取线程读到第一帧后重新开始调度器
 
     private volatile boolean mIsReadCancel;
     private volatile boolean mIsPlayCancel;
     private volatile boolean mIsCancel;
 
+    private boolean mIsVsync;
+    private boolean mIsOpaqueRgb565;
+    private boolean mIsDither;
+    private boolean mIsSharedThread;
+    private boolean mIsLoop;
+    private int mPlayMode = FORWARD;
+    private float mPlaybackRate = 1;
+
     private String[] mPaths;
-    private long mDuration;
+    private FrameArchive mArchive;//打包的来源，和mPaths只有一个
+    private DeltaArchive mDeltaArchive;//差量帧的来源，只能按顺序在一个线程上解码
+    private DeltaComposer mDeltaComposer;
+    private String mArchivePath;
+    private String mFrameIndexPath;//帧信息索引文件，没有时从图片文件头读取
+    private volatile FrameIndex mFrameIndex;//同一个数据源只建立一次
+    private volatile boolean mIsDescriptorUnavailable;//assets被压缩时不能打开文件描述符，只能用流解码
+    private RawFrameCache mRawFrameCache;
+    private RawFrameCache.Sequence mRawFrames;//这次播放使用的像素缓存，只在读取线程更换
+    private volatile DecodePlan mDecodePlan;//按显示大小解码，null时按原图大小解码
+    private FrameTimeline mTimeline;
+    private FrameTimeline mPlayTimeline;//按播放模式排列后的时间轴
     private int mFrameCount;
 
+    private ReadTask mReadTask;
+    private volatile ReadSignal mReadSignal;
     private ReadThread mReadThread;
     private Scheduler mScheduler;
 
     private Renderer mRenderer;
 
+    private long mDrawSerial = -1;//已经合并了改变区域的最后一帧，只在调度线程使用
+    private boolean mIsDrawFull = true;
+    private final Rect mDrawDirty = new Rect();
+
     PicturePlayer(@NonNull Context context,
                   @PictureSource int source,
                   @IntRange(from = 2) int cacheFrameNumber,
@@ -64,41 +140,210 @@ class PicturePlayer {
         this.mContext = context;
         this.mSource = source;
         this.mCacheFrameNumber = cacheFrameNumber;
-        this.mReusableFrameNumber = mCacheFrameNumber;
+        this.mReusableFrameNumber = mCacheFrameNumber * 2;
+        this.mReadAheadNumber = mCacheFrameNumber;
         this.mRenderer = renderer;
 
-        mCacheBitmaps = new CacheList<>(new Bitmap[mCacheFrameNumber],
-                new CacheList.OnRemoveListener<Bitmap>() {
-                    @Override
-                    public void onRemove(boolean isOverflow, Bitmap value) {
-                        mReusableBitmaps.add(value);
-                    }
-                });
-        mReusableBitmaps = new CacheList<>(new Bitmap[mReusableFrameNumber],
-                new CacheList.OnRemoveListener<Bitmap>() {
+        mReadQueue = new ReadQueue<>(mCacheFrameNumber * 2, new ReadListener());//全部是RGB_565时最多两倍
+        mReusableBitmaps = new CacheList<>(new CacheFrame[mReusableFrameNumber],
+                new CacheList.OnRemoveListener<CacheFrame>() {
                     @Override
-                    public void onRemove(boolean isOverflow, Bitmap value) {
+                    public void onRemove(boolean isOverflow, CacheFrame value) {
                         if (isOverflow) {
-                            ImageUtil.recycleBitmap(value);
+                            ImageUtil.recycleBitmap(value.bitmap);
                         }
                     }
                 });
     }
 
-    void setDataSource(String[] paths, long duration, int frameCount) {
+    void setDataSource(String[] paths, FrameTimeline timeline) {
+        if (isArchive()) {
+            throw new RuntimeException("archive source must set the archive path");
+        }
         this.mPaths = paths;
-        this.mDuration = duration;
-        this.mFrameCount = frameCount;
+        this.mIsDescriptorUnavailable = false;
+        this.mArchive = null;
+        this.mDeltaArchive = null;
+        this.mArchivePath = null;
+        this.mTimeline = timeline;
+        this.mFrameIndexPath = null;
+        this.mFrameIndex = null;
+    }
+
+    //打包的文件可以是FrameArchive或者DeltaArchive，通过文件头区分，durations为null时每一帧时长相同
+    void setArchiveDataSource(String path, long duration, long[] durations) throws IOException {
+        ByteBuffer buffer = mapArchive(path);
+        FrameArchive archive = null;
+        DeltaArchive deltaArchive = null;
+        int frameCount;
+        if (DeltaArchive.isDeltaArchive(buffer)) {
+            deltaArchive = DeltaArchive.wrap(buffer);
+            frameCount = deltaArchive.getFrameCount();
+        } else {
+            archive = FrameArchive.wrap(buffer);
+            frameCount = archive.getFrameCount();
+        }
+        if (durations != null && durations.length != frameCount) {
+            throw new RuntimeException("archive and durations must have the same length");
+        }
+        this.mPaths = null;
+        this.mArchive = archive;
+        this.mDeltaArchive = deltaArchive;
+        this.mArchivePath = path;
+        this.mTimeline = durations != null ? FrameTimeline.ofDurations(durations)
+                : FrameTimeline.uniform(duration, frameCount);
+        this.mFrameIndexPath = null;
+        this.mFrameIndex = null;
+    }
+
+    //映射后文件可以马上关闭，映射的内存在不再引用后释放
+    private ByteBuffer mapArchive(String path) throws IOException {
+        if (mSource == ARCHIVE_FILE) {
+            RandomAccessFile raf = new RandomAccessFile(path, "r");
+            try {
+                return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            } finally {
+                raf.close();
+            }
+        }
+        if (mSource != ARCHIVE_ASSETS) {
+            throw new RuntimeException("source must be ARCHIVE_FILE or ARCHIVE_ASSETS");
+        }
+        AssetFileDescriptor afd = mContext.getResources().getAssets().openFd(path);//压缩的文件无法打开
+        try {
+            FileInputStream fis = afd.createInputStream();
+            try {
+                return fis.getChannel().map(FileChannel.MapMode.READ_ONLY, afd.getStartOffset(), afd.getLength());
+            } finally {
+                fis.close();
+            }
+        } finally {
+            afd.close();
+        }
+    }
+
+    private boolean isArchive() {
+        return mSource == ARCHIVE_FILE || mSource == ARCHIVE_ASSETS;
+    }
+
+    void setFrameIndex(String path) {
+        this.mFrameIndexPath = path;
+        this.mFrameIndex = null;
+    }
+
+    void setRawFrameCache(RawFrameCache rawFrameCache) {
+        this.mRawFrameCache = rawFrameCache;
+    }
+
+    //显示区域或缩放类型改变后，之后解码的帧使用新的大小，已经解码的帧由渲染时缩放
+    void setDisplaySize(int width, int height, int scaleType) {
+        this.mDecodePlan = width > 0 && height > 0 ? new DecodePlan(width, height, scaleType) : null;
+    }
+
+    void setOpaqueRgb565(boolean isOpaqueRgb565) {
+        this.mIsOpaqueRgb565 = isOpaqueRgb565;
+    }
+
+    void setDither(boolean isDither) {
+        this.mIsDither = isDither;
+    }
+
+    void setVsync(boolean isVsync) {
+        this.mIsVsync = isVsync;
+    }
+
+    void setSharedThread(boolean isSharedThread) {
+        this.mIsSharedThread = isSharedThread;
+    }
+
+    void setDecodeThreadCount(int decodeThreadCount) {
+        this.mDecodeThreadCount = decodeThreadCount;
+    }
+
+    void setLoop(boolean isLoop) {
+        this.mIsLoop = isLoop;
+        if (mScheduler != null && !mIsRange) {//分段播放时由片段的遍数决定
+            mScheduler.setLoop(isLoop);
+            wakeReader();//结束的帧改变了
+        }
+    }
+
+    void setPlayMode(@PlayMode int playMode) {
+        this.mPlayMode = playMode;
+    }
+
+    //速度变慢时同样的提前量需要的帧数变少，变快时用满缓存
+    void setPlaybackRate(float rate) {
+        this.mPlaybackRate = rate;
+        this.mReadAheadNumber = Math.max(2, Math.min(mCacheFrameNumber, (int) Math.ceil(mCacheFrameNumber * rate)));
+        if (mScheduler != null) {
+            mScheduler.setPlaybackRate(rate);
+        }
+        wakeReader();
+    }
+
+    //开始播放前设置的片段在开始时交给调度器，超出范围时在开始时报错
+    void setRange(int start, int end, int loopCount) {
+        mRanges.clear();
+        mRanges.add(new int[]{start, end, loopCount});
+    }
+
+    //播放中添加的片段由读取线程交给调度器，这里先检查范围，防止在读取线程报错
+    void addRange(int start, int end, int loopCount) {
+        if (end >= mFrameCount) {
+            throw new RuntimeException("end must be less than " + mFrameCount);
+        }
+        mRanges.add(new int[]{start, end, loopCount});
+        wakeReader();
     }
 
+    void clearRanges() {
+        mRanges.clear();
+    }
+
+    //循环播放时调度器和读取线程都还在，复用池也不回收，直接从第一帧重新开始
     void start() {
+        if (isEnded()) {
+            mIsRestart = true;
+            wakeReader();
+            return;
+        }
         reset();
-        mReadThread = new ReadThread();
-        mScheduler = new Scheduler(mDuration, mFrameCount,
+        mReadQueue.clearAvoidedCount();
+        mBudgetScale = 1;
+        mPlayTimeline = createPlayTimeline();
+        mFrameCount = mPlayTimeline.getFrameCount();
+        mReadTask = new ReadTask();
+        mDecodeExecutor = mDecodeThreadCount > 1 && mDeltaArchive == null//差量帧只能按顺序解码
+                ? Executors.newFixedThreadPool(mDecodeThreadCount, DECODE_THREAD_FACTORY) : null;
+        mScheduler = new Scheduler(mPlayTimeline,
                 new FrameUpdateListener(),
                 new FrameListener());
         mScheduler.setSkipFrame(true);
-        mReadThread.start();
+        mScheduler.setVsync(mIsVsync);
+        mScheduler.setPlaybackRate(mPlaybackRate);
+        mScheduler.setSharedThread(mIsSharedThread);
+        mScheduler.setRestartable(mIsLoop);
+        mIsRange = !mRanges.isEmpty();
+        if (mIsRange) {//分段播放时循环代表播放完所有片段后重新开始
+            addRanges(0);
+        } else {
+            mScheduler.setLoop(mIsLoop);
+        }
+        if (mIsSharedThread) {
+            mReadThread = null;
+            mReadSignal = SharedReadThread.getSignal();
+        } else {
+            mReadSignal = new ReadSignal();
+            mReadThread = new ReadThread(mReadTask, mReadSignal);
+        }
+        mReadWakeupStart = mReadSignal.getWakeupCount();
+        mReadStartMs = SystemClock.elapsedRealtime();
+        if (mReadThread == null) {
+            SharedReadThread.add(mReadTask);
+        } else {
+            mReadThread.start();
+        }
     }
 
     boolean pause() {
@@ -106,42 +351,53 @@ class PicturePlayer {
     }
 
     boolean resume() {
-        return mScheduler.resume();
+        boolean isResumed = mScheduler.resume();
+        wakeReader();//暂停时只读取了一帧
+        return isResumed;
     }
 
     void stop() {
         mIsCancel = true;
-        mReadThread.interrupt();
+        wakeReader();
+        if (mReadThread != null) {
+            mReadThread.interrupt();
+        }
         if (mScheduler.isStarted() && !mScheduler.isCanceled()) {
-            mScheduler.stop();
+            mScheduler.stopAsync();
         }
-        SchedulerUtil.join(mReadThread);
+        mScheduler.awaitStop();//停止后会回收图片，需要等待最后一帧画完
+        mReadTask.await();
     }
 
-    void seekTo(int frameIndex) {
-        if (!mScheduler.isStarted()//没有真正开始播放
-                || mIsPlayCancel) {//或者已经播放结束都无法seekTo
+    //倒放和往返播放时一张图片可能对应多个帧，取离当前帧最近的
+    void seekTo(int sourceIndex) {
+        if (mScheduler == null) {
             return;
         }
-        if (!mScheduler.isSeekToComplete()) {//如果还没有seekTo完成则记录最后一个
-            mSeekToIndex = frameIndex;
-            return;
+        long frameIndex = mPlayTimeline.getFrameIndexOf(sourceIndex, mScheduler.getTimelineFrame(mScheduler.getFrameIndex()));
+        if (frameIndex != -1) {
+            seekToFrame((int) frameIndex);
         }
+    }
 
-        synchronized (mSeekToLock) {
-            mReadFrame = frameIndex;
-
-            int pool = frameIndex - mReadFrame + mCacheBitmaps.size();
-            if (pool > 0 && pool < mCacheFrameNumber) {//说明有复用帧
-                for (int i = 0; i < pool; i++) {
-                    mCacheBitmaps.removeFirst();
-                }
-            } else {
-                mCacheBitmaps.clear();
-            }
+    void seekToTime(long timeMs) {
+        if (mScheduler == null) {
+            return;
+        }
+        long frameIndex = mPlayTimeline.getFrameAt(timeMs * 1000000L);
+        seekToFrame((int) Math.max(0, Math.min(frameIndex, mFrameCount - 1)));
+    }
 
-            mScheduler.seekTo(frameIndex, mSeekListener);
+    private void seekToFrame(int frameIndex) {
+        if (!mScheduler.isStarted()//没有真正开始播放
+                || mIsPlayCancel) {//或者已经播放结束都无法seekTo
+            return;
         }
+        mScheduler.seekTo(frameIndex, mSeekListener);//没有完成时会覆盖上一个目标
+    }
+
+    private boolean isEnded() {
+        return mScheduler != null && mScheduler.isEnded() && !mIsCancel;
     }
 
     boolean isStarted() {
@@ -156,21 +412,93 @@ class PicturePlayer {
         return mScheduler != null && mScheduler.isPaused();
     }
 
+    long getSeekLatencyNs() {
+        if (mScheduler == null) {
+            return -1;
+        }
+        return mScheduler.getSeekLatencyNs();
+    }
+
     int getFrameIndex() {
         if (mScheduler == null) {
             return 0;
         }
-        return (int) mScheduler.getFrameIndex();
+        long frameIndex = mScheduler.getFrameIndex();
+        if (frameIndex >= mScheduler.getEndFrame()) {//播放结束
+            frameIndex = mScheduler.getEndFrame() - 1;
+        }
+        return getSourceIndex(frameIndex);
+    }
+
+    long getAvoidedDecodeCount() {
+        return mReadQueue.getAvoidedCount();
+    }
+
+    //每秒读取线程从等待中醒来的次数，连续读取时不等待，不计算在内，共用读取线程时是共用线程的次数
+    float getReadWakeupRate() {
+        ReadSignal signal = mReadSignal;
+        long elapsedMs = SystemClock.elapsedRealtime() - mReadStartMs;
+        if (signal == null || elapsedMs <= 0) {
+            return 0;
+        }
+        return (signal.getWakeupCount() - mReadWakeupStart) * 1000f / elapsedMs;
+    }
+
+    //缓存空出位置、解码完成、跳转、停止等读取条件改变时调用
+    private void wakeReader() {
+        ReadSignal signal = mReadSignal;
+        if (signal != null) {
+            signal.signal();
+        }
+    }
+
+    FrameLatencyHistogram getLatencyHistogram() {
+        if (mScheduler == null) {
+            return null;
+        }
+        return mScheduler.getLatencyHistogram();
+    }
+
+    //循环和分段播放时帧序列会超过总帧数，由调度器换算成时间轴上的帧
+    private int getSourceIndex(long frameIndex) {
+        return mPlayTimeline.getSourceIndex(mScheduler.getTimelineFrame(frameIndex));
+    }
+
+    //keepFrame之前的帧已经读取，对应的图片不会改变
+    private void addRanges(long keepFrame) {
+        int[] range;
+        while ((range = mRanges.poll()) != null) {
+            mScheduler.addSegment(range[0], range[1], range[2], keepFrame);
+        }
+    }
+
+    private FrameTimeline createPlayTimeline() {
+        switch (mPlayMode) {
+            case REVERSE:
+                return mTimeline.reverse();
+            case BOUNCE:
+                return mTimeline.bounce(mIsLoop);
+            default:
+                return mTimeline;
+        }
     }
 
     private void reset() {
-        mCacheBitmaps.clear();//这里会把删除的数据提交到mReusableBitmaps
+        mReadQueue.reset();//两个线程都已经停止，这里会把删除的数据提交到mReusableBitmaps
         int count = mReusableBitmaps.size();
         for (int i = 0; i < count; i++) {
-            ImageUtil.recycleBitmap(mReusableBitmaps.removeFirst());
+            ImageUtil.recycleBitmap(mReusableBitmaps.removeFirst().bitmap);
+        }
+        if (mDeltaComposer != null) {
+            mDeltaComposer.release();
+            mDeltaComposer = null;
         }
+        mDrawSerial = -1;
+        mIsDrawFull = true;
+        mDrawDirty.setEmpty();
 
-        mReadFrame = 0;
+        mIsRestart = false;
+        mIsWaitRestart = false;
 
         mIsReadCancel = false;
         mIsPlayCancel = false;
@@ -183,14 +511,12 @@ class PicturePlayer {
         mRenderer.onError("读取图片失败");
     }
 
-    private final OnSeekToListener mSeekListener = new OnSeekToListener() {
+    //调度线程只把目标交给读取线程，不等待解码
+    private final OnAsyncSeekToListener mSeekListener = new OnAsyncSeekToListener() {
         @Override
         public void onSeekTo(long frameIndex) {
-            synchronized (mSeekToLock) {
-                if (mCacheBitmaps.isEmpty()) {
-                    SchedulerUtil.lockWait(mSeekToLock);
-                }
-            }
+            mReadQueue.requestSeek((int) frameIndex);
+            wakeReader();
         }
 
         @Override
@@ -199,81 +525,399 @@ class PicturePlayer {
         }
 
         @Override
-        public boolean onSeekToComplete() {
-            if (mSeekToIndex != -1) {
-                seekTo(mSeekToIndex);
-                mSeekToIndex = -1;
-                return false;
-            }
-            return true;
+        public void onSeekToComplete(long frameIndex) {
+            mRenderer.onSeekComplete(getSourceIndex(frameIndex));
         }
     };
 
-    private class ReadThread extends Thread {
+    //读取线程按调度器的速度和进度决定读取哪一帧
+    private final ReadQueue.Schedule mSchedule = new ReadQueue.Schedule() {
         @Override
-        public void run() {
-            try {
-                while (!mIsCancel && !mIsPlayCancel) {
-                    if (mReadFrame >= mFrameCount) {
-                        SystemClock.sleep(1);
-                        continue;
-                    }
-                    int size = mCacheBitmaps.size();
-                    if (size >= mCacheFrameNumber || (size >= 1 && isPaused())) {//暂停的情况下只读取一帧
-                        SystemClock.sleep(1);
-                        continue;
-                    }
+        public long getNextFrame(long frameIndex) {
+            return mScheduler.getNextFrame(frameIndex);
+        }
 
-                    synchronized (mSeekToLock) {
-                        Bitmap bitmap = readBitmap(mPaths[mReadFrame]);
+        @Override
+        public long getProjectedFrame(long leadNs) {
+            return mScheduler.getProjectedFrame(leadNs);
+        }
+    };
 
-                        if (bitmap == null || bitmap.isRecycled()) {
-                            throw new NullPointerException("读取的图片有错误");
-                        }
+    //目标帧已经在缓存的第一个，通知调度器完成跳转
+    private void checkSeekReady() {
+        int frameIndex = mReadQueue.checkSeekReady();
+        if (frameIndex != -1) {
+            mScheduler.seekReady(frameIndex);
+        }
+    }
 
-                        mCacheBitmaps.add(bitmap);
-                        mReadFrame++;
+    private static class ReadThread extends Thread {
+        private final ReadTask mTask;
+        private final ReadSignal mSignal;
 
-                        mSeekToLock.notifyAll();
-                    }
+        ReadThread(ReadTask task, ReadSignal signal) {
+            this.mTask = task;
+            this.mSignal = signal;
+        }
 
-                    if (mReadFrame == 1//第一帧
-                            && !mIsCancel//未取消
-                            && !mScheduler.isStarted()) {//未开始
-                        mScheduler.start();
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    int state = mTask.read();
+                    if (state == SharedReadThread.Reader.DONE) {
+                        break;
+                    }
+                    if (state == SharedReadThread.Reader.IDLE) {
+                        mSignal.await();
                     }
                 }
             } catch (Throwable e) {
-                error(e);
+                mTask.onReadError(e);
+            }
+            mTask.onReadFinish();
+        }
+    }
+
+    //每次开始播放创建一个，可以运行在自己的线程或者共用的读取线程上
+    private class ReadTask implements SharedReadThread.Reader {
+        private final Object mFinishLock = new Object();
+        private volatile Thread mThread;
+        private boolean mIsFinished;
+        private boolean mIsRawFramesOpened;
+        private boolean mIsConfigChosen;
+        private DecodePlan mRawFramesPlan;//像素缓存对应的解码大小
+
+        @Override
+        public int read() throws Throwable {
+            mThread = Thread.currentThread();
+            if (mIsCancel || mIsPlayCancel) {
+                return DONE;
+            }
+            if (mFrameIndex == null) {
+                mFrameIndex = loadFrameIndex();
             }
+            if (!mIsConfigChosen) {//整个序列都不透明时才用RGB_565，播放中不再改变，不会有的帧有色带有的帧没有
+                mIsConfigChosen = true;
+                if (mIsOpaqueRgb565 && mFrameIndex.isOpaque()) {//没有索引文件时第一次播放读完所有帧的文件头后才知道
+                    mBudgetScale = 2;
+                }
+            }
+            DecodePlan plan = mDecodePlan;
+            if (!mIsRawFramesOpened || plan != mRawFramesPlan) {//解码大小改变后换成对应大小的缓存
+                closeRawFrames();
+                mIsRawFramesOpened = true;
+                mRawFramesPlan = plan;
+                mRawFrames = openRawFrames(plan);
+            }
+            if (mIsRestart) {
+                mIsRestart = false;
+                mReadQueue.restart();//上一轮剩下的帧放进复用池，开头的帧可以直接复用
+                mIsWaitRestart = true;
+            }
+            if (!mRanges.isEmpty()) {//接在已经读取的帧之后，下一个片段开头的帧会马上开始读取
+                mIsRange = true;
+                addRanges(mReadQueue.getReadFrame());
+            }
+            mReadQueue.applySeekRequest();
+            mReadQueue.collect();
+            checkSeekReady();
+            startScheduler();
+            int frameIndex = mReadQueue.nextReadFrame(mScheduler.getEndFrame(),
+                    mReadAheadNumber * mBudgetScale, mDecodeThreadCount, isPaused(), mSchedule);
+            if (frameIndex == -1) {
+                return IDLE;
+            }
+            int sourceIndex = getSourceIndex(frameIndex);
+            if (mReadQueue.getPendingCount() > 0//前面还有解码中的帧时不能直接放进缓存
+                    || !addDecodedFrame(frameIndex, sourceIndex)) {
+                DecodeJob job = new DecodeJob(frameIndex, sourceIndex, mRawFramesPlan, mRawFrames);
+                mReadQueue.addJob(job);
+                if (mDecodeExecutor == null) {//单线程解码时直接在读取线程解码
+                    job.run();
+                    mReadQueue.collect();
+                } else {
+                    mDecodeExecutor.execute(job);
+                }
+            }
+            mReadQueue.advance(frameIndex, mSchedule);
+            checkSeekReady();
+            startScheduler();
+            return READ;
+        }
+
+        @Override
+        public void onReadError(Throwable e) {
+            error(e);
+        }
+
+        @Override
+        public void onReadFinish() {
+            finishDecodeJobs();
+            closeRawFrames();
             mIsReadCancel = true;
             threadStop();
+            synchronized (mFinishLock) {
+                mIsFinished = true;
+                mFinishLock.notifyAll();
+            }
+        }
+
+        //等待读取结束，和join一样在读取线程上调用时不等待
+        void await() {
+            if (Thread.currentThread() == mThread) {
+                return;
+            }
+            synchronized (mFinishLock) {
+                while (!mIsFinished) {
+                    SchedulerUtil.lockWait(mFinishLock);
+                }
+            }
         }
     }
 
-    private Bitmap readBitmap(String path) throws Throwable {
-        InputStream is;
-        if (mSource == FILE) {
-            is = new BufferedInputStream(new FileInputStream(path));
+    //打包的来源直接读取映射的内存，不用打开文件，已经缓存了像素的帧不用解码
+    private Bitmap readBitmap(DecodeJob job) throws Throwable {
+        if (mDeltaArchive != null) {
+            return readDeltaBitmap(job);
+        }
+        RawFrameCache.Sequence rawFrames = job.rawFrames;
+        if (rawFrames != null) {
+            Bitmap bitmap = readRawBitmap(rawFrames, job.source);
+            if (bitmap != null) {
+                return bitmap;
+            }
+        }
+        String path = mArchive == null ? mPaths[job.source] : null;
+        FileInputStream fis = mArchive == null && mFrameIndex.has(job.source) ? openDescriptor(path) : null;
+        Bitmap bmp;
+        if (fis != null) {//已经知道大小时直接从文件描述符解码，不经过Java的缓冲
+            try {
+                BitmapFactory.Options options = getReusableOptions(path, job.source, null, job.plan);
+                job.setOptions(options);
+                bmp = BitmapFactory.decodeFileDescriptor(fis.getFD(), null, options);
+            } finally {
+                fis.close();
+            }
         } else {
-            is = mContext.getResources().getAssets().open(path);
+            InputStream is = mArchive == null ? openStream(path) : mArchive.openFrame(job.source);
+            try {
+                BitmapFactory.Options options = getReusableOptions(path, job.source, is, job.plan);
+                job.setOptions(options);
+                bmp = BitmapFactory.decodeStream(is, null, options);
+            } finally {
+                is.close();
+            }
+        }
+        if (rawFrames != null && bmp != null && !job.isCanceled() && !job.isAbandoned()) {
+            writeRawBitmap(rawFrames, job.source, bmp);
         }
-        BitmapFactory.Options options = getReusableOptions(is);
-        Bitmap bmp = BitmapFactory.decodeStream(is, null, options);
-        is.close();
         return bmp;
     }
 
-    //实现复用
-    private BitmapFactory.Options getReusableOptions(InputStream is) throws Throwable {
+    //缓存出错时只是不再缓存，不影响播放
+    private RawFrameCache.Sequence openRawFrames(DecodePlan plan) {
+        if (mRawFrameCache == null || mDeltaArchive != null) {//差量帧解码已经很快
+            return null;
+        }
+        try {
+            return mRawFrameCache.open(getRawFramesKey(plan), getSourceCount());
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private void closeRawFrames() {
+        RawFrameCache.Sequence rawFrames = mRawFrames;
+        if (rawFrames != null) {
+            rawFrames.close();
+            mRawFrames = null;
+        }
+    }
+
+    //文件或者解码大小改变后重新缓存，assets只会随应用更新改变
+    private String getRawFramesKey(DecodePlan plan) throws Exception {
+        StringBuilder key = new StringBuilder().append(mSource);
+        if (mBudgetScale == 2) {
+            key.append("|565");
+        }
+        if (plan != null) {
+            key.append('|').append(plan.width).append('x').append(plan.height).append(':').append(plan.scaleType);
+        }
+        if (mSource == ASSETS || mSource == ARCHIVE_ASSETS) {
+            key.append('|').append(mContext.getPackageManager()
+                    .getPackageInfo(mContext.getPackageName(), 0).lastUpdateTime);
+        }
+        String[] paths = mArchive == null ? mPaths : new String[]{mArchivePath};
+        for (String path : paths) {
+            key.append('|').append(path);
+            if (mSource == FILE || mSource == ARCHIVE_FILE) {
+                File file = new File(path);
+                key.append(':').append(file.length()).append(':').append(file.lastModified());
+            }
+        }
+        return key.toString();
+    }
+
+    private int getSourceCount() {
+        if (mDeltaArchive != null) {
+            return mDeltaArchive.getFrameCount();
+        }
+        return mArchive == null ? mPaths.length : mArchive.getFrameCount();
+    }
+
+    //从映射的内存直接复制像素，优先复用池里的图片
+    private Bitmap readRawBitmap(RawFrameCache.Sequence rawFrames, int source) {
+        ByteBuffer pixels = rawFrames.read(source);
+        if (pixels == null) {
+            return null;
+        }
+        int width = rawFrames.getWidth();
+        int height = rawFrames.getHeight();
+        Bitmap.Config config = rawFrames.getConfig() == RawFrameCache.CONFIG_RGB_565
+                ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+        Bitmap bitmap = obtainBitmap(width, height, config);
+        bitmap.copyPixelsFromBuffer(pixels);
+        return bitmap;
+    }
+
+    //不经过解码时直接得到一张可以写入的图片，大小不同的复用图片在4.4以后可以重新设置大小
+    private Bitmap obtainBitmap(int width, int height, Bitmap.Config config) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = config;
+        options.inSampleSize = 1;
+        options.outWidth = width;
+        options.outHeight = height;
+        Bitmap bitmap = getBitmapFromReusableSet(options);
+        if (bitmap != null && (bitmap.getWidth() != width || bitmap.getHeight() != height
+                || bitmap.getConfig() != config)) {
+            int byteCount = width * height * (config == Bitmap.Config.RGB_565 ? 2 : 4);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT
+                    && bitmap.getAllocationByteCount() >= byteCount) {
+                bitmap.reconfigure(width, height, config);
+            } else {
+                ImageUtil.recycleBitmap(bitmap);
+                bitmap = null;
+            }
+        }
+        if (bitmap == null) {
+            bitmap = Bitmap.createBitmap(width, height, config);
+        }
+        return bitmap;
+    }
+
+    //差量帧在读取线程上按顺序画好后复制一份，记录和上一帧相比改变的区域
+    private Bitmap readDeltaBitmap(DecodeJob job) throws IOException {
+        if (mDeltaComposer == null) {
+            mDeltaComposer = new DeltaComposer(mDeltaArchive);
+        }
+        Rect dirty = new Rect();
+        boolean isContinue = mDeltaComposer.compose(job.source, dirty);
+        int[] size = {mDeltaComposer.getWidth(), mDeltaComposer.getHeight()};
+        if (job.plan != null) {
+            job.plan.getDecodeSize(size[0], size[1], size);
+        }
+        Bitmap bitmap = obtainBitmap(size[0], size[1], Bitmap.Config.ARGB_8888);
+        long serial = mDeltaComposer.copyTo(bitmap);
+        mDeltaComposer.scaleDirty(dirty, size[0], size[1]);
+        job.setDirty(serial, mDeltaComposer.getBaseSerial(), isContinue ? dirty : null);
+        return bitmap;
+    }
+
+    private void writeRawBitmap(RawFrameCache.Sequence rawFrames, int source, Bitmap bitmap) {
+        int config;
+        if (bitmap.getConfig() == Bitmap.Config.ARGB_8888) {
+            config = RawFrameCache.CONFIG_ARGB_8888;
+        } else if (bitmap.getConfig() == Bitmap.Config.RGB_565) {
+            config = RawFrameCache.CONFIG_RGB_565;
+        } else {
+            return;
+        }
+        try {
+            ByteBuffer pixels = rawFrames.beginWrite(source, bitmap.getWidth(), bitmap.getHeight(), config);
+            if (pixels != null && pixels.remaining() == bitmap.getByteCount()) {
+                bitmap.copyPixelsToBuffer(pixels);
+                rawFrames.commit(source);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    //文件直接打开，assets打开后定位到这个文件在apk里的位置，被压缩时返回null
+    private FileInputStream openDescriptor(String path) throws IOException {
+        if (mSource == FILE) {
+            return new FileInputStream(path);
+        }
+        if (mIsDescriptorUnavailable) {
+            return null;
+        }
+        try {
+            AssetFileDescriptor afd = mContext.getResources().getAssets().openFd(path);
+            return afd.createInputStream();//关闭时同时关闭afd
+        } catch (FileNotFoundException e) {//不存在的文件在用流打开时再报错
+            mIsDescriptorUnavailable = true;
+            return null;
+        }
+    }
+
+    private InputStream openStream(String path) throws IOException {
+        if (mSource == FILE) {
+            return new BufferedInputStream(new FileInputStream(path));
+        } else {
+            return mContext.getResources().getAssets().open(path);
+        }
+    }
+
+    //有索引文件时直接加载，否则每张图片第一次解码时再读取文件头
+    private FrameIndex loadFrameIndex() throws IOException {
+        if (mArchive != null) {//打包时已经记录
+            return mArchive.createIndex();
+        }
+        if (mFrameIndexPath == null) {
+            return new FrameIndex(getSourceCount());
+        }
+        InputStream is = openStream(mFrameIndexPath);
+        try {
+            return FrameIndex.read(is, getSourceCount());
+        } finally {
+            is.close();
+        }
+    }
+
+    //实现复用，图片的大小和是否透明从索引获得，不用先解码一遍
+    @SuppressWarnings("deprecation")
+    private BitmapFactory.Options getReusableOptions(String path, int source, InputStream is, DecodePlan plan) throws Throwable {
         BitmapFactory.Options options = new BitmapFactory.Options();
-        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
         options.inSampleSize = 1;
-        options.inJustDecodeBounds = true;
-        is.mark(is.available());
-        BitmapFactory.decodeStream(is, null, options);//获得大小
-        options.inJustDecodeBounds = false;
-        is.reset();
+        options.inTempStorage = TEMP_STORAGE.get();
+        FrameIndex index = mFrameIndex;
+        if (!index.has(source)) {
+            long byteSize = mSource == FILE ? new File(path).length() : is.available();
+            if (!index.probe(source, is, byteSize)) {//不是PNG时解码一次大小，之后同一张图片不用再读取
+                options.inJustDecodeBounds = true;
+                is.mark(is.available());
+                BitmapFactory.decodeStream(is, null, options);
+                options.inJustDecodeBounds = false;
+                is.reset();
+                index.set(source, options.outWidth, options.outHeight,
+                        !"image/jpeg".equals(options.outMimeType), byteSize);
+            }
+        }
+        options.outWidth = index.getWidth(source);
+        options.outHeight = index.getHeight(source);
+        if (mBudgetScale == 2) {//整个序列都没有透明通道时内存减半
+            options.inPreferredConfig = Bitmap.Config.RGB_565;
+            options.inDither = mIsDither;
+        } else {
+            options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        }
+        if (plan != null) {
+            int[] size = new int[2];
+            plan.getDecodeSize(options.outWidth, options.outHeight, size);
+            setDecodeSize(options, size[0], size[1]);
+        }
         Bitmap inBitmap = getBitmapFromReusableSet(options);
         options.inMutable = true;
         if (inBitmap != null) {
@@ -282,18 +926,138 @@ class PicturePlayer {
         return options;
     }
 
+    //先用inSampleSize按2的幂缩小，剩下的部分通过密度缩放到准确的大小，都在解码时完成，不用再复制一次
+    private static void setDecodeSize(BitmapFactory.Options options, int width, int height) {
+        if (width == options.outWidth && height == options.outHeight) {
+            return;
+        }
+        options.inSampleSize = ImageUtil.calculateInSampleSize(options.outWidth, options.outHeight, width, height);
+        int sampledWidth = options.outWidth / options.inSampleSize;
+        if (sampledWidth != width) {
+            options.inScaled = true;
+            options.inDensity = sampledWidth;
+            options.inTargetDensity = width;
+        }
+    }
+
+    //复用池的大小也按内存计算，超过时回收最早放进来的
+    private void addReusable(CacheFrame frame) {
+        synchronized (mReusableBitmaps) {
+            mReusableBitmaps.add(frame);
+            while (mReusableBitmaps.size() > mCacheFrameNumber * mBudgetScale) {
+                ImageUtil.recycleBitmap(mReusableBitmaps.removeFirst().bitmap);
+            }
+        }
+    }
+
+    //多个解码线程同时查找，查找和删除之间不能被其他线程拿走同一张图片
     private Bitmap getBitmapFromReusableSet(BitmapFactory.Options options) {
-        if (mReusableBitmaps.isEmpty()) {
-            return null;
+        synchronized (mReusableBitmaps) {
+            int count = mReusableBitmaps.size();
+            for (int i = 0; i < count; i++) {
+                CacheFrame item = mReusableBitmaps.get(i);
+                if (item != null && ImageUtil.canUseForInBitmap(item.bitmap, options)) {
+                    return mReusableBitmaps.remove(i).bitmap;
+                }
+            }
         }
-        int count = mReusableBitmaps.size();
+        return null;
+    }
+
+    //缓存里有了第一帧后开始调度器，循环重新开始时读到第一帧后再重新开始
+    private void startScheduler() {
+        if (mIsCancel || mReadQueue.isEmpty()) {
+            return;
+        }
+        if (!mScheduler.isStarted()) {
+            mScheduler.start();
+        } else if (mIsWaitRestart) {
+            mIsWaitRestart = false;
+            mScheduler.restart();
+        }
+    }
+
+    //解码好的图片放进缓存，取消和放弃的解码结果以及从缓存删除的帧都放进复用池
+    private class ReadListener implements ReadQueue.Listener<CacheFrame, DecodeJob> {
+        @Override
+        public CacheFrame onDecoded(DecodeJob job) throws Throwable {
+            if (job.getError() != null) {
+                throw job.getError();
+            }
+            Bitmap bitmap = job.getBitmap();
+            if (bitmap == null || bitmap.isRecycled()) {
+                throw new NullPointerException("读取的图片有错误");
+            }
+            return new CacheFrame(job.index, job.source, bitmap,
+                    job.getSerial(), job.getBaseSerial(), job.getDirty());
+        }
+
+        @Override
+        public void onDiscard(DecodeJob job) {
+            Bitmap bitmap = job.getBitmap();
+            if (bitmap != null && !bitmap.isRecycled()) {
+                addReusable(new CacheFrame(job.index, job.source, bitmap));
+            }
+        }
+
+        @Override
+        public void onSkip(CacheFrame frame) {
+            mergeDirty(frame);//没有显示的帧改变的区域也要重画
+            wakeReader();
+        }
+
+        @Override
+        public void onRelease(CacheFrame frame) {
+            releaseFrame(frame);
+        }
+    }
+
+    //读取结束时等待解码线程用完所有图片，之后才能回收
+    private void finishDecodeJobs() {
+        DecodeJob job;
+        while ((job = mReadQueue.pollJob()) != null) {
+            job.abandon();
+            job.await();
+            ImageUtil.recycleBitmap(job.getBitmap());
+        }
+        if (mDecodeExecutor != null) {
+            mDecodeExecutor.shutdown();
+            mDecodeExecutor = null;
+        }
+    }
+
+    //往返播放在折返处会再次用到刚解码过的图片，还在缓存或者复用池里就不用重新解码
+    private boolean addDecodedFrame(int frameIndex, int sourceIndex) {
+        int count = mReadQueue.size();
         for (int i = 0; i < count; i++) {
-            Bitmap item = mReusableBitmaps.get(i);
-            if (ImageUtil.canUseForInBitmap(item, options)) {
-                return mReusableBitmaps.remove(i);
+            CacheFrame item = mReadQueue.get(i);
+            if (item != null && item.source == sourceIndex && item.retain()) {//先占用，调度线程同时释放时也不会放进复用池
+                mReadQueue.add(new CacheFrame(frameIndex, sourceIndex, item));
+                return true;
             }
         }
-        return null;
+        CacheFrame decoded = null;
+        synchronized (mReusableBitmaps) {
+            count = mReusableBitmaps.size();
+            for (int i = 0; i < count && decoded == null; i++) {
+                CacheFrame item = mReusableBitmaps.get(i);
+                if (item != null && item.source == sourceIndex) {
+                    decoded = mReusableBitmaps.remove(i);
+                }
+            }
+        }
+        if (decoded == null) {
+            return false;
+        }
+        mReadQueue.add(new CacheFrame(frameIndex, sourceIndex, decoded.bitmap));
+        return true;
+    }
+
+    //往返播放时同一张图片可能被多个帧共用，最后一个释放时才放进复用池
+    private void releaseFrame(CacheFrame frame) {
+        if (frame.release()) {
+            addReusable(frame);
+        }
     }
 
     private class FrameUpdateListener implements OnFrameUpdateListener {
@@ -301,47 +1065,285 @@ class PicturePlayer {
         public void onFrameUpdate(long frameIndex) {
             int index = (int) frameIndex;
 
-            update(index, index);
+            update(index, getSourceIndex(index));
         }
     }
 
     private void update(int readFrameIndex, int frameIndex) {
-        Bitmap bitmap = getBitmap(readFrameIndex);
+        CacheFrame frame = mReadQueue.getFrame(readFrameIndex);
+        if (frame == null || !frame.retain()) {//读取线程跳转时可能刚刚清空了缓存
+            mRenderer.onDraw(frameIndex, null, null);
+            return;
+        }
+
+        mergeDirty(frame);
+        mRenderer.onDraw(frameIndex, frame.bitmap, mIsDrawFull ? null : mDrawDirty);
+        mIsDrawFull = false;
+        mDrawDirty.setEmpty();
 
-        mRenderer.onDraw(frameIndex, bitmap);
+        mReadQueue.displayed(frame);
+        releaseFrame(frame);//在这一帧画完后再放进复用池，防止画面撕裂
+        wakeReader();
+    }
 
-        if (bitmap != null) {
-            mCacheBitmaps.removeFirst();//在这一帧画完后再放进复用池，防止画面撕裂
+    //和上一个经过这里的帧连续时合并改变的区域，中间有帧被读取线程删除或者不是差量帧时整张重画
+    private void mergeDirty(CacheFrame frame) {
+        if (frame.baseSerial == -1 || frame.baseSerial != mDrawSerial) {
+            mIsDrawFull = true;
+        } else if (frame.dirty != null) {
+            mDrawDirty.union(frame.dirty);
         }
+        mDrawSerial = frame.serial;
     }
 
-    private Bitmap getBitmap(int frameIndex) {
-        if (mCacheBitmaps.isEmpty()) {
-            return null;
+    //一帧的解码任务，在解码线程上执行，复用的图片在解码线程上从复用池取出，完成前只属于这个任务
+    private final class DecodeJob implements Runnable, ReadQueue.Job {
+        final int index;
+        final int source;
+        final DecodePlan plan;//创建任务时的解码大小，和像素缓存一致
+        final RawFrameCache.Sequence rawFrames;
+
+        private final Object mLock = new Object();
+        private volatile BitmapFactory.Options mOptions;
+        private volatile boolean mIsAbandoned;//结果不再需要
+        private volatile boolean mIsCanceled;//跳转时取消了解码，结果可能不完整
+        private boolean mIsDone;
+        private Bitmap mBitmap;
+        private Throwable mError;
+        private long mCostNs;
+        private long mSerial = -1;
+        private long mBaseSerial = -1;
+        private Rect mDirty;
+
+        DecodeJob(int index, int source, DecodePlan plan, RawFrameCache.Sequence rawFrames) {
+            this.index = index;
+            this.source = source;
+            this.plan = plan;
+            this.rawFrames = rawFrames;
+        }
+
+        @Override
+        public void run() {
+            long startNs = System.nanoTime();
+            Bitmap bitmap = null;
+            Throwable error = null;
+            try {
+                if (!mIsAbandoned) {
+                    bitmap = readBitmap(this);
+                }
+            } catch (Throwable e) {
+                error = e;
+            }
+            synchronized (mLock) {
+                mBitmap = bitmap;
+                mError = error;
+                mCostNs = System.nanoTime() - startNs;
+                mIsDone = true;
+                mLock.notifyAll();
+            }
+            if (mDecodeExecutor != null) {//在读取线程解码时读取线程没有等待
+                wakeReader();//按顺序收集解码结果
+            }
         }
 
-        Bitmap bitmap = null;
+        @Override
+        public int getIndex() {
+            return index;
+        }
 
-        int firstIndex = mReadFrame - mCacheBitmaps.size();
-        if (frameIndex == firstIndex) {
-            bitmap = mCacheBitmaps.getFirst();
-        } else if (frameIndex > firstIndex) {
-            if (frameIndex >= mReadFrame) {
-                mCacheBitmaps.clear();
-                mReadFrame = frameIndex + 1;
-            } else {
-                mCacheBitmaps.removeCount(frameIndex - firstIndex);
-                bitmap = mCacheBitmaps.getFirst();
+        void setOptions(BitmapFactory.Options options) {
+            this.mOptions = options;
+            if (mIsCanceled) {
+                cancelDecode();
             }
         }
 
-        return bitmap;
+        @Override
+        public void cancel() {
+            mIsCanceled = true;
+            cancelDecode();
+        }
+
+        @Override
+        public void abandon() {
+            mIsAbandoned = true;
+            cancelDecode();
+        }
+
+        @SuppressWarnings("deprecation")
+        private void cancelDecode() {
+            BitmapFactory.Options options = mOptions;
+            if (options != null) {
+                options.requestCancelDecode();
+            }
+        }
+
+        void await() {
+            synchronized (mLock) {
+                while (!mIsDone) {
+                    SchedulerUtil.lockWait(mLock);
+                }
+            }
+        }
+
+        @Override
+        public boolean isDone() {
+            synchronized (mLock) {
+                return mIsDone;
+            }
+        }
+
+        @Override
+        public boolean isAbandoned() {
+            return mIsAbandoned;
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return mIsCanceled;
+        }
+
+        Bitmap getBitmap() {
+            synchronized (mLock) {
+                return mBitmap;
+            }
+        }
+
+        Throwable getError() {
+            synchronized (mLock) {
+                return mError;
+            }
+        }
+
+        //差量帧在读取线程上解码，这里只是和其他结果一样加锁
+        void setDirty(long serial, long baseSerial, Rect dirty) {
+            synchronized (mLock) {
+                mSerial = serial;
+                mBaseSerial = baseSerial;
+                mDirty = dirty;
+            }
+        }
+
+        long getSerial() {
+            synchronized (mLock) {
+                return mSerial;
+            }
+        }
+
+        long getBaseSerial() {
+            synchronized (mLock) {
+                return mBaseSerial;
+            }
+        }
+
+        Rect getDirty() {
+            synchronized (mLock) {
+                return mDirty;
+            }
+        }
+
+        @Override
+        public long getCostNs() {
+            synchronized (mLock) {
+                return mCostNs;
+            }
+        }
+    }
+
+    //显示区域和缩放类型，按显示的大小解码，不放大
+    private static final class DecodePlan {
+        final int width;
+        final int height;
+        final int scaleType;
+
+        DecodePlan(int width, int height, int scaleType) {
+            this.width = width;
+            this.height = height;
+            this.scaleType = scaleType;
+        }
+
+        void getDecodeSize(int width, int height, int[] out) {
+            PictureRenderer.calculateDisplaySize(scaleType, this.width, this.height, width, height, out);
+            if (out[0] >= width || out[1] >= height) {
+                out[0] = width;
+                out[1] = height;
+            }
+            out[0] = Math.max(out[0], 1);
+            out[1] = Math.max(out[1], 1);
+        }
+    }
+
+    private static final class CacheFrame implements ReadQueue.Frame {
+        final int index;//时间轴上的帧序列
+        final int source;//图片序列
+        final Bitmap bitmap;
+        final long serial;//差量帧的输出序号，其他为-1
+        final long baseSerial;//改变的区域相对的帧，-1时需要整张重画
+        final Rect dirty;
+        private final AtomicInteger mRefs;//使用这张图片的帧数和正在画的次数，为0时可以复用
+
+        CacheFrame(int index, int source, Bitmap bitmap) {
+            this(index, source, bitmap, -1, -1, null);
+        }
+
+        CacheFrame(int index, int source, Bitmap bitmap, long serial, long baseSerial, Rect dirty) {
+            this.index = index;
+            this.source = source;
+            this.bitmap = bitmap;
+            this.serial = serial;
+            this.baseSerial = baseSerial;
+            this.dirty = dirty;
+            this.mRefs = new AtomicInteger(1);
+        }
+
+        //和已经占用的帧共用图片
+        CacheFrame(int index, int source, CacheFrame shared) {
+            this.index = index;
+            this.source = source;
+            this.bitmap = shared.bitmap;
+            this.serial = -1;
+            this.baseSerial = -1;
+            this.dirty = null;
+            this.mRefs = shared.mRefs;
+        }
+
+        @Override
+        public int getIndex() {
+            return index;
+        }
+
+        //已经释放的帧不能再占用
+        boolean retain() {
+            while (true) {
+                int refs = mRefs.get();
+                if (refs == 0) {
+                    return false;
+                }
+                if (mRefs.compareAndSet(refs, refs + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        //返回是否是最后一个
+        boolean release() {
+            return mRefs.decrementAndGet() == 0;
+        }
     }
 
     private class FrameListener extends OnSimpleFrameListener {
         @Override
         public void onStop() {
+            if (mScheduler.isEnded()) {//播放结束但线程还在
+                if (mIsLoop && !mIsCancel) {
+                    mRenderer.onStop();//由外部调用start重新开始
+                } else {
+                    mScheduler.stopAsync();//结束线程，之后会再次回调
+                }
+                return;
+            }
             mIsPlayCancel = true;
+            wakeReader();
             threadStop();
         }
     }
@@ -358,10 +1360,12 @@ class PicturePlayer {
     }
 
     interface Renderer {
-        void onDraw(int frameIndex, Bitmap bitmap);
+        void onDraw(int frameIndex, Bitmap bitmap, Rect dirty);//dirty为和上一次画的帧相比改变的区域，null时整张重画
 
         void onStop();
 
+        void onSeekComplete(int frameIndex);
+
         void onError(String message);
     }
 }
\ No newline at end of file
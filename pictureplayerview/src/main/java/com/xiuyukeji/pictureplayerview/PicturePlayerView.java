@@ -3,6 +3,7 @@ package com.xiuyukeji.pictureplayerview;
 import android.content.Context;
 import android.content.res.TypedArray;
 import android.graphics.SurfaceTexture;
+import android.support.annotation.FloatRange;
 import android.support.annotation.IntRange;
 import android.support.annotation.NonNull;
 import android.util.AttributeSet;
@@ -10,14 +11,26 @@ import android.view.TextureView;
 import android.view.TextureView.SurfaceTextureListener;
 
 import com.xiuyukeji.pictureplayerview.annotations.FitSource;
+import com.xiuyukeji.pictureplayerview.annotations.PictureSource;
+import com.xiuyukeji.pictureplayerview.annotations.PlayMode;
 import com.xiuyukeji.pictureplayerview.interfaces.OnChangeListener;
 import com.xiuyukeji.pictureplayerview.interfaces.OnErrorListener;
+import com.xiuyukeji.pictureplayerview.interfaces.OnSeekCompleteListener;
 import com.xiuyukeji.pictureplayerview.interfaces.OnStopListener;
 import com.xiuyukeji.pictureplayerview.interfaces.OnUpdateListener;
+import com.xiuyukeji.pictureplayerview.utils.FrameArchivePacker;
+import com.xiuyukeji.pictureplayerview.utils.FrameIndex;
+import com.xiuyukeji.pictureplayerview.utils.RawFrameCache;
+import com.xiuyukeji.scheduler.FrameLatencyHistogram;
+import com.xiuyukeji.scheduler.FrameSegments;
+import com.xiuyukeji.scheduler.FrameTimeline;
+
+import java.io.IOException;
 
 import static com.xiuyukeji.pictureplayerview.PicturePlayer.DEFAULT_MAX_CACHE_NUMBER;
 import static com.xiuyukeji.pictureplayerview.annotations.FitSource.FIT_CROP;
 import static com.xiuyukeji.pictureplayerview.annotations.PictureSource.FILE;
+import static com.xiuyukeji.pictureplayerview.annotations.PlayMode.FORWARD;
 
 /**
  * 图片播放器
@@ -28,6 +41,11 @@ public class PicturePlayerView extends TextureView implements SurfaceTextureList
 
     protected static final String TAG = "PicturePlayerView";
 
+    /**
+     * 片段无限循环，见{@link #playRange(int, int, int)}
+     */
+    public static final int LOOP_INFINITE = FrameSegments.LOOP_INFINITE;
+
     private static final int STOP = 0, START = 1, PAUSE = 2;
 
     private boolean mIsLoop;//是否循环播放
@@ -35,9 +53,15 @@ public class PicturePlayerView extends TextureView implements SurfaceTextureList
     private boolean mIsAntiAlias;//是否抗锯齿
     private boolean mIsFilterBitmap;//是否位图过滤
     private boolean mIsDither;//是否防抖动
+    private boolean mIsOpaqueRgb565;//没有透明通道的图片是否用RGB_565解码
     private int mSource;//设置来源
     private int mScaleType;//设置缩放类型
+    private int mPlayMode;//播放模式
     private int mCacheFrameNumber;//缓存帧数
+    private boolean mIsVsync;//是否垂直同步
+    private boolean mIsSharedThread;//是否共用线程
+    private int mDecodeThreadCount = 1;//解码线程数
+    private float mPlaybackRate = 1;//播放速度
 
     private PicturePlayer mPlayer;
     private PictureRenderer mRenderer;
@@ -75,9 +99,14 @@ public class PicturePlayerView extends TextureView implements SurfaceTextureList
         mIsAntiAlias = typedArray.getBoolean(R.styleable.PicturePlayerView_picture_antiAlias, true);
         mIsFilterBitmap = typedArray.getBoolean(R.styleable.PicturePlayerView_picture_filterBitmap, false);
         mIsDither = typedArray.getBoolean(R.styleable.PicturePlayerView_picture_dither, false);
+        mIsOpaqueRgb565 = typedArray.getBoolean(R.styleable.PicturePlayerView_picture_opaqueRgb565, false);
         mSource = typedArray.getInt(R.styleable.PicturePlayerView_picture_source, FILE);
         mScaleType = typedArray.getInt(R.styleable.PicturePlayerView_picture_scaleType, FIT_CROP);
+        mPlayMode = typedArray.getInt(R.styleable.PicturePlayerView_picture_playMode, FORWARD);
         mCacheFrameNumber = typedArray.getInt(R.styleable.PicturePlayerView_picture_cacheFrameNumber, DEFAULT_MAX_CACHE_NUMBER);
+        mIsVsync = typedArray.getBoolean(R.styleable.PicturePlayerView_picture_vsync, false);
+        mIsSharedThread = typedArray.getBoolean(R.styleable.PicturePlayerView_picture_sharedThread, false);
+        mDecodeThreadCount = typedArray.getInt(R.styleable.PicturePlayerView_picture_decodeThreadCount, 1);
         typedArray.recycle();
     }
 
@@ -86,6 +115,13 @@ public class PicturePlayerView extends TextureView implements SurfaceTextureList
 
         mRenderer = new PictureRenderer(mIsAntiAlias, mIsFilterBitmap, mIsDither, mScaleType, this);
         mPlayer = new PicturePlayer(getContext(), mSource, mCacheFrameNumber, mRenderer);
+        mPlayer.setOpaqueRgb565(mIsOpaqueRgb565);
+        mPlayer.setDither(mIsDither);
+        mPlayer.setVsync(mIsVsync);
+        mPlayer.setSharedThread(mIsSharedThread);
+        mPlayer.setDecodeThreadCount(mDecodeThreadCount);
+        mPlayer.setLoop(mIsLoop);
+        mPlayer.setPlayMode(mPlayMode);
     }
 
     private void initView() {
@@ -112,6 +148,12 @@ public class PicturePlayerView extends TextureView implements SurfaceTextureList
                 }
             }
         });
+        mRenderer.setOnSeekCompleteListener(new OnSeekCompleteListener() {
+            @Override
+            public void onSeekComplete(int frameIndex) {
+                mNoticeHandler.noticeSeekComplete(frameIndex);
+            }
+        });
         mRenderer.setOnErrorListener(new OnErrorListener() {
             @Override
             public void onError(String msg) {
@@ -138,12 +180,7 @@ public class PicturePlayerView extends TextureView implements SurfaceTextureList
      * @param duration 总时长
      */
     public void setDataSource(@NonNull String path, @NonNull String[] names, @IntRange(from = 1) long duration) {
-        int count = names.length;
-        String[] paths = new String[names.length];
-        for (int i = 0; i < count; i++) {
-            paths[i] = String.format("%s/%s", path, names[i]);
-        }
-        setDataSource(paths, duration);
+        setDataSource(joinPaths(path, names), duration);
     }
 
     /**
@@ -156,7 +193,86 @@ public class PicturePlayerView extends TextureView implements SurfaceTextureList
         if (mState != STOP) {
             return;
         }
-        mPlayer.setDataSource(paths, duration, paths.length);
+        mPlayer.setDataSource(paths, FrameTimeline.uniform(duration, paths.length));
+    }
+
+    /**
+     * 设置数据源，每一帧单独设置时长，需要停留的帧不用再复制图片
+     *
+     * @param path      文件夹地址
+     * @param names     名称集合
+     * @param durations 每一帧的时长
+     */
+    public void setDataSource(@NonNull String path, @NonNull String[] names, @NonNull long[] durations) {
+        setDataSource(joinPaths(path, names), durations);
+    }
+
+    /**
+     * 设置数据源，每一帧单独设置时长，需要停留的帧不用再复制图片
+     *
+     * @param paths     地址集合
+     * @param durations 每一帧的时长，数量必须与地址集合一致
+     */
+    public void setDataSource(@NonNull String[] paths, @NonNull long[] durations) {
+        if (mState != STOP) {
+            return;
+        }
+        if (paths.length != durations.length) {
+            throw new RuntimeException("paths and durations must have the same length");
+        }
+        mPlayer.setDataSource(paths, FrameTimeline.ofDurations(durations));
+    }
+
+    /**
+     * 设置帧信息索引文件，来源和图片一致，需要在设置数据源之后调用，没有时从图片文件头读取
+     *
+     * @param path 索引文件地址，格式见{@link FrameIndex}
+     */
+    public void setFrameIndex(@NonNull String path) {
+        if (mState != STOP) {
+            return;
+        }
+        mPlayer.setFrameIndex(path);
+    }
+
+    /**
+     * 设置打包的数据源，来源必须是{@link PictureSource#ARCHIVE_FILE}或{@link PictureSource#ARCHIVE_ASSETS}
+     *
+     * @param path     打包的文件地址，由{@link FrameArchivePacker}或tools模块的DeltaEncoderTool生成
+     * @param duration 总时长
+     */
+    public void setDataSource(@NonNull String path, @IntRange(from = 1) long duration) {
+        setArchiveDataSource(path, duration, null);
+    }
+
+    /**
+     * 设置打包的数据源，每一帧单独设置时长
+     *
+     * @param path      打包的文件地址
+     * @param durations 每一帧的时长，数量必须与打包的帧数一致
+     */
+    public void setDataSource(@NonNull String path, @NonNull long[] durations) {
+        setArchiveDataSource(path, 0, durations);
+    }
+
+    private void setArchiveDataSource(String path, long duration, long[] durations) {
+        if (mState != STOP) {
+            return;
+        }
+        try {
+            mPlayer.setArchiveDataSource(path, duration, durations);
+        } catch (IOException e) {
+            throw new RuntimeException("can not open frame archive " + path, e);
+        }
+    }
+
+    private String[] joinPaths(String path, String[] names) {
+        int count = names.length;
+        String[] paths = new String[names.length];
+        for (int i = 0; i < count; i++) {
+            paths[i] = String.format("%s/%s", path, names[i]);
+        }
+        return paths;
     }
 
     /**
@@ -170,6 +286,39 @@ public class PicturePlayerView extends TextureView implements SurfaceTextureList
             return;
         }
 
+        if (mState == STOP) {
+            mPlayer.clearRanges();
+        }
+        mState = START;
+
+        mPlayer.start();
+    }
+
+    /**
+     * 播放一个片段，停止时从这个片段开始播放，播放中调用时接在前面的片段之后，中间没有间隔
+     * 例如先播放一遍开头，再一直循环后面的部分：playRange(0, 29, 1)后playRange(30, 89, LOOP_INFINITE)
+     * 无限循环的片段后面再添加片段时，这个片段在当前这一遍播放完后结束
+     *
+     * @param start     第一帧，倒放和往返播放时为播放顺序上的帧
+     * @param end       最后一帧，包括这一帧
+     * @param loopCount 播放遍数，{@link #LOOP_INFINITE}为无限循环
+     */
+    public void playRange(@IntRange(from = 0) int start, @IntRange(from = 0) int end, int loopCount) {
+        if (!mIsEnabled) {
+            return;
+        }
+        if (start < 0 || start > end) {
+            throw new RuntimeException("start must be between 0 and end");
+        }
+        if (loopCount < 1 && loopCount != LOOP_INFINITE) {
+            throw new RuntimeException("loopCount must be greater than 0");
+        }
+        if (mState != STOP) {
+            mPlayer.addRange(start, end, loopCount);
+            return;
+        }
+
+        mPlayer.setRange(start, end, loopCount);
         mState = START;
 
         mPlayer.start();
@@ -215,7 +364,7 @@ public class PicturePlayerView extends TextureView implements SurfaceTextureList
     }
 
     /**
-     * 跳转到某一帧
+     * 跳转到某一帧，不会阻塞，连续调用时只保留最后一个目标，完成后回调{@link OnSeekCompleteListener}
      *
      * @param frameIndex 帧序列
      */
@@ -223,9 +372,19 @@ public class PicturePlayerView extends TextureView implements SurfaceTextureList
         if (mState == STOP) {
             return;
         }
-        if (getFrameIndex() != frameIndex) {
-            mPlayer.seekTo(frameIndex);
+        mPlayer.seekTo(frameIndex);
+    }
+
+    /**
+     * 跳转到某个时间，按时间轴换算成帧
+     *
+     * @param timeMs 时间，毫秒
+     */
+    public void seekToTime(long timeMs) {
+        if (mState == STOP) {
+            return;
         }
+        mPlayer.seekToTime(timeMs);
     }
 
     /**
@@ -237,7 +396,99 @@ public class PicturePlayerView extends TextureView implements SurfaceTextureList
         if (mState != STOP) {
             return;
         }
+        this.mScaleType = scaleType;
         mRenderer.setScaleType(scaleType);
+        mPlayer.setDisplaySize(getWidth(), getHeight(), scaleType);
+    }
+
+    /**
+     * 设置所有帧都没有透明通道的序列是否用RGB_565解码，只有在停止播放时设置该值有效
+     * 同样的缓存数量可以多缓存一倍的帧，但颜色精度降低，开启防抖动时解码也会防抖动，
+     * 没有帧信息索引时第一次播放读完所有帧的文件头后才知道，下一次播放生效
+     *
+     * @param isOpaqueRgb565 值，默认false
+     */
+    public void setOpaqueRgb565(boolean isOpaqueRgb565) {
+        if (mState != STOP) {
+            return;
+        }
+        this.mIsOpaqueRgb565 = isOpaqueRgb565;
+        mPlayer.setOpaqueRgb565(isOpaqueRgb565);
+    }
+
+    /**
+     * 设置是否按屏幕刷新调度，只有在停止播放时设置该值有效
+     *
+     * @param isVsync 值
+     */
+    public void setVsync(boolean isVsync) {
+        if (mState != STOP) {
+            return;
+        }
+        this.mIsVsync = isVsync;
+        mPlayer.setVsync(isVsync);
+    }
+
+    /**
+     * 设置是否和其他播放器共用调度线程和读取线程，同时播放多个时可以减少线程数，只有在停止播放时设置该值有效
+     *
+     * @param isSharedThread 值
+     */
+    public void setSharedThread(boolean isSharedThread) {
+        if (mState != STOP) {
+            return;
+        }
+        this.mIsSharedThread = isSharedThread;
+        mPlayer.setSharedThread(isSharedThread);
+    }
+
+    /**
+     * 设置解码线程数，只有在停止播放时设置该值有效
+     * 大于1时多个线程同时解码后面的帧，按顺序放进缓存，解码中的帧也算在缓存数量里
+     *
+     * @param decodeThreadCount 值，默认1，在读取线程上解码
+     */
+    public void setDecodeThreadCount(@IntRange(from = 1) int decodeThreadCount) {
+        if (mState != STOP) {
+            return;
+        }
+        if (decodeThreadCount < 1) {
+            throw new RuntimeException("decodeThreadCount must be greater than 0");
+        }
+        this.mDecodeThreadCount = decodeThreadCount;
+        mPlayer.setDecodeThreadCount(decodeThreadCount);
+    }
+
+    /**
+     * 设置解码后的像素缓存，第一次播放时写入，之后播放直接复制像素，停止时设置有效
+     *
+     * @param rawFrameCache 像素缓存，可以在多个View之间共用，null为不缓存
+     */
+    public void setRawFrameCache(RawFrameCache rawFrameCache) {
+        if (mState != STOP) {
+            return;
+        }
+        mPlayer.setRawFrameCache(rawFrameCache);
+    }
+
+    /**
+     * 设置播放速度，播放中也可以调用，不会重新开始
+     *
+     * @param rate 速度，1为正常速度
+     */
+    public void setPlaybackRate(@FloatRange(from = 0, fromInclusive = false) float rate) {
+        if (rate <= 0) {
+            throw new RuntimeException("rate must be greater than 0");
+        }
+        this.mPlaybackRate = rate;
+        mPlayer.setPlaybackRate(rate);
+    }
+
+    /**
+     * 返回播放速度
+     */
+    public float getPlaybackRate() {
+        return mPlaybackRate;
     }
 
     /**
@@ -247,10 +498,25 @@ public class PicturePlayerView extends TextureView implements SurfaceTextureList
      */
     public void setLoop(boolean isLoop) {
         this.mIsLoop = isLoop;
+        mPlayer.setLoop(isLoop);
+    }
+
+    /**
+     * 设置播放模式，只有在停止播放时设置该值有效
+     *
+     * @param playMode 值
+     */
+    public void setPlayMode(@PlayMode int playMode) {
+        if (mState != STOP) {
+            return;
+        }
+        this.mPlayMode = playMode;
+        mPlayer.setPlayMode(playMode);
     }
 
     @Override
     public void onSurfaceTextureAvailable(SurfaceTexture surface, int width, int height) {
+        mPlayer.setDisplaySize(width, height, mScaleType);
         mRenderer.drawClear();
         if (mOnChangeListener != null) {
             mOnChangeListener.onCreated();
@@ -259,6 +525,8 @@ public class PicturePlayerView extends TextureView implements SurfaceTextureList
 
     @Override
     public void onSurfaceTextureSizeChanged(SurfaceTexture surface, int width, int height) {
+        mPlayer.setDisplaySize(width, height, mScaleType);
+        mRenderer.invalidateFrame();
     }
 
     @Override
@@ -295,6 +563,37 @@ public class PicturePlayerView extends TextureView implements SurfaceTextureList
         return mPlayer.getFrameIndex();
     }
 
+    /**
+     * 返回最后一次跳转从调用到显示的延迟，连续跳转时从最后一次调用开始计算
+     *
+     * @return 毫秒，没有跳转过返回-1
+     */
+    public long getSeekLatencyMs() {
+        long latency = mPlayer.getSeekLatencyNs();
+        return latency == -1 ? -1 : latency / 1000000L;
+    }
+
+    /**
+     * 返回这次播放中因为来不及显示而没有解码的帧数
+     */
+    public long getAvoidedDecodeCount() {
+        return mPlayer.getAvoidedDecodeCount();
+    }
+
+    /**
+     * 返回这次播放中读取线程每秒从等待中被唤醒的次数，缓存满、暂停或者读到最后时读取线程等待，连续读取的帧不计算在内
+     */
+    public float getReadWakeupRate() {
+        return mPlayer.getReadWakeupRate();
+    }
+
+    /**
+     * 返回这次播放的帧延迟直方图，播放中也可以读取，没有开始过播放时返回null
+     */
+    public FrameLatencyHistogram getLatencyHistogram() {
+        return mPlayer.getLatencyHistogram();
+    }
+
     /**
      * 设置更新回调
      *
@@ -313,6 +612,15 @@ public class PicturePlayerView extends TextureView implements SurfaceTextureList
         this.mNoticeHandler.setOnStopListener(l);
     }
 
+    /**
+     * 设置跳转完成回调，连续跳转时只回调最后一个目标
+     *
+     * @param l 回调
+     */
+    public void setOnSeekCompleteListener(OnSeekCompleteListener l) {
+        this.mNoticeHandler.setOnSeekCompleteListener(l);
+    }
+
     /**
      * 设置错误回调
      *
@@ -337,6 +645,7 @@ public class PicturePlayerView extends TextureView implements SurfaceTextureList
     public void release() {
         setOnUpdateListener(null);
         setOnStopListener(null);
+        setOnSeekCompleteListener(null);
         setOnErrorListener(null);
         setOnChangeListener(null);
         stop();
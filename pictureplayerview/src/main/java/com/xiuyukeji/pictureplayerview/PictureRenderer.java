@@ -9,6 +9,7 @@ import android.graphics.Rect;
 import android.view.TextureView;
 
 import com.xiuyukeji.pictureplayerview.interfaces.OnErrorListener;
+import com.xiuyukeji.pictureplayerview.interfaces.OnSeekCompleteListener;
 import com.xiuyukeji.pictureplayerview.interfaces.OnStopListener;
 import com.xiuyukeji.pictureplayerview.interfaces.OnUpdateListener;
 
@@ -24,23 +25,24 @@ import static com.xiuyukeji.pictureplayerview.annotations.FitSource.FIT_WIDTH;
  */
 class PictureRenderer implements PicturePlayer.Renderer {
 
-    private static final int WIDTH = 0, HEIGHT = 1;
-
     private int mScaleType;//设置缩放类型
 
-    private float mScale;
+    private volatile float mScale;//为0时按下一帧重新计算
     private int mWidth;
     private int mHeight;
-    private int state = WIDTH;
+    private final int[] mDisplaySize = new int[2];
 
     private Paint mPaint;
     private Rect mSrcRect;
     private Rect mDstRect;
+    private Rect mDirtyRect;
+    private volatile boolean mIsDrawn;//画布上是不是上一次画的帧，不是时需要整张重画
 
     private TextureView mTextureView;
 
     private OnUpdateListener mOnUpdateListener;
     private OnStopListener mOnStopListener;
+    private OnSeekCompleteListener mOnSeekCompleteListener;
     private OnErrorListener mOnErrorListener;
 
     PictureRenderer(boolean isAntiAlias, boolean isFilterBitmap, boolean isDither, int scaleType, TextureView textureView) {
@@ -60,13 +62,21 @@ class PictureRenderer implements PicturePlayer.Renderer {
 
         mSrcRect = new Rect();
         mDstRect = new Rect();
+        mDirtyRect = new Rect();
     }
 
     void setScaleType(int scaleType) {
         this.mScaleType = scaleType;
     }
 
+    //画布大小改变后内容不再可靠，显示的大小也要重新计算
+    void invalidateFrame() {
+        mScale = 0;
+        mIsDrawn = false;
+    }
+
     void drawClear() {
+        mIsDrawn = false;
         if (getWidth() == 0 || getHeight() == 0) {
             return;
         }
@@ -79,7 +89,7 @@ class PictureRenderer implements PicturePlayer.Renderer {
     }
 
     @Override
-    public void onDraw(int frameIndex, Bitmap bitmap) {
+    public void onDraw(int frameIndex, Bitmap bitmap, Rect dirty) {
         if (mOnUpdateListener != null && frameIndex != -1) {
             mOnUpdateListener.onUpdate(frameIndex);
         }
@@ -90,71 +100,91 @@ class PictureRenderer implements PicturePlayer.Renderer {
 
         calculateScale(bitmap.getWidth(), bitmap.getHeight());
 
-        Canvas canvas = mTextureView.lockCanvas();
+        int left = calculateLeft();
+        int top = calculateTop();
+        int right = left + mWidth;
+        int bottom = top + mHeight;
+        mSrcRect.set(0, 0, bitmap.getWidth(), bitmap.getHeight());
+        mDstRect.set(left, top, right, bottom);
+
+        Canvas canvas;
+        if (dirty != null && mIsDrawn) {//只重画改变的区域，其他区域保留上一帧的内容
+            if (dirty.isEmpty()) {
+                return;
+            }
+            calculateDirty(dirty, bitmap.getWidth(), bitmap.getHeight());
+            if (mDirtyRect.isEmpty()) {//改变的区域在画布外
+                return;
+            }
+            canvas = mTextureView.lockCanvas(mDirtyRect);
+        } else {
+            canvas = mTextureView.lockCanvas();
+        }
+        mIsDrawn = canvas != null;
         if (canvas != null) {
-            canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);// 清空画布
-
-            int left = 0;
-            int top = 0;
-            if (state == WIDTH) {
-                top = calculateTop();
+            canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);// 清空画布，只清空裁剪的区域
+            if (bitmap.getWidth() == mWidth && bitmap.getHeight() == mHeight) {//已经按显示的大小解码，不用缩放
+                canvas.drawBitmap(bitmap, left, top, null);
             } else {
-                left = calculateLeft();
+                canvas.drawBitmap(bitmap, mSrcRect, mDstRect, mPaint);
             }
-            int right = left + mWidth;
-            int bottom = top + mHeight;
-
-            mSrcRect.set(0, 0, bitmap.getWidth(), bitmap.getHeight());
-            mDstRect.set(left, top, right, bottom);
-            canvas.drawBitmap(bitmap, mSrcRect, mDstRect, mPaint);
-
             mTextureView.unlockCanvasAndPost(canvas);
         }
     }
 
+    //图片上改变的区域换算到画布上，缩放时过滤会用到周围的像素，多扩大一个像素
+    private void calculateDirty(Rect dirty, int width, int height) {
+        float scaleX = mDstRect.width() / (float) width;
+        float scaleY = mDstRect.height() / (float) height;
+        mDirtyRect.set((int) Math.floor(mDstRect.left + dirty.left * scaleX) - 1,
+                (int) Math.floor(mDstRect.top + dirty.top * scaleY) - 1,
+                (int) Math.ceil(mDstRect.left + dirty.right * scaleX) + 1,
+                (int) Math.ceil(mDstRect.top + dirty.bottom * scaleY) + 1);
+        if (!mDirtyRect.intersect(0, 0, getWidth(), getHeight())) {
+            mDirtyRect.setEmpty();
+        }
+    }
+
     //这里默认只计算第一张图片的大小，如果接下来的图片大小不一致可能会变形
     private void calculateScale(int width, int height) {
         if (mScale != 0) {
             return;
         }
-        switch (mScaleType) {
-            case FIT_WIDTH:
-                callWidth(width, height);
-                break;
+        calculateDisplaySize(mScaleType, getWidth(), getHeight(), width, height, mDisplaySize);
+        mWidth = mDisplaySize[0];
+        mHeight = mDisplaySize[1];
+        mScale = mWidth / (float) width;
+    }
+
+    /**
+     * 按缩放类型计算图片显示的大小，解码时也按这个大小缩小图片
+     *
+     * @param out 返回{宽, 高}
+     */
+    static void calculateDisplaySize(int scaleType, int viewWidth, int viewHeight, int width, int height, int[] out) {
+        boolean isFitWidth;
+        switch (scaleType) {
             case FIT_HEIGHT:
-                callHeight(width, height);
+                isFitWidth = false;
                 break;
             case FIT_CENTER:
-                if (getWidth() * height > getHeight() * width) {
-                    callHeight(width, height);
-                } else {
-                    callWidth(width, height);
-                }
+                isFitWidth = viewWidth * height <= viewHeight * width;
                 break;
             case FIT_CROP:
-                if (getWidth() * height > getHeight() * width) {
-                    callWidth(width, height);
-                } else {
-                    callHeight(width, height);
-                }
+                isFitWidth = viewWidth * height > viewHeight * width;
                 break;
+            case FIT_WIDTH:
             default:
+                isFitWidth = true;
                 break;
         }
-    }
-
-    private void callWidth(int width, int height) {
-        mScale = getWidth() / (float) width;
-        mWidth = getWidth();
-        mHeight = (int) (height * mScale);
-        state = WIDTH;
-    }
-
-    private void callHeight(int width, int height) {
-        mScale = getHeight() / (float) height;
-        mWidth = (int) (width * mScale);
-        mHeight = getHeight();
-        state = HEIGHT;
+        if (isFitWidth) {
+            out[0] = viewWidth;
+            out[1] = (int) (height * (viewWidth / (float) width));
+        } else {
+            out[0] = (int) (width * (viewHeight / (float) height));
+            out[1] = viewHeight;
+        }
     }
 
     private int calculateLeft() {
@@ -176,11 +206,19 @@ class PictureRenderer implements PicturePlayer.Renderer {
     @Override
     public void onStop() {
         mScale = 0;
+        mIsDrawn = false;
         if (mOnStopListener != null) {
             mOnStopListener.onStop();
         }
     }
 
+    @Override
+    public void onSeekComplete(int frameIndex) {
+        if (mOnSeekCompleteListener != null) {
+            mOnSeekCompleteListener.onSeekComplete(frameIndex);
+        }
+    }
+
     @Override
     public void onError(String message) {
         if (mOnErrorListener != null) {
@@ -196,6 +234,10 @@ class PictureRenderer implements PicturePlayer.Renderer {
         this.mOnStopListener = l;
     }
 
+    void setOnSeekCompleteListener(OnSeekCompleteListener l) {
+        this.mOnSeekCompleteListener = l;
+    }
+
     void setOnErrorListener(OnErrorListener l) {
         this.mOnErrorListener = l;
     }
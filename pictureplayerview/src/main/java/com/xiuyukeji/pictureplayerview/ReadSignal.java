@@ -0,0 +1,42 @@
+package com.xiuyukeji.pictureplayerview;
+
+/**
+ * 读取线程的唤醒信号，没有需要读取的帧时一直等待，缓存空出位置、解码完成、跳转、暂停恢复、循环和片段改变、停止时唤醒
+ * <p>
+ * 等待前发出的信号不会丢失，多次信号只唤醒一次，读取任务等待的每个条件改变时都必须发出信号
+ */
+final class ReadSignal {
+
+    private boolean mIsSignaled;
+    private volatile long mWakeupCount;//从等待中返回的次数，只在等待的线程写入
+
+    /**
+     * 唤醒等待的读取线程，可以在任何线程调用
+     */
+    synchronized void signal() {
+        mIsSignaled = true;
+        notifyAll();
+    }
+
+    /**
+     * 等待到有信号或者线程被中断
+     */
+    synchronized void await() {
+        try {
+            while (!mIsSignaled) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();//停止时中断，由读取任务判断是否结束
+        }
+        mIsSignaled = false;
+        mWakeupCount++;
+    }
+
+    /**
+     * 返回从等待中返回的次数，有信号时不等待也算一次
+     */
+    long getWakeupCount() {
+        return mWakeupCount;
+    }
+}
@@ -0,0 +1,87 @@
+package com.xiuyukeji.pictureplayerview;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 多个播放器共用的读取线程，轮流为每个播放器读取一帧，没有播放器使用时线程结束
+ */
+final class SharedReadThread extends Thread {
+
+    private static SharedReadThread sThread;
+    private static final ReadSignal sSignal = new ReadSignal();//所有播放器共用，任何一个有事件时唤醒
+
+    private final CopyOnWriteArrayList<Reader> mReaders = new CopyOnWriteArrayList<>();
+
+    private SharedReadThread() {
+        super("shared-reader");
+    }
+
+    /**
+     * 添加读取任务，没有线程时创建
+     *
+     * @param reader 读取任务
+     */
+    static synchronized void add(Reader reader) {
+        if (sThread == null) {
+            sThread = new SharedReadThread();
+            sThread.mReaders.add(reader);
+            sThread.start();
+        } else {
+            sThread.mReaders.add(reader);
+            sSignal.signal();
+        }
+    }
+
+    /**
+     * 返回共用的唤醒信号
+     */
+    static ReadSignal getSignal() {
+        return sSignal;
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            boolean isIdle = true;
+            for (Reader reader : mReaders) {
+                int state;
+                try {
+                    state = reader.read();
+                } catch (Throwable e) {
+                    reader.onReadError(e);
+                    state = Reader.DONE;
+                }
+                if (state == Reader.DONE) {
+                    mReaders.remove(reader);
+                    reader.onReadFinish();
+                } else if (state == Reader.READ) {
+                    isIdle = false;
+                }
+            }
+            synchronized (SharedReadThread.class) {
+                if (mReaders.isEmpty()) {
+                    sThread = null;
+                    return;
+                }
+            }
+            if (isIdle) {
+                sSignal.await();
+            }
+        }
+    }
+
+    interface Reader {
+        int READ = 0, IDLE = 1, DONE = 2;
+
+        /**
+         * 读取一帧
+         *
+         * @return {@link #READ}读取了一帧，{@link #IDLE}暂时不需要读取，{@link #DONE}读取结束
+         */
+        int read() throws Throwable;
+
+        void onReadError(Throwable e);
+
+        void onReadFinish();
+    }
+}
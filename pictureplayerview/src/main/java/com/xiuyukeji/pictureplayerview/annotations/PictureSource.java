@@ -5,6 +5,8 @@ import android.support.annotation.IntDef;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 
+import static com.xiuyukeji.pictureplayerview.annotations.PictureSource.ARCHIVE_ASSETS;
+import static com.xiuyukeji.pictureplayerview.annotations.PictureSource.ARCHIVE_FILE;
 import static com.xiuyukeji.pictureplayerview.annotations.PictureSource.ASSETS;
 import static com.xiuyukeji.pictureplayerview.annotations.PictureSource.FILE;
 
@@ -13,7 +15,7 @@ import static com.xiuyukeji.pictureplayerview.annotations.PictureSource.FILE;
  *
  * @author Created by jz on 2017/6/6 10:39
  */
-@IntDef({FILE, ASSETS})
+@IntDef({FILE, ASSETS, ARCHIVE_FILE, ARCHIVE_ASSETS})
 @Retention(RetentionPolicy.SOURCE)
 public @interface PictureSource {
     /**
@@ -24,4 +26,12 @@ public @interface PictureSource {
      * 来自assets文件
      */
     int ASSETS = 1;
+    /**
+     * 来自sd卡上打包的文件
+     */
+    int ARCHIVE_FILE = 2;
+    /**
+     * 来自assets里打包的文件，打包的文件不能被压缩
+     */
+    int ARCHIVE_ASSETS = 3;
 }
\ No newline at end of file
@@ -0,0 +1,30 @@
+package com.xiuyukeji.pictureplayerview.annotations;
+
+import android.support.annotation.IntDef;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+import static com.xiuyukeji.pictureplayerview.annotations.PlayMode.BOUNCE;
+import static com.xiuyukeji.pictureplayerview.annotations.PlayMode.FORWARD;
+import static com.xiuyukeji.pictureplayerview.annotations.PlayMode.REVERSE;
+
+/**
+ * 播放模式
+ */
+@IntDef({FORWARD, REVERSE, BOUNCE})
+@Retention(RetentionPolicy.SOURCE)
+public @interface PlayMode {
+    /**
+     * 正放
+     */
+    int FORWARD = 0;
+    /**
+     * 倒放
+     */
+    int REVERSE = 1;
+    /**
+     * 往返播放，正放后倒放回来
+     */
+    int BOUNCE = 2;
+}
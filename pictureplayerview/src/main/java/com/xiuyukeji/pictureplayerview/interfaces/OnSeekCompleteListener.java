@@ -0,0 +1,8 @@
+package com.xiuyukeji.pictureplayerview.interfaces;
+
+/**
+ * 跳转完成回调，连续跳转时只回调最后一个目标
+ */
+public interface OnSeekCompleteListener {
+    void onSeekComplete(int frameIndex);
+}
@@ -0,0 +1,234 @@
+package com.xiuyukeji.pictureplayerview.utils;
+
+import android.support.annotation.NonNull;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 差量帧序列，每一帧只保存和上一帧不同的图块，关键帧保存整张图片，播放时把图块画到上一帧上
+ * <p>
+ * 格式为大端序，文件头32字节，依次是"PPVD"、版本、帧数、宽、高、图块大小、关键帧间隔、保留字段，
+ * 之后每一帧32字节的索引，依次是数据位置(8字节)、数据长度、标志(第0位为关键帧)、改变区域的左、上、右、下，
+ * 最后是每一帧deflate压缩后的数据：图块数，每个图块的左、上、宽、高和宽*高个ARGB像素，由tools模块的DeltaEncoderTool生成
+ * <p>
+ * 线程安全，可以同时读取不同的帧
+ */
+public class DeltaArchive {
+
+    static final int MAGIC = 'P' << 24 | 'P' << 16 | 'V' << 8 | 'D';
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    static final int ENTRY_SIZE = 32;
+    static final int FLAG_KEYFRAME = 1;
+
+    private final ByteBuffer mBuffer;
+    private final int mFrameCount;
+    private final int mWidth;
+    private final int mHeight;
+
+    private DeltaArchive(ByteBuffer buffer) throws IOException {
+        this.mBuffer = buffer;
+        if (!isDeltaArchive(buffer)) {
+            throw new IOException("not a delta archive");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("unsupported delta archive version " + buffer.getInt(4));
+        }
+        mFrameCount = buffer.getInt(8);
+        mWidth = buffer.getInt(12);
+        mHeight = buffer.getInt(16);
+        if (mFrameCount <= 0 || mWidth <= 0 || mHeight <= 0
+                || HEADER_SIZE + (long) mFrameCount * ENTRY_SIZE > buffer.capacity()) {
+            throw new IOException("delta archive is truncated");
+        }
+        if (!isKeyframe(0)) {
+            throw new IOException("first frame of delta archive must be a keyframe");
+        }
+        for (int i = 0; i < mFrameCount; i++) {
+            long offset = getOffset(i);
+            if (offset < 0 || offset + getFrameLength(i) > buffer.capacity()) {
+                throw new IOException("delta archive is truncated at frame " + i);
+            }
+        }
+    }
+
+    /**
+     * 是否是差量帧序列
+     *
+     * @param buffer 文件数据，从0开始
+     */
+    public static boolean isDeltaArchive(@NonNull ByteBuffer buffer) {
+        return buffer.capacity() >= HEADER_SIZE && buffer.getInt(0) == MAGIC;
+    }
+
+    /**
+     * 从映射的文件或者内存读取
+     *
+     * @param buffer 文件数据，从0开始
+     */
+    public static DeltaArchive wrap(@NonNull ByteBuffer buffer) throws IOException {
+        return new DeltaArchive(buffer);
+    }
+
+    public int getFrameCount() {
+        return mFrameCount;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public int getFrameLength(int frame) {
+        return mBuffer.getInt(getEntry(frame) + 8);
+    }
+
+    public boolean isKeyframe(int frame) {
+        return (mBuffer.getInt(getEntry(frame) + 12) & FLAG_KEYFRAME) != 0;
+    }
+
+    /**
+     * 返回frame之前最近的关键帧，包括这一帧
+     */
+    public int getKeyframe(int frame) {
+        while (frame > 0 && !isKeyframe(frame)) {
+            frame--;
+        }
+        return frame;
+    }
+
+    /**
+     * 返回和上一帧相比改变的区域
+     *
+     * @param frame 帧序列
+     * @param out   {左, 上, 右, 下}，没有改变时左等于右
+     */
+    public void getDirty(int frame, int[] out) {
+        int entry = getEntry(frame);
+        for (int i = 0; i < 4; i++) {
+            out[i] = mBuffer.getInt(entry + 16 + i * 4);
+        }
+    }
+
+    /**
+     * 解压一帧的图块
+     *
+     * @param frame 帧序列
+     */
+    public Frame readFrame(int frame) throws IOException {
+        ByteBuffer buffer = mBuffer.duplicate();
+        int offset = (int) getOffset(frame);
+        buffer.limit(offset + getFrameLength(frame));
+        buffer.position(offset);
+        Inflater inflater = new Inflater();
+        DataInputStream is = new DataInputStream(new BufferedInputStream(
+                new InflaterInputStream(new ByteBufferInputStream(buffer.slice()), inflater)));
+        try {
+            int tileCount = is.readInt();
+            if (tileCount < 0) {
+                throw new IOException("invalid tile count " + tileCount);
+            }
+            int[] tiles = new int[tileCount * 4];
+            long pixelCount = 0;
+            for (int i = 0; i < tileCount; i++) {
+                for (int j = 0; j < 4; j++) {
+                    tiles[i * 4 + j] = is.readInt();
+                }
+                int left = tiles[i * 4], top = tiles[i * 4 + 1], width = tiles[i * 4 + 2], height = tiles[i * 4 + 3];
+                if (left < 0 || top < 0 || width <= 0 || height <= 0
+                        || left + width > mWidth || top + height > mHeight) {
+                    throw new IOException("invalid tile at frame " + frame);
+                }
+                pixelCount += (long) width * height;
+            }
+            if (pixelCount > (long) mWidth * mHeight * 4) {//图块可以重叠，但不会比整张图片大很多
+                throw new IOException("too many pixels at frame " + frame);
+            }
+            byte[] bytes = new byte[(int) pixelCount * 4];
+            is.readFully(bytes);
+            int[] pixels = new int[(int) pixelCount];
+            ByteBuffer.wrap(bytes).asIntBuffer().get(pixels);
+            return new Frame(tiles, pixels);
+        } finally {
+            is.close();
+            inflater.end();
+        }
+    }
+
+    private long getOffset(int frame) {
+        return mBuffer.getLong(getEntry(frame));
+    }
+
+    private int getEntry(int frame) {
+        if (frame < 0 || frame >= mFrameCount) {
+            throw new IndexOutOfBoundsException("frame " + frame + " out of " + mFrameCount);
+        }
+        return HEADER_SIZE + frame * ENTRY_SIZE;
+    }
+
+    /**
+     * 一帧的图块，像素按图块顺序排列，每个图块按行排列
+     */
+    public static final class Frame {
+        private final int[] mTiles;
+        private final int[] mPixels;
+
+        Frame(int[] tiles, int[] pixels) {
+            this.mTiles = tiles;
+            this.mPixels = pixels;
+        }
+
+        public int getTileCount() {
+            return mTiles.length / 4;
+        }
+
+        public int getLeft(int tile) {
+            return mTiles[tile * 4];
+        }
+
+        public int getTop(int tile) {
+            return mTiles[tile * 4 + 1];
+        }
+
+        public int getWidth(int tile) {
+            return mTiles[tile * 4 + 2];
+        }
+
+        public int getHeight(int tile) {
+            return mTiles[tile * 4 + 3];
+        }
+
+        /**
+         * 返回所有图块的像素
+         */
+        public int[] getPixels() {
+            return mPixels;
+        }
+
+        /**
+         * 画到整张图片上
+         *
+         * @param canvas 按行排列的像素，宽度为序列的宽度
+         * @param stride 每行的像素数
+         */
+        public void apply(int[] canvas, int stride) {
+            int offset = 0;
+            int count = getTileCount();
+            for (int i = 0; i < count; i++) {
+                int width = getWidth(i);
+                for (int y = 0; y < getHeight(i); y++) {
+                    System.arraycopy(mPixels, offset, canvas, (getTop(i) + y) * stride + getLeft(i), width);
+                    offset += width;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.xiuyukeji.pictureplayerview.utils;
+
+import android.support.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 打包的帧序列，所有图片按顺序保存在一个文件里，通过内存映射读取，不用每一帧打开一次文件
+ * <p>
+ * 格式为大端序，文件头"PPVA"、版本、帧数、保留字段各4字节，之后每一帧24字节的索引，依次是数据位置(8字节)、数据长度、宽、高、标志(第0位为透明通道)，
+ * 宽高未知时为0，最后是所有图片数据，由{@link FrameArchivePacker}生成
+ * <p>
+ * 线程安全，多个解码线程可以同时读取
+ */
+public class FrameArchive {
+
+    static final int MAGIC = 'P' << 24 | 'P' << 16 | 'V' << 8 | 'A';
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int ENTRY_SIZE = 24;
+    static final int FLAG_ALPHA = 1;
+
+    private final ByteBuffer mBuffer;
+    private final int mFrameCount;
+
+    private FrameArchive(ByteBuffer buffer) throws IOException {
+        this.mBuffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("not a frame archive");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("unsupported frame archive version " + buffer.getInt(4));
+        }
+        mFrameCount = buffer.getInt(8);
+        if (mFrameCount <= 0 || HEADER_SIZE + (long) mFrameCount * ENTRY_SIZE > buffer.capacity()) {
+            throw new IOException("frame archive is truncated");
+        }
+        for (int i = 0; i < mFrameCount; i++) {
+            long offset = getOffset(i);
+            if (offset < 0 || offset + getFrameLength(i) > buffer.capacity()) {
+                throw new IOException("frame archive is truncated at frame " + i);
+            }
+        }
+    }
+
+    /**
+     * 打开文件
+     *
+     * @param file 打包的文件
+     */
+    public static FrameArchive open(@NonNull File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            return open(raf.getChannel(), 0, raf.length());
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * 映射文件的一部分，assets里没有压缩的文件可以通过AssetFileDescriptor得到位置，映射后可以关闭channel
+     *
+     * @param channel 文件
+     * @param offset  开始位置
+     * @param length  长度
+     */
+    public static FrameArchive open(@NonNull FileChannel channel, long offset, long length) throws IOException {
+        return new FrameArchive(channel.map(FileChannel.MapMode.READ_ONLY, offset, length));
+    }
+
+    /**
+     * 从已经在内存里的数据读取
+     *
+     * @param buffer 打包的数据，从0开始
+     */
+    public static FrameArchive wrap(@NonNull ByteBuffer buffer) throws IOException {
+        return new FrameArchive(buffer);
+    }
+
+    public int getFrameCount() {
+        return mFrameCount;
+    }
+
+    public int getFrameLength(int frame) {
+        return mBuffer.getInt(getEntry(frame) + 8);
+    }
+
+    public int getWidth(int frame) {
+        return mBuffer.getInt(getEntry(frame) + 12);
+    }
+
+    public int getHeight(int frame) {
+        return mBuffer.getInt(getEntry(frame) + 16);
+    }
+
+    public boolean hasAlpha(int frame) {
+        return (mBuffer.getInt(getEntry(frame) + 20) & FLAG_ALPHA) != 0;
+    }
+
+    /**
+     * 返回一帧图片数据的流，直接读取映射的内存，不需要关闭
+     *
+     * @param frame 帧序列
+     */
+    public InputStream openFrame(int frame) {
+        ByteBuffer buffer = mBuffer.duplicate();//每个流有自己的位置
+        int offset = (int) getOffset(frame);
+        buffer.limit(offset + getFrameLength(frame));
+        buffer.position(offset);
+        return new ByteBufferInputStream(buffer.slice());
+    }
+
+    /**
+     * 用打包时记录的宽高建立帧信息索引，宽高未知的帧解码时再读取
+     */
+    public FrameIndex createIndex() {
+        FrameIndex index = new FrameIndex(mFrameCount);
+        for (int i = 0; i < mFrameCount; i++) {
+            if (getWidth(i) > 0 && getHeight(i) > 0) {
+                index.set(i, getWidth(i), getHeight(i), hasAlpha(i), getFrameLength(i));
+            }
+        }
+        return index;
+    }
+
+    private long getOffset(int frame) {
+        return mBuffer.getLong(getEntry(frame));
+    }
+
+    private int getEntry(int frame) {
+        if (frame < 0 || frame >= mFrameCount) {
+            throw new IndexOutOfBoundsException("frame " + frame + " out of " + mFrameCount);
+        }
+        return HEADER_SIZE + frame * ENTRY_SIZE;
+    }
+}
@@ -0,0 +1,100 @@
+package com.xiuyukeji.pictureplayerview.utils;
+
+import android.support.annotation.NonNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * 把图片序列打包成{@link FrameArchive}，只用到JDK，在电脑上可以用tools模块的FrameArchivePackerTool打包
+ * <p>
+ * PNG会记录宽高和透明通道，其他格式在播放时读取
+ */
+public class FrameArchivePacker {
+
+    private FrameArchivePacker() {
+    }
+
+    /**
+     * 打包到文件
+     *
+     * @param frames 按播放顺序排列的图片
+     * @param output 输出文件
+     */
+    public static void pack(@NonNull File[] frames, @NonNull File output) throws IOException {
+        OutputStream os = new BufferedOutputStream(new FileOutputStream(output));
+        try {
+            pack(frames, os);
+        } finally {
+            os.close();
+        }
+    }
+
+    /**
+     * 打包
+     *
+     * @param frames 按播放顺序排列的图片
+     * @param os     输出，不会关闭
+     */
+    public static void pack(@NonNull File[] frames, @NonNull OutputStream os) throws IOException {
+        int count = frames.length;
+        if (count == 0) {
+            throw new IOException("no frames to pack");
+        }
+        ByteBuffer header = ByteBuffer.allocate(FrameArchive.HEADER_SIZE + count * FrameArchive.ENTRY_SIZE);
+        header.putInt(FrameArchive.MAGIC);
+        header.putInt(FrameArchive.VERSION);
+        header.putInt(count);
+        header.putInt(0);
+        long offset = header.capacity();
+        for (File frame : frames) {
+            long length = frame.length();
+            if (length <= 0 || length > Integer.MAX_VALUE) {
+                throw new IOException("invalid frame " + frame);
+            }
+            int[] png = probe(frame);
+            header.putLong(offset);
+            header.putInt((int) length);
+            header.putInt(png == null ? 0 : png[0]);
+            header.putInt(png == null ? 0 : png[1]);
+            header.putInt(png != null && png[2] != 0 ? FrameArchive.FLAG_ALPHA : 0);
+            offset += length;
+        }
+        os.write(header.array());
+
+        byte[] buffer = new byte[16 * 1024];
+        for (File frame : frames) {
+            InputStream is = new FileInputStream(frame);
+            try {
+                long remaining = frame.length();
+                int read;
+                while (remaining > 0 && (read = is.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1) {
+                    os.write(buffer, 0, read);
+                    remaining -= read;
+                }
+                if (remaining != 0) {
+                    throw new IOException("frame changed while packing " + frame);
+                }
+            } finally {
+                is.close();
+            }
+        }
+        os.flush();
+    }
+
+    private static int[] probe(File frame) throws IOException {
+        InputStream is = new BufferedInputStream(new FileInputStream(frame));
+        try {
+            return FrameIndex.probePng(is);
+        } finally {
+            is.close();
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.xiuyukeji.pictureplayerview.utils;
+
+import android.support.annotation.NonNull;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * 帧信息索引，保存每一帧图片的宽高、是否有透明通道和文件大小，解码前不用再读取一遍图片获得大小
+ * <p>
+ * 可以从PNG文件头读取，也可以从预先生成的索引文件加载，每行一帧，格式为"宽 高 透明(0或1) 文件大小"，#开头的行忽略
+ * <p>
+ * 线程安全，多个解码线程可以同时读写不同的帧
+ */
+public class FrameIndex {
+
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final int IHDR_LENGTH = 13;
+    private static final int PROBE_LIMIT = 64 * 1024;//查找tRNS最多读取的字节数，超过时当作有透明通道，iCCP等辅助块可能有几KB
+
+    private final int[] mWidths;
+    private final int[] mHeights;
+    private final boolean[] mHasAlphas;
+    private final long[] mByteSizes;
+    private int mIndexedCount;//已经有信息的帧数
+    private int mAlphaCount;//有透明通道的帧数
+
+    /**
+     * 构造函数，所有帧都还没有信息
+     *
+     * @param frameCount 帧数
+     */
+    public FrameIndex(int frameCount) {
+        mWidths = new int[frameCount];
+        mHeights = new int[frameCount];
+        mHasAlphas = new boolean[frameCount];
+        mByteSizes = new long[frameCount];
+    }
+
+    /**
+     * 从索引文件加载
+     *
+     * @param is         索引文件，不会关闭
+     * @param frameCount 帧数，必须和索引文件的行数一致
+     */
+    public static FrameIndex read(@NonNull InputStream is, int frameCount) throws IOException {
+        FrameIndex index = new FrameIndex(frameCount);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(is, "UTF-8"));
+        int frame = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] values = line.split("\\s+");
+            if (values.length != 4 || frame >= frameCount) {
+                throw new IOException("frame index does not match the data source at line: " + line);
+            }
+            try {
+                index.set(frame++, Integer.parseInt(values[0]), Integer.parseInt(values[1]),
+                        "1".equals(values[2]), Long.parseLong(values[3]));
+            } catch (NumberFormatException e) {
+                throw new IOException("frame index does not match the data source at line: " + line);
+            }
+        }
+        if (frame != frameCount) {
+            throw new IOException("frame index has " + frame + " frames, expected " + frameCount);
+        }
+        return index;
+    }
+
+    /**
+     * 写入索引文件，所有帧都必须已经有信息
+     *
+     * @param os 输出，不会关闭
+     */
+    public synchronized void write(@NonNull OutputStream os) throws IOException {
+        Writer writer = new OutputStreamWriter(os, "UTF-8");
+        int count = mWidths.length;
+        for (int i = 0; i < count; i++) {
+            if (!has(i)) {
+                throw new IOException("frame " + i + " has not been indexed");
+            }
+            writer.write(mWidths[i] + " " + mHeights[i] + " " + (mHasAlphas[i] ? 1 : 0) + " " + mByteSizes[i] + "\n");
+        }
+        writer.flush();
+    }
+
+    /**
+     * 从PNG文件头读取一帧的信息，读取后流会回到原来的位置
+     *
+     * @param frame    帧序列
+     * @param is       图片流，必须支持mark
+     * @param byteSize 文件大小
+     * @return 不是PNG时返回false
+     */
+    public boolean probe(int frame, @NonNull InputStream is, long byteSize) throws IOException {
+        int[] header = probePng(is);
+        if (header == null) {
+            return false;
+        }
+        set(frame, header[0], header[1], header[2] != 0, byteSize);
+        return true;
+    }
+
+    /**
+     * 读取PNG的宽高和是否有透明通道，读取后流会回到原来的位置
+     *
+     * @param is 图片流，必须支持mark
+     * @return {宽, 高, 是否有透明通道}，不是PNG时返回null
+     */
+    public static int[] probePng(@NonNull InputStream is) throws IOException {
+        is.mark(PROBE_LIMIT);
+        try {
+            byte[] signature = new byte[PNG_SIGNATURE.length];
+            if (!readFully(is, signature)) {
+                return null;
+            }
+            for (int i = 0; i < signature.length; i++) {
+                if (signature[i] != PNG_SIGNATURE[i]) {
+                    return null;
+                }
+            }
+            byte[] chunk = new byte[8 + IHDR_LENGTH];
+            if (!readFully(is, chunk) || readInt(chunk, 0) != IHDR_LENGTH || !isType(chunk, "IHDR")) {
+                return null;
+            }
+            int width = readInt(chunk, 8);
+            int height = readInt(chunk, 12);
+            int colorType = chunk[17];
+            boolean hasAlpha = colorType == 4 || colorType == 6//灰度和真彩色带透明通道
+                    || hasTransparency(is, chunk);
+            return new int[]{width, height, hasAlpha ? 1 : 0};
+        } finally {
+            is.reset();
+        }
+    }
+
+    //没有透明通道的PNG也可以用tRNS指定透明色，只会出现在IDAT之前
+    private static boolean hasTransparency(InputStream is, byte[] chunk) throws IOException {
+        long position = PNG_SIGNATURE.length + chunk.length + 4;//跳过IHDR的CRC
+        if (!skipFully(is, 4)) {
+            return true;
+        }
+        while (position + 8 <= PROBE_LIMIT) {
+            if (!readFully(is, chunk, 8)) {
+                return true;
+            }
+            if (isType(chunk, "tRNS")) {
+                return true;
+            }
+            if (isType(chunk, "IDAT")) {
+                return false;
+            }
+            long skip = (readInt(chunk, 0) & 0xFFFFFFFFL) + 4;
+            position += 8 + skip;
+            if (position > PROBE_LIMIT || !skipFully(is, skip)) {
+                return true;
+            }
+        }
+        return true;
+    }
+
+    //BufferedInputStream在mark之后只跳过缓冲区里的部分，其他流也可能跳过的比要求的少
+    private static boolean skipFully(InputStream is, long count) throws IOException {
+        while (count > 0) {
+            long skipped = is.skip(count);
+            if (skipped <= 0) {
+                if (is.read() < 0) {//跳不过去时读一个字节判断是否到了结尾
+                    return false;
+                }
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+        return true;
+    }
+
+    private static boolean readFully(InputStream is, byte[] buffer) throws IOException {
+        return readFully(is, buffer, buffer.length);
+    }
+
+    private static boolean readFully(InputStream is, byte[] buffer, int length) throws IOException {
+        int offset = 0;
+        while (offset < length) {
+            int count = is.read(buffer, offset, length - offset);
+            if (count < 0) {
+                return false;
+            }
+            offset += count;
+        }
+        return true;
+    }
+
+    private static int readInt(byte[] buffer, int offset) {
+        return (buffer[offset] & 0xFF) << 24 | (buffer[offset + 1] & 0xFF) << 16
+                | (buffer[offset + 2] & 0xFF) << 8 | (buffer[offset + 3] & 0xFF);
+    }
+
+    private static boolean isType(byte[] chunk, String type) {
+        for (int i = 0; i < 4; i++) {
+            if (chunk[4 + i] != type.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 设置一帧的信息
+     */
+    public synchronized void set(int frame, int width, int height, boolean hasAlpha, long byteSize) {
+        if (has(frame)) {
+            mIndexedCount--;
+            if (mHasAlphas[frame]) {
+                mAlphaCount--;
+            }
+        }
+        if (width > 0) {
+            mIndexedCount++;
+            if (hasAlpha) {
+                mAlphaCount++;
+            }
+        }
+        mWidths[frame] = width;
+        mHeights[frame] = height;
+        mHasAlphas[frame] = hasAlpha;
+        mByteSizes[frame] = byteSize;
+    }
+
+    /**
+     * 是否已经有这一帧的信息
+     */
+    public synchronized boolean has(int frame) {
+        return mWidths[frame] > 0;
+    }
+
+    /**
+     * 是否所有帧都已经有信息，并且都没有透明通道
+     */
+    public synchronized boolean isOpaque() {
+        return mIndexedCount == mWidths.length && mAlphaCount == 0;
+    }
+
+    public int getFrameCount() {
+        return mWidths.length;
+    }
+
+    public synchronized int getWidth(int frame) {
+        return mWidths[frame];
+    }
+
+    public synchronized int getHeight(int frame) {
+        return mHeights[frame];
+    }
+
+    public synchronized boolean hasAlpha(int frame) {
+        return mHasAlphas[frame];
+    }
+
+    public synchronized long getByteSize(int frame) {
+        return mByteSizes[frame];
+    }
+}
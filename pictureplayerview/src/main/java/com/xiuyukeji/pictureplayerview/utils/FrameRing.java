@@ -0,0 +1,194 @@
+package com.xiuyukeji.pictureplayerview.utils;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * 无锁的环形队列，一个生产者线程在最后添加，用来在读取线程和调度线程之间传递解码好的帧
+ * <p>
+ * 头尾位置只增加不回绕，分别填充在独立的缓存行上，添加和删除不会互相让对方的缓存失效。
+ * 头位置用CAS移动，可以有多个线程同时从头删除，比如调度线程删除显示过的帧，读取线程跳转时删除过时的帧或者清空队列，
+ * 每个元素只会被一个线程删除，删除的元素在CAS成功后回调，回调时不持有任何锁
+ * <p>
+ * {@link #offer(Object)}和{@link #clear()}只能在生产者线程调用，其他方法可以在任何线程调用
+ */
+public class FrameRing<T> {
+
+    private static final AtomicLongFieldUpdater<Index> HEAD = AtomicLongFieldUpdater.newUpdater(Index.class, "value");
+
+    private final Object[] mValues;
+    private final int mMask;
+    private final PaddedIndex mHead = new PaddedIndex();//下一个删除的位置
+    private final PaddedIndex mTail = new PaddedIndex();//下一个添加的位置，只有生产者移动
+
+    private final OnReleaseListener<T> mOnReleaseListener;
+
+    /**
+     * 构造函数
+     *
+     * @param capacity 最大数量，向上取到2的幂
+     * @param l        元素被删除时回调，回调线程为删除的线程
+     */
+    public FrameRing(int capacity, OnReleaseListener<T> l) {
+        if (capacity <= 0) {
+            throw new RuntimeException("capacity must be greater than 0");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.mValues = new Object[size];
+        this.mMask = size - 1;
+        this.mOnReleaseListener = l;
+    }
+
+    /**
+     * 添加到最后，只能在生产者线程调用
+     *
+     * @return 满了时返回false
+     */
+    public boolean offer(T value) {
+        long tail = mTail.value;
+        if (tail - mHead.value >= mValues.length) {
+            return false;
+        }
+        mValues[index(tail)] = value;
+        mTail.value = tail + 1;//写入元素后再发布位置
+        return true;
+    }
+
+    /**
+     * 取出第一个，不删除
+     */
+    public T getFirst() {
+        return get(0);
+    }
+
+    /**
+     * 获得index的数据，返回时可能已经被另一个线程删除
+     *
+     * @param index 从头开始的索引
+     */
+    public T get(int index) {
+        while (true) {
+            long head = mHead.value;
+            if (index < 0 || head + index >= mTail.value) {
+                return null;
+            }
+            T value = valueAt(head + index);
+            if (mHead.value == head) {//读取期间头没有移动，这个位置没有被重新写入
+                return value;
+            }
+        }
+    }
+
+    /**
+     * 删除第一个
+     */
+    public T removeFirst() {
+        while (true) {
+            long head = mHead.value;
+            if (head >= mTail.value) {
+                return null;
+            }
+            T value = valueAt(head);
+            if (HEAD.compareAndSet(mHead, head, head + 1)) {
+                release(value);
+                return value;
+            }
+        }
+    }
+
+    /**
+     * 第一个还是expected时删除
+     *
+     * @return 已经被删除或者不是第一个时返回false
+     */
+    public boolean removeFirst(T expected) {
+        while (true) {
+            long head = mHead.value;
+            if (head >= mTail.value || valueAt(head) != expected) {
+                return false;
+            }
+            if (HEAD.compareAndSet(mHead, head, head + 1)) {
+                release(expected);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 清除所有，只能在生产者线程调用，或者没有生产者时调用
+     */
+    public void clear() {
+        long tail = mTail.value;
+        long head;
+        do {
+            head = mHead.value;
+            if (head >= tail) {
+                return;
+            }
+        } while (!HEAD.compareAndSet(mHead, head, tail));
+        for (long i = head; i < tail; i++) {//生产者自己不会同时写入，可以放心读取
+            T value = valueAt(i);
+            mValues[index(i)] = null;
+            release(value);
+        }
+    }
+
+    /**
+     * 获得大小
+     */
+    public int size() {
+        long head = mHead.value;//先读头，头不会超过之后读到的尾
+        return (int) (mTail.value - head);
+    }
+
+    /**
+     * 是否为空
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * 返回实际的最大数量
+     */
+    public int getCapacity() {
+        return mValues.length;
+    }
+
+    //从头删除时不清空位置，清空可能覆盖生产者刚写入的元素，位置在下一圈被覆盖时释放引用
+    @SuppressWarnings("unchecked")
+    private T valueAt(long position) {
+        return (T) mValues[index(position)];
+    }
+
+    private int index(long position) {
+        return (int) position & mMask;
+    }
+
+    private void release(T value) {
+        if (mOnReleaseListener != null && value != null) {
+            mOnReleaseListener.onRelease(value);
+        }
+    }
+
+    public interface OnReleaseListener<T> {
+        void onRelease(T value);
+    }
+
+    //通过继承保证填充字段在位置的前后，虚拟机不会重排到一起
+    @SuppressWarnings("unused")
+    static class LeftPadding {
+        protected long p1, p2, p3, p4, p5, p6, p7;
+    }
+
+    static class Index extends LeftPadding {
+        protected volatile long value;
+    }
+
+    @SuppressWarnings("unused")
+    static final class PaddedIndex extends Index {
+        protected long p9, p10, p11, p12, p13, p14, p15;
+    }
+}
@@ -0,0 +1,105 @@
+package com.xiuyukeji.pictureplayerview.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 按帧序列记录读取窗口里每一帧的状态，帧序列直接对应位置，查找不用遍历
+ * <p>
+ * 窗口跟着播放向后滑动，同一个位置上新的帧覆盖已经显示或者删除的旧帧，还在解码或者等待显示的帧不能被覆盖。
+ * 帧序列和状态保存在同一个long里，读取线程和调度线程都可以用CAS修改
+ */
+public class FrameWindow {
+
+    public static final int EMPTY = 0;//不在窗口里
+    public static final int DECODING = 1;//正在解码
+    public static final int READY = 2;//已经放进缓存，等待显示
+    public static final int DISPLAYED = 3;//已经显示，位置可以被新的帧使用
+
+    private final AtomicLongArray mSlots;
+    private final int mMask;
+
+    /**
+     * 构造函数
+     *
+     * @param capacity 窗口最多跨越的帧数，向上取到2的幂
+     */
+    public FrameWindow(int capacity) {
+        if (capacity <= 0) {
+            throw new RuntimeException("capacity must be greater than 0");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.mSlots = new AtomicLongArray(size);
+        this.mMask = size - 1;
+    }
+
+    /**
+     * 获得帧的状态，位置被其他帧使用时返回{@link #EMPTY}
+     */
+    public int getState(int frameIndex) {
+        long slot = mSlots.get(index(frameIndex));
+        if (frameOf(slot) != frameIndex) {
+            return EMPTY;
+        }
+        return stateOf(slot);
+    }
+
+    /**
+     * 帧对应的位置上没有正在解码或者等待显示的帧
+     */
+    public boolean isAvailable(int frameIndex) {
+        int state = stateOf(mSlots.get(index(frameIndex)));
+        return state == EMPTY || state == DISPLAYED;
+    }
+
+    /**
+     * 设置帧的状态，覆盖这个位置上原来的帧
+     */
+    public void set(int frameIndex, int state) {
+        mSlots.set(index(frameIndex), pack(frameIndex, state));
+    }
+
+    /**
+     * 帧的状态还是expect时改为update
+     *
+     * @return 帧已经被覆盖或者状态不是expect时返回false
+     */
+    public boolean compareAndSet(int frameIndex, int expect, int update) {
+        return mSlots.compareAndSet(index(frameIndex), pack(frameIndex, expect), pack(frameIndex, update));
+    }
+
+    /**
+     * 清除所有
+     */
+    public void clear() {
+        int size = mSlots.length();
+        for (int i = 0; i < size; i++) {
+            mSlots.set(i, pack(0, EMPTY));
+        }
+    }
+
+    /**
+     * 返回实际跨越的帧数
+     */
+    public int getCapacity() {
+        return mSlots.length();
+    }
+
+    private int index(int frameIndex) {
+        return frameIndex & mMask;
+    }
+
+    private static long pack(int frameIndex, int state) {
+        return ((long) frameIndex << 32) | state;
+    }
+
+    private static int frameOf(long slot) {
+        return (int) (slot >> 32);
+    }
+
+    private static int stateOf(long slot) {
+        return (int) slot;
+    }
+}
@@ -27,13 +27,48 @@ public class ImageUtil {
                 width /= options.inSampleSize;
                 height /= options.inSampleSize;
             }
-            int byteCount = width * height * getBytesPerPixel(bitmap.getConfig());
+            if (isScaled(options)) {//解码时按密度缩放
+                float scale = options.inTargetDensity / (float) options.inDensity;
+                width = (int) (width * scale + 0.5f);
+                height = (int) (height * scale + 0.5f);
+            }
+            // 解码后的格式是inPreferredConfig，不是inBitmap原来的格式，ARGB_8888的图片可以用来解码RGB_565
+            int byteCount = width * height * getBytesPerPixel(getConfig(bitmap, options));
             return byteCount <= bitmap.getAllocationByteCount();
         }
-        // 在Android4.4之前，如果想使用inBitmap的话，解码的Bitmap必须和inBitmap设置的宽高相等，且inSampleSize为1
+        // 在Android4.4之前，如果想使用inBitmap的话，解码的Bitmap必须和inBitmap设置的宽高相等，且inSampleSize为1，也不能缩放
+        // 解码后的格式会变成inBitmap的格式，格式也必须相同
         return bitmap.getWidth() == options.outWidth
                 && bitmap.getHeight() == options.outHeight
-                && options.inSampleSize == 1;
+                && options.inSampleSize == 1
+                && !isScaled(options)
+                && bitmap.getConfig() == getConfig(bitmap, options);
+    }
+
+    private static Bitmap.Config getConfig(Bitmap bitmap, BitmapFactory.Options options) {
+        return options.inPreferredConfig != null ? options.inPreferredConfig : bitmap.getConfig();
+    }
+
+    private static boolean isScaled(BitmapFactory.Options options) {
+        return options.inScaled && options.inDensity != 0 && options.inTargetDensity != 0
+                && options.inDensity != options.inTargetDensity;
+    }
+
+    /**
+     * 计算缩小到不小于目标大小的最大采样率
+     *
+     * @param width     原图的宽
+     * @param height    原图的高
+     * @param reqWidth  目标的宽
+     * @param reqHeight 目标的高
+     * @return 2的幂
+     */
+    public static int calculateInSampleSize(int width, int height, int reqWidth, int reqHeight) {
+        int inSampleSize = 1;
+        while (width / (inSampleSize * 2) >= reqWidth && height / (inSampleSize * 2) >= reqHeight) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
     }
 
     //获取每个像素所占用的Byte数
@@ -0,0 +1,339 @@
+package com.xiuyukeji.pictureplayerview.utils;
+
+import android.support.annotation.NonNull;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 解码后的像素缓存，第一次播放时把每一帧的像素写进文件，之后播放时从映射的内存直接复制到图片，不用再解码
+ * <p>
+ * 每个序列一个文件，文件头32字节，依次是"PPVR"、版本、帧数、宽、高、像素格式、每帧字节数、保留字段，
+ * 之后每帧1字节表示是否已经写入，最后从4096字节对齐的位置开始是每一帧的像素，宽高或格式和第一帧不同的帧不缓存
+ * <p>
+ * 所有文件的总大小不超过上限，超过时按最近使用的时间删除其他序列，可以在多个View之间共用
+ */
+public class RawFrameCache {
+
+    /**
+     * 像素格式，和Bitmap.Config对应
+     */
+    public static final int CONFIG_ARGB_8888 = 1, CONFIG_RGB_565 = 2;
+
+    private static final int MAGIC = 'P' << 24 | 'P' << 16 | 'V' << 8 | 'R';
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int PAGE_SIZE = 4096;
+    private static final String SUFFIX = ".raw";
+
+    private final File mDirectory;
+    private final long mMaxSize;
+    private final Map<String, Integer> mOpenNames = new HashMap<>();//正在使用的文件和打开的次数，多个View可以打开同一个序列，都关闭后才能删除
+
+    /**
+     * 构造函数
+     *
+     * @param directory 缓存文件夹，建议放在应用的缓存目录下
+     * @param maxSize   所有文件的最大字节数
+     */
+    public RawFrameCache(@NonNull File directory, long maxSize) {
+        this.mDirectory = directory;
+        this.mMaxSize = maxSize;
+    }
+
+    /**
+     * 打开一个序列，还没有缓存时在写入第一帧时创建文件
+     *
+     * @param key        序列的标识，数据源改变时必须不同
+     * @param frameCount 帧数
+     */
+    public synchronized Sequence open(@NonNull String key, int frameCount) throws IOException {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            throw new IOException("can not create " + mDirectory);
+        }
+        String name = hash(key) + SUFFIX;
+        Sequence sequence = new Sequence(this, new File(mDirectory, name), frameCount);
+        Integer count = mOpenNames.get(name);
+        mOpenNames.put(name, count == null ? 1 : count + 1);
+        return sequence;
+    }
+
+    /**
+     * 返回所有文件的总字节数
+     */
+    public synchronized long getSize() {
+        long size = 0;
+        for (File file : listFiles()) {
+            size += file.length();
+        }
+        return size;
+    }
+
+    /**
+     * 删除所有没有在使用的文件
+     */
+    public synchronized void clear() {
+        for (File file : listFiles()) {
+            if (!mOpenNames.containsKey(file.getName())) {
+                file.delete();
+            }
+        }
+    }
+
+    private synchronized void close(Sequence sequence) {
+        String name = sequence.mFile.getName();
+        Integer count = mOpenNames.get(name);
+        if (count == null || count <= 1) {
+            mOpenNames.remove(name);
+        } else {
+            mOpenNames.put(name, count - 1);
+        }
+    }
+
+    //按最近使用的时间删除其他序列，直到放得下新的文件
+    private synchronized boolean reserve(File target, long size) {
+        if (size > mMaxSize) {
+            return false;
+        }
+        File[] files = listFiles();
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long l = lhs.lastModified(), r = rhs.lastModified();
+                return l < r ? -1 : (l == r ? 0 : 1);
+            }
+        });
+        long total = size;
+        for (File file : files) {
+            if (!file.equals(target)) {
+                total += file.length();
+            }
+        }
+        for (File file : files) {
+            if (total <= mMaxSize) {
+                break;
+            }
+            if (!file.equals(target) && !mOpenNames.containsKey(file.getName())) {
+                long length = file.length();
+                if (file.delete()) {
+                    total -= length;
+                }
+            }
+        }
+        return total <= mMaxSize;
+    }
+
+    private File[] listFiles() {
+        File[] files = mDirectory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.getName().endsWith(SUFFIX);
+            }
+        });
+        return files == null ? new File[0] : files;
+    }
+
+    private static String hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes("UTF-8"));
+            StringBuilder builder = new StringBuilder();
+            for (byte b : digest) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16))
+                        .append(Character.forDigit(b & 0xF, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static int getBytesPerPixel(int config) {
+        return config == CONFIG_RGB_565 ? 2 : 4;
+    }
+
+    /**
+     * 一个序列的缓存，多个解码线程可以同时读写不同的帧
+     */
+    public static final class Sequence {
+        private final RawFrameCache mCache;
+        private final File mFile;
+        private final int mFrameCount;
+
+        private MappedByteBuffer mBuffer;//写入第一帧前为null
+        private boolean mIsDisabled;//超过上限或者已经关闭
+        private int mWidth;
+        private int mHeight;
+        private int mConfig;
+        private int mSlotSize;
+        private long mDataOffset;
+
+        private Sequence(RawFrameCache cache, File file, int frameCount) throws IOException {
+            this.mCache = cache;
+            this.mFile = file;
+            this.mFrameCount = frameCount;
+            if (file.exists() && !load()) {
+                file.delete();
+            }
+        }
+
+        //已有的文件和帧数不一致时重新创建
+        private boolean load() throws IOException {
+            if (mFile.length() < HEADER_SIZE) {
+                return false;
+            }
+            MappedByteBuffer buffer = map(mFile.length());
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getInt(8) != mFrameCount) {
+                return false;
+            }
+            int width = buffer.getInt(12), height = buffer.getInt(16), config = buffer.getInt(20);
+            int slotSize = buffer.getInt(24);
+            long dataOffset = getDataOffset(mFrameCount);
+            if (slotSize != width * height * getBytesPerPixel(config)
+                    || dataOffset + (long) slotSize * mFrameCount != mFile.length()) {
+                return false;
+            }
+            mBuffer = buffer;
+            mWidth = width;
+            mHeight = height;
+            mConfig = config;
+            mSlotSize = slotSize;
+            mDataOffset = dataOffset;
+            mFile.setLastModified(System.currentTimeMillis());//最近使用
+            return true;
+        }
+
+        private MappedByteBuffer map(long size) throws IOException {
+            RandomAccessFile raf = new RandomAccessFile(mFile, "rw");
+            try {
+                if (raf.length() != size) {
+                    raf.setLength(size);
+                }
+                return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            } finally {
+                raf.close();
+            }
+        }
+
+        private static long getDataOffset(int frameCount) {
+            return (HEADER_SIZE + frameCount + PAGE_SIZE - 1) / PAGE_SIZE * PAGE_SIZE;
+        }
+
+        public synchronized int getWidth() {
+            return mWidth;
+        }
+
+        public synchronized int getHeight() {
+            return mHeight;
+        }
+
+        public synchronized int getConfig() {
+            return mConfig;
+        }
+
+        /**
+         * 是否已经缓存了这一帧
+         */
+        public synchronized boolean has(int frame) {
+            return mBuffer != null && !mIsDisabled && mBuffer.get(HEADER_SIZE + frame) != 0;
+        }
+
+        /**
+         * 读取一帧的像素
+         *
+         * @param frame 帧序列
+         * @return 只读的像素，没有缓存时返回null
+         */
+        public synchronized ByteBuffer read(int frame) {
+            if (!has(frame)) {
+                return null;
+            }
+            return getSlot(frame).asReadOnlyBuffer();
+        }
+
+        /**
+         * 开始写入一帧的像素，写完后调用{@link #commit(int)}
+         *
+         * @return 可以写入的像素，已经缓存、宽高或格式和第一帧不同、超过上限时返回null
+         */
+        public synchronized ByteBuffer beginWrite(int frame, int width, int height, int config) throws IOException {
+            if (mIsDisabled) {
+                return null;
+            }
+            if (mBuffer == null && !create(width, height, config)) {
+                mIsDisabled = true;
+                return null;
+            }
+            if (width != mWidth || height != mHeight || config != mConfig
+                    || mBuffer.get(HEADER_SIZE + frame) != 0) {
+                return null;
+            }
+            return getSlot(frame);
+        }
+
+        /**
+         * 像素写完，之后可以读取
+         */
+        public synchronized void commit(int frame) {
+            if (mBuffer != null && !mIsDisabled) {
+                mBuffer.put(HEADER_SIZE + frame, (byte) 1);
+            }
+        }
+
+        /**
+         * 关闭，之后不能再读写，映射的内存在没有引用后释放
+         */
+        public synchronized void close() {
+            if (mIsDisabled && mBuffer == null) {
+                return;
+            }
+            mIsDisabled = true;
+            mBuffer = null;
+            mCache.close(this);
+        }
+
+        private boolean create(int width, int height, int config) throws IOException {
+            int slotSize = width * height * getBytesPerPixel(config);
+            long dataOffset = getDataOffset(mFrameCount);
+            long size = dataOffset + (long) slotSize * mFrameCount;
+            if (slotSize <= 0 || size > Integer.MAX_VALUE || !mCache.reserve(mFile, size)) {
+                return false;
+            }
+            MappedByteBuffer buffer = map(size);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, mFrameCount);
+            buffer.putInt(12, width);
+            buffer.putInt(16, height);
+            buffer.putInt(20, config);
+            buffer.putInt(24, slotSize);
+            mBuffer = buffer;
+            mWidth = width;
+            mHeight = height;
+            mConfig = config;
+            mSlotSize = slotSize;
+            mDataOffset = dataOffset;
+            return true;
+        }
+
+        //每次返回新的对象，不同线程的位置互不影响
+        private ByteBuffer getSlot(int frame) {
+            ByteBuffer buffer = mBuffer.duplicate();
+            int offset = (int) (mDataOffset + (long) mSlotSize * frame);
+            buffer.limit(offset + mSlotSize);
+            buffer.position(offset);
+            return buffer.slice();
+        }
+    }
+}
@@ -0,0 +1,374 @@
+package com.xiuyukeji.pictureplayerview.utils;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 读取线程和调度线程之间的缓存、解码任务和跳转，不依赖图片和线程，可以在JVM上测试
+ * <p>
+ * 解码任务按帧序列排队，前面的帧还在解码时后面的帧等待，按顺序放进缓存，调度线程从头取出显示。
+ * 跳转时调度线程只记录目标并取消用不上的解码，读取线程下一次读取时保留目标之后还在窗口里的帧，
+ * 目标第一个出现在缓存里时才完成跳转
+ * <p>
+ * {@link #requestSeek(int)}、{@link #getFrame(int)}和{@link #displayed(Frame)}在调度线程调用，其他方法只能在读取线程调用
+ */
+public class ReadQueue<F extends ReadQueue.Frame, J extends ReadQueue.Job> {
+
+    private final FrameRing<F> mFrames;//读取线程添加，调度线程按顺序取出
+    private final FrameWindow mWindow;//按帧序列查找正在解码和等待显示的帧
+    private final ConcurrentLinkedQueue<J> mJobs = new ConcurrentLinkedQueue<>();//按帧序列排列的解码任务
+    private final Listener<F, J> mListener;
+
+    private final AtomicInteger mSeekRequest = new AtomicInteger(-1);//调度线程发出的最新跳转目标
+    private int mSeekTarget = -1;//读取线程正在准备的跳转目标
+    private volatile int mReadFrame;
+    private volatile long mDecodeCostNs;//解码一帧的平均时间
+    private volatile long mAvoidedCount;//因为来不及显示而没有解码的帧数
+
+    /**
+     * 构造函数
+     *
+     * @param capacity 缓存的最大帧数
+     * @param l        回调
+     */
+    public ReadQueue(int capacity, Listener<F, J> l) {
+        this.mListener = l;
+        this.mFrames = new FrameRing<>(capacity, new FrameRing.OnReleaseListener<F>() {
+            @Override
+            public void onRelease(F value) {
+                mWindow.compareAndSet(value.getIndex(), FrameWindow.READY, FrameWindow.EMPTY);//显示过的帧保持显示状态
+                mListener.onRelease(value);
+            }
+        });
+        this.mWindow = new FrameWindow(mFrames.getCapacity() * 4);//快速播放跳帧时窗口跨越的帧数比缓存数量多
+    }
+
+    /**
+     * 调度线程：记录跳转目标，目标还在窗口里时只取消前面的帧，否则正在解码的帧大多已经用不上了
+     * 之后需要唤醒读取线程
+     */
+    public void requestSeek(int frameIndex) {
+        mSeekRequest.set(frameIndex);
+        int state = mWindow.getState(frameIndex);
+        boolean isInWindow = state == FrameWindow.DECODING || state == FrameWindow.READY;
+        for (J job : mJobs) {
+            if (!isInWindow || job.getIndex() < frameIndex) {
+                job.cancel();
+            }
+        }
+    }
+
+    /**
+     * 调度线程：返回frameIndex对应的帧，之前已经过时的帧从缓存删除，读取落后时返回null
+     * 缓存里的帧按序列递增，但不一定连续，快速播放时会跳过不显示的帧
+     */
+    public F getFrame(int frameIndex) {
+        F first = mFrames.getFirst();
+        while (first != null && first.getIndex() < frameIndex) {
+            mFrames.removeFirst(first);
+            mListener.onSkip(first);
+            first = mFrames.getFirst();
+        }
+        if (first == null) {//读取线程会按调度的位置跳过来不及显示的帧
+            return null;
+        }
+        return first.getIndex() == frameIndex ? first : null;
+    }
+
+    /**
+     * 调度线程：{@link #getFrame(int)}返回的帧显示后从缓存删除，位置可以被后面的帧使用
+     */
+    public void displayed(F frame) {
+        mWindow.compareAndSet(frame.getIndex(), FrameWindow.READY, FrameWindow.DISPLAYED);
+        mFrames.removeFirst(frame);
+    }
+
+    /**
+     * 处理调度线程发出的最新跳转目标
+     *
+     * @return 是否有新的目标
+     */
+    public boolean applySeekRequest() {
+        int frameIndex = mSeekRequest.getAndSet(-1);
+        if (frameIndex == -1) {
+            return false;
+        }
+        applySeek(frameIndex);
+        return true;
+    }
+
+    //保留目标之后还在窗口里的帧，目标不在窗口里时从目标重新读取
+    private void applySeek(int frameIndex) {
+        mSeekTarget = frameIndex;
+        int state = mWindow.getState(frameIndex);
+        if (state == FrameWindow.DECODING) {//缓存里的帧都在目标之前，目标之后的解码继续
+            mFrames.clear();
+            abandonJobs(frameIndex);
+            return;
+        }
+        if (state == FrameWindow.READY) {
+            F first = mFrames.getFirst();
+            while (first != null && first.getIndex() < frameIndex) {
+                mFrames.removeFirst(first);//调度线程可能同时取走了这一帧
+                first = mFrames.getFirst();
+            }
+            if (first != null && first.getIndex() == frameIndex) {
+                return;
+            }
+        }
+        mFrames.clear();
+        abandonJobs();
+        mReadFrame = frameIndex;
+    }
+
+    /**
+     * 目标帧已经在缓存的第一个时返回目标，由调用者通知调度器完成跳转
+     *
+     * @return 没有准备好时返回-1
+     */
+    public int checkSeekReady() {
+        if (mSeekTarget == -1) {
+            return -1;
+        }
+        F first = mFrames.getFirst();
+        if (first == null || first.getIndex() != mSeekTarget) {
+            return -1;
+        }
+        int frameIndex = mSeekTarget;
+        mSeekTarget = -1;
+        return frameIndex;
+    }
+
+    /**
+     * 按帧序列顺序把解码完成的帧放进缓存，有新的跳转目标时先处理目标，再决定后面的帧是否还有用
+     */
+    public void collect() throws Throwable {
+        J job;
+        while ((job = mJobs.peek()) != null && job.isDone()) {
+            if (mSeekRequest.get() != -1) {
+                return;
+            }
+            mJobs.poll();
+            if (job.isAbandoned() || job.isCanceled()) {
+                mListener.onDiscard(job);
+                if (!job.isAbandoned()) {//跳转后仍然需要的帧被取消了解码，从这一帧重新读取
+                    mWindow.compareAndSet(job.getIndex(), FrameWindow.DECODING, FrameWindow.EMPTY);
+                    abandonJobs();
+                    mReadFrame = job.getIndex();
+                }
+                continue;
+            }
+            F frame = mListener.onDecoded(job);
+            updateDecodeCost(job.getCostNs());
+            add(frame);
+        }
+    }
+
+    /**
+     * 决定下一个读取的帧，调度落后时跳过解码完成前截止时间就会过去的帧
+     *
+     * @param endFrame    结束帧，循环时读到最后会接着读下一轮的开头
+     * @param readAhead   缓存和解码中的帧最多的数量
+     * @param threadCount 解码线程数
+     * @param isPaused    暂停时只读取一帧
+     * @param schedule    调度器
+     * @return 需要等待时返回-1
+     */
+    public int nextReadFrame(long endFrame, int readAhead, int threadCount, boolean isPaused, Schedule schedule) {
+        if (mReadFrame >= endFrame) {
+            return -1;
+        }
+        int size = mFrames.size();
+        int pending = mJobs.size();
+        if (pending >= threadCount//所有解码线程都在忙
+                || size + pending >= readAhead//解码中的帧也算在缓存里
+                || (size + pending >= 1 && isPaused)) {
+            return -1;
+        }
+        int frameIndex = skipLateFrames(mReadFrame, schedule);
+        if (frameIndex >= endFrame) {
+            mReadFrame = frameIndex;
+            return -1;
+        }
+        if (!mWindow.isAvailable(frameIndex)) {//窗口里同一个位置的帧还没有显示
+            return -1;
+        }
+        return frameIndex;
+    }
+
+    //只统计本来会被解码的帧
+    private int skipLateFrames(int frameIndex, Schedule schedule) {
+        long projected = schedule.getProjectedFrame(mDecodeCostNs);
+        if (projected <= frameIndex) {
+            return frameIndex;
+        }
+        long avoided = 0;
+        long index = frameIndex;
+        while (index < projected) {
+            avoided++;
+            index = schedule.getNextFrame(index);
+        }
+        mAvoidedCount += avoided;
+        return (int) projected;
+    }
+
+    //指数平均，偶尔一帧很慢不会让后面的帧都被跳过
+    private void updateDecodeCost(long costNs) {
+        long cost = mDecodeCostNs;
+        mDecodeCostNs = cost == 0 ? costNs : cost + (costNs - cost) / 8;
+    }
+
+    /**
+     * 开始解码一帧，完成后由{@link #collect()}按顺序放进缓存
+     */
+    public void addJob(J job) {
+        mWindow.set(job.getIndex(), FrameWindow.DECODING);
+        mJobs.add(job);
+    }
+
+    /**
+     * 读取了frameIndex后，按当前速度继续读取之后会被调度的帧，快速播放时不会显示的帧不解码
+     */
+    public void advance(int frameIndex, Schedule schedule) {
+        mReadFrame = (int) schedule.getNextFrame(frameIndex);
+    }
+
+    /**
+     * 不用解码的帧直接放进缓存，先改状态再放进缓存，调度线程取出后不会被改回来
+     */
+    public void add(F frame) {
+        mWindow.set(frame.getIndex(), FrameWindow.READY);
+        if (!mFrames.offer(frame)) {//按缓存数量读取，不会满
+            mWindow.set(frame.getIndex(), FrameWindow.EMPTY);
+            mListener.onRelease(frame);
+        }
+    }
+
+    /**
+     * 循环重新开始，上一轮剩下的帧和解码都放弃，从第一帧读取
+     */
+    public void restart() {
+        mFrames.clear();
+        abandonJobs();
+        mReadFrame = 0;
+    }
+
+    /**
+     * 放弃所有解码中的帧
+     */
+    public void abandonJobs() {
+        abandonJobs(Integer.MAX_VALUE);
+    }
+
+    //循环重新开始后前面还可能有上一轮放弃的帧，所以要全部检查
+    private void abandonJobs(int endFrame) {
+        for (J job : mJobs) {
+            if (job.getIndex() < endFrame && !job.isAbandoned()) {
+                job.abandon();
+                mWindow.compareAndSet(job.getIndex(), FrameWindow.DECODING, FrameWindow.EMPTY);
+            }
+        }
+    }
+
+    /**
+     * 读取结束时依次取出所有解码任务
+     */
+    public J pollJob() {
+        return mJobs.poll();
+    }
+
+    /**
+     * 两个线程都停止后清空，删除的帧会回调{@link Listener#onRelease(Frame)}
+     */
+    public void reset() {
+        mFrames.clear();
+        mWindow.clear();
+        mReadFrame = 0;
+        mSeekRequest.set(-1);
+        mSeekTarget = -1;
+    }
+
+    public F get(int index) {
+        return mFrames.get(index);
+    }
+
+    public int size() {
+        return mFrames.size();
+    }
+
+    public boolean isEmpty() {
+        return mFrames.isEmpty();
+    }
+
+    public int getCapacity() {
+        return mFrames.getCapacity();
+    }
+
+    /**
+     * 返回解码中的帧数
+     */
+    public int getPendingCount() {
+        return mJobs.size();
+    }
+
+    public int getReadFrame() {
+        return mReadFrame;
+    }
+
+    public long getDecodeCostNs() {
+        return mDecodeCostNs;
+    }
+
+    public long getAvoidedCount() {
+        return mAvoidedCount;
+    }
+
+    public void clearAvoidedCount() {
+        mAvoidedCount = 0;
+    }
+
+    /**
+     * 缓存里的帧
+     */
+    public interface Frame {
+        int getIndex();//时间轴上的帧序列
+    }
+
+    /**
+     * 一帧的解码任务
+     */
+    public interface Job {
+        int getIndex();
+
+        boolean isDone();
+
+        long getCostNs();
+
+        void cancel();//跳转时取消解码，结果可能不完整
+
+        void abandon();//结果不再需要
+
+        boolean isCanceled();
+
+        boolean isAbandoned();
+    }
+
+    /**
+     * 读取需要的调度信息
+     */
+    public interface Schedule {
+        long getNextFrame(long frameIndex);//按当前速度frameIndex之后会被调度的帧
+
+        long getProjectedFrame(long leadNs);//leadNs之后还来得及显示的第一帧
+    }
+
+    public interface Listener<F, J> {
+        F onDecoded(J job) throws Throwable;//解码完成，返回放进缓存的帧，结果有错误时抛出
+
+        void onDiscard(J job);//取消或者放弃的解码任务，图片可以复用
+
+        void onSkip(F frame);//调度线程跳过的没有显示的帧，已经从缓存删除
+
+        void onRelease(F frame);//从缓存删除，回调线程为删除的线程
+    }
+}
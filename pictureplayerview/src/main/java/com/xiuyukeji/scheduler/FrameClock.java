@@ -0,0 +1,23 @@
+package com.xiuyukeji.scheduler;
+
+/**
+ * 单调时钟，单位纳秒
+ */
+public interface FrameClock {
+    /**
+     * 系统单调时钟，与{@link android.os.SystemClock#uptimeMillis()}同源
+     */
+    FrameClock SYSTEM = new FrameClock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+    };
+
+    /**
+     * 返回当前时间
+     *
+     * @return 纳秒
+     */
+    long nanoTime();
+}
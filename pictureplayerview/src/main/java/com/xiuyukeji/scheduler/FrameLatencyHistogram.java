@@ -0,0 +1,116 @@
+package com.xiuyukeji.scheduler;
+
+/**
+ * 帧延迟直方图，按毫秒分桶，记录时不分配内存，只做几次整数运算
+ * <p>
+ * 在调度线程记录，其他线程可以随时读取，读到的是最近的近似值
+ */
+public final class FrameLatencyHistogram {
+
+    /**
+     * 桶的数量，第0个为准时(延迟不超过1毫秒)，第n个为延迟n到n+1毫秒，最后一个为延迟更多
+     */
+    public static final int BUCKET_COUNT = 64;
+
+    private static final long BUCKET_NS = 1000000L;
+
+    private final long[] mBuckets = new long[BUCKET_COUNT];
+    private volatile long mCount;
+    private volatile long mSkippedCount;
+
+    /**
+     * 记录一帧的延迟
+     *
+     * @param latenessNs 更新时间减去截止时间，提前为负数
+     */
+    void record(long latenessNs) {
+        int index;
+        if (latenessNs <= BUCKET_NS) {
+            index = 0;
+        } else {
+            long ms = (latenessNs - 1) / BUCKET_NS;
+            index = ms >= BUCKET_COUNT - 1 ? BUCKET_COUNT - 1 : (int) ms;
+        }
+        mBuckets[index]++;
+        mCount++;//volatile写在桶之后，读到数量时桶已经更新
+    }
+
+    /**
+     * 记录跳过的帧
+     *
+     * @param count 帧数
+     */
+    void recordSkipped(long count) {
+        mSkippedCount += count;
+    }
+
+    /**
+     * 返回记录的帧数，不包括跳过的帧
+     */
+    public long getCount() {
+        return mCount;
+    }
+
+    /**
+     * 返回准时的帧数
+     */
+    public long getOnTimeCount() {
+        return getBucketCount(0);
+    }
+
+    /**
+     * 返回跳过的帧数
+     */
+    public long getSkippedCount() {
+        return mSkippedCount;
+    }
+
+    /**
+     * 返回某个桶的帧数
+     *
+     * @param index 桶序列，即延迟毫秒数
+     */
+    public long getBucketCount(int index) {
+        if (index < 0 || index >= BUCKET_COUNT) {
+            throw new RuntimeException("index must be between 0 and " + (BUCKET_COUNT - 1));
+        }
+        return mBuckets[index];
+    }
+
+    /**
+     * 返回百分位延迟，不包括跳过的帧
+     *
+     * @param percentile 百分位，0到100
+     * @return 延迟毫秒数(向下取整)，0为准时，没有记录时返回0
+     */
+    public int getPercentileMs(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new RuntimeException("percentile must be between 0 and 100");
+        }
+        long count = mCount;
+        if (count == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(count * percentile / 100);
+        long sum = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            sum += mBuckets[i];
+            if (sum >= target) {
+                return i;
+            }
+        }
+        return BUCKET_COUNT - 1;
+    }
+
+    public int getP50Ms() {
+        return getPercentileMs(50);
+    }
+
+    public int getP95Ms() {
+        return getPercentileMs(95);
+    }
+
+    public int getP99Ms() {
+        return getPercentileMs(99);
+    }
+}
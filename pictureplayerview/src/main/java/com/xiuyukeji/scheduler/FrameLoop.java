@@ -0,0 +1,87 @@
+package com.xiuyukeji.scheduler;
+
+/**
+ * 调度线程每一帧的决定：下一帧的消息什么时候发出、显示前补齐多久、显示后下一帧是哪一帧，以及读取线程可以跳到哪一帧
+ * <p>
+ * 只依赖{@link FramePacer}，等待和显示交给{@link Host}，不依赖Handler，可以在JVM上按虚拟时钟运行
+ */
+final class FrameLoop {
+
+    private static final long MS = 1000000L;
+
+    private final FramePacer mPacer;
+
+    FrameLoop(FramePacer pacer) {
+        this.mPacer = pacer;
+    }
+
+    /**
+     * Handler只能精确到毫秒，消息提前到截止时间所在的毫秒，剩下的在{@link #showFrame}里补齐
+     *
+     * @return 毫秒
+     */
+    long getPostDelayMs(long frameIndex, long nowNs) {
+        return Math.max(0, getDelayNs(frameIndex, nowNs) / MS);
+    }
+
+    /**
+     * 离截止时间还有多久，已经过了时为负数
+     */
+    long getDelayNs(long frameIndex, long nowNs) {
+        return mPacer.getDeadlineNs(frameIndex) - nowNs;
+    }
+
+    /**
+     * 补齐到截止时间后显示，按显示完的时间决定下一帧，落后时跳过来不及显示的帧
+     *
+     * @param isWait 是否补齐，共用线程时不补齐，防止阻塞其他调度器
+     * @return 下一帧
+     */
+    long showFrame(long frameIndex, boolean isWait, boolean isSkipFrame, Host host) {
+        if (isWait) {
+            long delayNs = getDelayNs(frameIndex, host.nanoTime());
+            if (delayNs > 0) {
+                host.sleepNanos(delayNs);
+            }
+        }
+        mPacer.onFrameUpdate(frameIndex, host.nanoTime());
+        host.update(frameIndex);
+        return mPacer.nextFrame(frameIndex, host.nanoTime(), isSkipFrame);
+    }
+
+    /**
+     * 垂直同步时显示这次刷新对应的帧，一次刷新只能显示一帧
+     *
+     * @param toleranceNs 截止时间在刷新时间之后多久以内都算这次刷新
+     * @return 下一帧，这次刷新没有需要显示的帧时返回-1
+     */
+    long showVsyncFrame(long frameIndex, long frameTimeNanos, long toleranceNs, boolean isSkipFrame, Host host) {
+        long index = mPacer.getVsyncFrame(frameIndex, frameTimeNanos, toleranceNs, isSkipFrame);
+        if (index == -1) {
+            return -1;
+        }
+        mPacer.onFrameUpdate(index, frameTimeNanos);
+        host.update(index);
+        return mPacer.getNextFrame(index);
+    }
+
+    /**
+     * 预测leadNs之后还来得及显示的第一帧
+     *
+     * @return 帧序列，不会小于当前帧
+     */
+    long getProjectedFrame(long frameIndex, long nowNs, long leadNs) {
+        return Math.max(frameIndex, mPacer.getDueFrame(nowNs + leadNs));
+    }
+
+    /**
+     * 调度线程的时钟、等待和显示
+     */
+    interface Host {
+        long nanoTime();
+
+        void sleepNanos(long nanos);
+
+        void update(long frameIndex);//显示这一帧，返回时已经画完
+    }
+}
@@ -0,0 +1,401 @@
+package com.xiuyukeji.scheduler;
+
+/**
+ * 帧节拍计算，每一帧的截止时间都由锚点直接算出(start + n * period)，不做累加，所以不会漂移
+ * <p>
+ * 不依赖Android，可以直接在JVM上测试
+ */
+public final class FramePacer {
+
+    /**
+     * 超过截止时间多少纳秒算作错过
+     */
+    public static final long MISSED_THRESHOLD_NS = 1000000L;
+
+    private static final double MIN_INTERVAL_RATIO = 0.95;//留一点余量，防止刷新间隔的测量误差导致正常速度下也丢帧
+
+    private final FrameTimeline mTimeline;
+    private final long mFrameCount;
+    private final FrameLatencyHistogram mHistogram = new FrameLatencyHistogram();
+
+    private volatile long mAnchorNs;//读取线程也会读取，用来预测播放位置
+    private volatile long mAnchorMediaNs;
+
+    private volatile double mRate = 1;
+    private volatile long mMinIntervalNs;
+    private volatile boolean mIsLoop;
+    private volatile long mLoopEndFrame;//不循环时结束的帧序列，循环中取消时为这一轮的结束
+    private volatile FrameSegments mSegments;//分段播放时不为null
+
+    private long mUpdateCount;
+    private long mSkippedCount;
+    private long mMissedCount;
+    private long mMaxPacingErrorNs;
+    private long mTotalPacingErrorNs;
+
+    /**
+     * 构造函数，均匀时间轴
+     *
+     * @param duration   总时间，毫秒
+     * @param frameCount 总帧数
+     */
+    public FramePacer(long duration, int frameCount) {
+        this(FrameTimeline.uniform(duration, frameCount));
+    }
+
+    /**
+     * 构造函数
+     *
+     * @param timeline 时间轴
+     */
+    public FramePacer(FrameTimeline timeline) {
+        this.mTimeline = timeline;
+        this.mFrameCount = timeline.getFrameCount();
+        this.mLoopEndFrame = mFrameCount;
+    }
+
+    /**
+     * 返回时间轴
+     */
+    public FrameTimeline getTimeline() {
+        return mTimeline;
+    }
+
+    /**
+     * 设置锚点，frameIndex这一帧的截止时间为nowNs
+     *
+     * @param frameIndex 帧序列
+     * @param nowNs      当前时间
+     */
+    public void anchor(long frameIndex, long nowNs) {
+        this.mAnchorMediaNs = getOffsetNs(frameIndex);
+        this.mAnchorNs = nowNs;
+    }
+
+    /**
+     * 设置播放速度，以nowNs时的播放位置为新的锚点，已经播放的部分不受影响
+     *
+     * @param rate  速度，1为正常速度
+     * @param nowNs 当前时间
+     */
+    public void setRate(double rate, long nowNs) {
+        this.mAnchorMediaNs = getMediaTimeNs(nowNs);
+        this.mAnchorNs = nowNs;
+        this.mRate = rate;
+    }
+
+    /**
+     * 返回播放速度
+     */
+    public double getRate() {
+        return mRate;
+    }
+
+    /**
+     * 设置是否循环，循环时帧序列可以超过总帧数，第n轮的第i帧为n * 总帧数 + i，时间接在上一轮的最后一帧之后
+     * <p>
+     * 取消循环时在第一轮结束，循环中取消时使用{@link #setLoop(boolean, long)}
+     *
+     * @param isLoop 是否循环
+     */
+    public void setLoop(boolean isLoop) {
+        setLoop(isLoop, 0);
+    }
+
+    /**
+     * 设置是否循环，取消循环时在frameIndex所在的这一轮结束，之前几轮的帧的时间不变
+     *
+     * @param isLoop     是否循环
+     * @param frameIndex 当前帧序列
+     */
+    public void setLoop(boolean isLoop, long frameIndex) {
+        if (!isLoop) {
+            this.mLoopEndFrame = (Math.max(0, frameIndex) / mFrameCount + 1) * mFrameCount;
+        }
+        this.mIsLoop = isLoop;
+    }
+
+    /**
+     * 返回是否循环
+     */
+    public boolean isLoop() {
+        return mIsLoop;
+    }
+
+    /**
+     * 设置分段播放，帧序列按分段计算时间，不再使用{@link #setLoop(boolean)}
+     * <p>
+     * 播放中可以替换为添加了片段的分段，已经调度的帧的时间不能改变
+     *
+     * @param segments 分段，null为按时间轴播放
+     */
+    public void setSegments(FrameSegments segments) {
+        this.mSegments = segments;
+    }
+
+    /**
+     * 返回分段，没有分段时返回null
+     */
+    public FrameSegments getSegments() {
+        return mSegments;
+    }
+
+    /**
+     * 返回结束的帧序列，即总帧数，循环时返回{@link Long#MAX_VALUE}，循环中取消时为那一轮的结束
+     */
+    public long getEndFrame() {
+        FrameSegments segments = mSegments;
+        if (segments != null) {
+            return segments.getFrameCount();
+        }
+        return mIsLoop ? Long.MAX_VALUE : mLoopEndFrame;
+    }
+
+    /**
+     * 设置两帧之间的最小间隔，一般为屏幕刷新间隔，快速播放时间隔小于它的帧不会被调度
+     *
+     * @param minIntervalNs 纳秒，0为不限制
+     */
+    public void setMinIntervalNs(long minIntervalNs) {
+        this.mMinIntervalNs = minIntervalNs;
+    }
+
+    /**
+     * 获得帧相对第一帧的时间
+     *
+     * @param frameIndex 帧序列
+     * @return 纳秒
+     */
+    public long getOffsetNs(long frameIndex) {
+        FrameSegments segments = mSegments;
+        if (segments != null) {
+            return segments.getTimeNs(frameIndex);
+        }
+        if (frameIndex >= mFrameCount) {//下一轮接在上一轮结束的时间，循环中取消后已经在后面几轮的帧也一样
+            return frameIndex / mFrameCount * mTimeline.getEndTimeNs() + mTimeline.getTimeNs(frameIndex % mFrameCount);
+        }
+        return mTimeline.getTimeNs(frameIndex);
+    }
+
+    /**
+     * 获得帧的截止时间
+     *
+     * @param frameIndex 帧序列
+     * @return 纳秒
+     */
+    public long getDeadlineNs(long frameIndex) {
+        long mediaNs = getOffsetNs(frameIndex) - mAnchorMediaNs;
+        double rate = mRate;
+        if (rate == 1) {
+            return mAnchorNs + mediaNs;
+        }
+        return mAnchorNs + Math.round(mediaNs / rate);
+    }
+
+    /**
+     * 获得某个时间对应的播放位置
+     *
+     * @param nowNs 时间
+     * @return 相对第一帧的时间，纳秒
+     */
+    public long getMediaTimeNs(long nowNs) {
+        long elapsedNs = nowNs - mAnchorNs;
+        double rate = mRate;
+        if (rate == 1) {
+            return mAnchorMediaNs + elapsedNs;
+        }
+        return mAnchorMediaNs + Math.round(elapsedNs * rate);
+    }
+
+    /**
+     * 获得平均帧间隔
+     *
+     * @return 纳秒
+     */
+    public long getPeriodNs() {
+        return mTimeline.getEndTimeNs() / mFrameCount;
+    }
+
+    /**
+     * 获得某个时间应该显示的帧，即截止时间小于等于nowNs的最后一帧
+     *
+     * @param nowNs 时间
+     * @return 帧序列，还没有到第一帧时返回-1，可能大于等于总帧数
+     */
+    public long getFrameAt(long nowNs) {
+        return getFrameAtMedia(getMediaTimeNs(nowNs));
+    }
+
+    private long getFrameAtMedia(long mediaNs) {
+        FrameSegments segments = mSegments;
+        if (segments != null) {
+            return segments.getFrameAt(mediaNs);
+        }
+        long endNs = mTimeline.getEndTimeNs();
+        if (mediaNs < endNs) {
+            return mTimeline.getFrameAt(mediaNs);
+        }
+        long round = mediaNs / endNs;
+        if (!mIsLoop) {//不循环时超过最后一轮按最后一轮计算
+            round = Math.min(round, mLoopEndFrame / mFrameCount - 1);
+        }
+        return round * mFrameCount + mTimeline.getFrameAt(mediaNs - round * endNs);
+    }
+
+    /**
+     * 获得截止时间不早于nowNs的第一帧，即这个时间之后还来得及显示的第一帧
+     *
+     * @param nowNs 时间
+     * @return 帧序列，超过最后一帧时返回总帧数
+     */
+    public long getDueFrame(long nowNs) {
+        long frame = getFrameAt(nowNs);
+        if (frame < 0) {
+            return 0;
+        }
+        long endFrame = getEndFrame();
+        if (frame < endFrame && getDeadlineNs(frame) < nowNs) {
+            frame++;
+        }
+        return Math.min(frame, endFrame);
+    }
+
+    /**
+     * 按当前速度计算下一个会被调度的帧，不考虑超时跳帧
+     * <p>
+     * 快速播放时间隔小于{@link #setMinIntervalNs(long)}的帧会被跳过，读取线程可以据此不去解码这些帧
+     *
+     * @param frameIndex 帧序列
+     * @return 下一帧序列，最后一帧之后返回总帧数
+     */
+    public long getNextFrame(long frameIndex) {
+        long next = frameIndex + 1;
+        long minIntervalNs = mMinIntervalNs;
+        long endFrame = getEndFrame();
+        if (minIntervalNs <= 0 || next >= endFrame - 1) {
+            return next;
+        }
+        long targetNs = getOffsetNs(frameIndex) + (long) (minIntervalNs * MIN_INTERVAL_RATIO * mRate);
+        if (getOffsetNs(next) >= targetNs) {
+            return next;
+        }
+        long frame = getFrameAtMedia(targetNs);
+        if (getOffsetNs(frame) < targetNs) {
+            frame++;
+        }
+        return Math.min(frame, endFrame - 1);//不循环时最后一帧始终显示
+    }
+
+    /**
+     * 计算下一帧，跳帧时返回截止时间还没到的第一帧
+     *
+     * @param frameIndex  当前帧序列
+     * @param nowNs       当前时间
+     * @param isSkipFrame 是否跳帧
+     * @return 下一帧序列
+     */
+    public long nextFrame(long frameIndex, long nowNs, boolean isSkipFrame) {
+        long next = getNextFrame(frameIndex);
+        if (isSkipFrame && getDeadlineNs(next) < nowNs) {
+            long skipTo = getDueFrame(nowNs);
+            if (skipTo > next) {
+                mSkippedCount += skipTo - next;
+                mHistogram.recordSkipped(skipTo - next);
+                next = skipTo;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * 垂直同步模式下计算这次刷新要显示的帧，帧序列由刷新时间决定
+     *
+     * @param frameIndex  下一帧序列
+     * @param vsyncNs     刷新时间
+     * @param toleranceNs 容差，截止时间在刷新时间之后toleranceNs以内的帧也算到这次刷新，一般为刷新间隔的一半
+     * @param isSkipFrame 是否跳帧
+     * @return 要显示的帧序列，还没有到时间则返回-1
+     */
+    public long getVsyncFrame(long frameIndex, long vsyncNs, long toleranceNs, boolean isSkipFrame) {
+        long targetNs = vsyncNs + toleranceNs;
+        if (getDeadlineNs(frameIndex) > targetNs) {
+            return -1;
+        }
+        if (!isSkipFrame) {
+            return frameIndex;
+        }
+        long dueFrame = getFrameAt(targetNs);
+        dueFrame = Math.min(dueFrame, getEndFrame() - 1);
+        if (dueFrame > frameIndex) {
+            mSkippedCount += dueFrame - frameIndex;
+            mHistogram.recordSkipped(dueFrame - frameIndex);
+            return dueFrame;
+        }
+        return frameIndex;
+    }
+
+    /**
+     * 记录某一帧真实的更新时间
+     *
+     * @param frameIndex 帧序列
+     * @param nowNs      更新时间
+     */
+    public void onFrameUpdate(long frameIndex, long nowNs) {
+        long lateness = nowNs - getDeadlineNs(frameIndex);
+        long error = Math.abs(lateness);
+        mUpdateCount++;
+        mTotalPacingErrorNs += error;
+        if (error > mMaxPacingErrorNs) {
+            mMaxPacingErrorNs = error;
+        }
+        if (lateness > MISSED_THRESHOLD_NS) {
+            mMissedCount++;
+        }
+        mHistogram.record(lateness);
+    }
+
+    /**
+     * 返回延迟直方图
+     */
+    public FrameLatencyHistogram getLatencyHistogram() {
+        return mHistogram;
+    }
+
+    /**
+     * 返回已更新的帧数
+     */
+    public long getUpdateCount() {
+        return mUpdateCount;
+    }
+
+    /**
+     * 返回因为超时被跳过的帧数
+     */
+    public long getSkippedCount() {
+        return mSkippedCount;
+    }
+
+    /**
+     * 返回错过截止时间(超过{@link #MISSED_THRESHOLD_NS})的帧数
+     */
+    public long getMissedCount() {
+        return mMissedCount;
+    }
+
+    /**
+     * 返回最大节拍误差，纳秒
+     */
+    public long getMaxPacingErrorNs() {
+        return mMaxPacingErrorNs;
+    }
+
+    /**
+     * 返回平均节拍误差，纳秒
+     */
+    public long getMeanPacingErrorNs() {
+        if (mUpdateCount == 0) {
+            return 0;
+        }
+        return mTotalPacingErrorNs / mUpdateCount;
+    }
+}
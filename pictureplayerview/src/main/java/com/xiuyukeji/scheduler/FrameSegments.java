@@ -0,0 +1,279 @@
+package com.xiuyukeji.scheduler;
+
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * 分段播放，按顺序播放时间轴上的多个片段，每个片段可以重复多遍，前后两段之间没有间隔
+ * <p>
+ * 帧序列从第一个片段开始一直增加，第k个片段第r遍的第j帧接在前面所有帧之后，由{@link #getTimelineFrame(long)}得到时间轴上的帧
+ * <p>
+ * 不可变，添加片段时返回新的对象，调度线程和读取线程可以直接读取
+ */
+public final class FrameSegments {
+
+    /**
+     * 无限循环，只能是最后一个片段
+     */
+    public static final int LOOP_INFINITE = -1;
+
+    private final FrameTimeline mTimeline;
+    private final int[] mStarts;//片段在时间轴上的第一帧
+    private final int[] mEnds;//片段在时间轴上的最后一帧，包括这一帧
+    private final int[] mLoopCounts;
+    private final long[] mFrameStarts;//片段的第一帧序列，最后多一个总帧数
+    private final long[] mTimeStarts;//片段的开始时间，最后多一个结束时间
+
+    /**
+     * 构造函数，没有片段
+     *
+     * @param timeline 时间轴
+     */
+    public FrameSegments(@NonNull FrameTimeline timeline) {
+        this(timeline, new int[0], new int[0], new int[0]);
+    }
+
+    private FrameSegments(FrameTimeline timeline, int[] starts, int[] ends, int[] loopCounts) {
+        this.mTimeline = timeline;
+        this.mStarts = starts;
+        this.mEnds = ends;
+        this.mLoopCounts = loopCounts;
+
+        int count = starts.length;
+        mFrameStarts = new long[count + 1];
+        mTimeStarts = new long[count + 1];
+        for (int i = 0; i < count; i++) {
+            if (loopCounts[i] == LOOP_INFINITE) {
+                mFrameStarts[i + 1] = Long.MAX_VALUE;
+                mTimeStarts[i + 1] = Long.MAX_VALUE;
+            } else {
+                mFrameStarts[i + 1] = mFrameStarts[i] + (long) getLength(i) * loopCounts[i];
+                mTimeStarts[i + 1] = mTimeStarts[i] + getDurationNs(i) * loopCounts[i];
+            }
+        }
+    }
+
+    /**
+     * 在最后添加一个片段
+     *
+     * @param start     时间轴上的第一帧
+     * @param end       时间轴上的最后一帧，包括这一帧
+     * @param loopCount 播放遍数，{@link #LOOP_INFINITE}为无限循环
+     * @return 新的分段
+     */
+    public FrameSegments append(int start, int end, int loopCount) {
+        if (start < 0 || end >= mTimeline.getFrameCount() || start > end) {
+            throw new RuntimeException("segment must be between 0 and " + (mTimeline.getFrameCount() - 1));
+        }
+        if (loopCount < 1 && loopCount != LOOP_INFINITE) {
+            throw new RuntimeException("loopCount must be greater than 0");
+        }
+        if (isInfinite()) {
+            throw new RuntimeException("can not append after an infinite segment");
+        }
+        int count = mStarts.length;
+        int[] starts = Arrays.copyOf(mStarts, count + 1);
+        int[] ends = Arrays.copyOf(mEnds, count + 1);
+        int[] loopCounts = Arrays.copyOf(mLoopCounts, count + 1);
+        starts[count] = start;
+        ends[count] = end;
+        loopCounts[count] = loopCount;
+        return new FrameSegments(mTimeline, starts, ends, loopCounts);
+    }
+
+    /**
+     * 最后一个片段改为无限循环
+     *
+     * @return 新的分段
+     */
+    public FrameSegments loop() {
+        int last = mStarts.length - 1;
+        if (last < 0 || isInfinite()) {
+            return this;
+        }
+        int[] loopCounts = Arrays.copyOf(mLoopCounts, last + 1);
+        loopCounts[last] = LOOP_INFINITE;
+        return new FrameSegments(mTimeline, mStarts, mEnds, loopCounts);
+    }
+
+    /**
+     * 无限循环的最后一个片段在frameIndex所在的这一遍播放完后结束，frameIndex之前的帧不受影响
+     *
+     * @param frameIndex 帧序列
+     * @return 新的分段
+     */
+    public FrameSegments finish(long frameIndex) {
+        if (!isInfinite()) {
+            return this;
+        }
+        int last = mStarts.length - 1;
+        long pass = Math.max(0, frameIndex - mFrameStarts[last]) / getLength(last);
+        int[] loopCounts = Arrays.copyOf(mLoopCounts, last + 1);
+        loopCounts[last] = (int) Math.min(Integer.MAX_VALUE, pass + 1);
+        return new FrameSegments(mTimeline, mStarts, mEnds, loopCounts);
+    }
+
+    /**
+     * 返回时间轴
+     */
+    public FrameTimeline getTimeline() {
+        return mTimeline;
+    }
+
+    /**
+     * 返回片段数量
+     */
+    public int getSegmentCount() {
+        return mStarts.length;
+    }
+
+    /**
+     * 最后一个片段是否无限循环
+     */
+    public boolean isInfinite() {
+        int count = mLoopCounts.length;
+        return count > 0 && mLoopCounts[count - 1] == LOOP_INFINITE;
+    }
+
+    /**
+     * 返回总帧数，无限循环时返回{@link Long#MAX_VALUE}
+     */
+    public long getFrameCount() {
+        return mFrameStarts[mStarts.length];
+    }
+
+    /**
+     * 返回播放完最后一帧的时间，无限循环时返回{@link Long#MAX_VALUE}
+     */
+    public long getEndTimeNs() {
+        return mTimeStarts[mStarts.length];
+    }
+
+    /**
+     * 返回片段的第一帧序列
+     *
+     * @param index 片段序列
+     */
+    public long getSegmentFrame(int index) {
+        return mFrameStarts[index];
+    }
+
+    /**
+     * 返回帧对应的时间轴上的帧
+     *
+     * @param frameIndex 帧序列
+     * @return 时间轴帧序列，超过总帧数时返回最后一帧
+     */
+    public int getTimelineFrame(long frameIndex) {
+        int segment = findByFrame(frameIndex);
+        if (frameIndex >= mFrameStarts[segment + 1]) {
+            return mEnds[segment];
+        }
+        return mStarts[segment] + (int) (Math.max(0, frameIndex - mFrameStarts[segment]) % getLength(segment));
+    }
+
+    /**
+     * 返回帧开始显示的时间
+     *
+     * @param frameIndex 帧序列
+     * @return 纳秒，超过总帧数时返回结束时间
+     */
+    public long getTimeNs(long frameIndex) {
+        if (frameIndex <= 0) {
+            return 0;
+        }
+        int segment = findByFrame(frameIndex);
+        if (frameIndex >= mFrameStarts[segment + 1]) {
+            return mTimeStarts[segment + 1];
+        }
+        int length = getLength(segment);
+        long offset = frameIndex - mFrameStarts[segment];
+        int start = mStarts[segment];
+        return mTimeStarts[segment] + offset / length * getDurationNs(segment)
+                + mTimeline.getTimeNs(start + offset % length) - mTimeline.getTimeNs(start);
+    }
+
+    /**
+     * 返回某个时间应该显示的帧，即开始时间小于等于timeNs的最后一帧
+     *
+     * @param timeNs 时间
+     * @return 帧序列，小于0时返回-1，超过结束时间时返回总帧数
+     */
+    public long getFrameAt(long timeNs) {
+        if (timeNs < 0) {
+            return -1;
+        }
+        int segment = findByTime(timeNs);
+        if (timeNs >= mTimeStarts[segment + 1]) {
+            return mFrameStarts[segment + 1];
+        }
+        int length = getLength(segment);
+        long durationNs = getDurationNs(segment);
+        long offsetNs = timeNs - mTimeStarts[segment];
+        int start = mStarts[segment];
+        long frame = mTimeline.getFrameAt(mTimeline.getTimeNs(start) + offsetNs % durationNs) - start;
+        frame = Math.max(0, Math.min(frame, length - 1));
+        return mFrameStarts[segment] + offsetNs / durationNs * length + frame;
+    }
+
+    /**
+     * 返回显示时间轴上某一帧的帧序列，优先在nearFrameIndex所在片段的这一遍里查找，没有时取包含它的第一个片段的第一遍
+     *
+     * @param timelineFrame  时间轴帧序列
+     * @param nearFrameIndex 参考帧序列
+     * @return 帧序列，没有片段包含这一帧时返回参考帧所在片段里最接近的帧
+     */
+    public long getFrameIndexOf(int timelineFrame, long nearFrameIndex) {
+        int segment = findByFrame(nearFrameIndex);
+        if (!contains(segment, timelineFrame)) {
+            for (int i = 0; i < mStarts.length; i++) {
+                if (contains(i, timelineFrame)) {
+                    return mFrameStarts[i] + timelineFrame - mStarts[i];
+                }
+            }
+        }
+        int length = getLength(segment);
+        long pass = Math.max(0, Math.min(nearFrameIndex, mFrameStarts[segment + 1] - 1) - mFrameStarts[segment]) / length;
+        int frame = Math.max(mStarts[segment], Math.min(timelineFrame, mEnds[segment]));
+        return mFrameStarts[segment] + pass * length + frame - mStarts[segment];
+    }
+
+    private boolean contains(int segment, int timelineFrame) {
+        return timelineFrame >= mStarts[segment] && timelineFrame <= mEnds[segment];
+    }
+
+    private int getLength(int segment) {
+        return mEnds[segment] - mStarts[segment] + 1;
+    }
+
+    //片段的一遍的时长，最后一帧同样停留它的时长
+    private long getDurationNs(int segment) {
+        return mTimeline.getTimeNs(mEnds[segment] + 1) - mTimeline.getTimeNs(mStarts[segment]);
+    }
+
+    //片段一般只有几个，直接从后往前找
+    private int findByFrame(long frameIndex) {
+        checkSegments();
+        int segment = mStarts.length - 1;
+        while (segment > 0 && mFrameStarts[segment] > frameIndex) {
+            segment--;
+        }
+        return segment;
+    }
+
+    private int findByTime(long timeNs) {
+        checkSegments();
+        int segment = mStarts.length - 1;
+        while (segment > 0 && mTimeStarts[segment] > timeNs) {
+            segment--;
+        }
+        return segment;
+    }
+
+    private void checkSegments() {
+        if (mStarts.length == 0) {
+            throw new RuntimeException("segments is empty");
+        }
+    }
+}
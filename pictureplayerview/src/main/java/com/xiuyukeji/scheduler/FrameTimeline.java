@@ -0,0 +1,236 @@
+package com.xiuyukeji.scheduler;
+
+import android.support.annotation.IntRange;
+import android.support.annotation.NonNull;
+
+/**
+ * 帧时间轴，记录每一帧开始显示的时间，每一帧可以有不同的时长
+ * <p>
+ * 一帧需要停留很久时不用再复制图片，这一帧只解码一次，在时长内也不会重画
+ * <p>
+ * 时间轴的帧和图片不一定一一对应，倒放和往返播放时由{@link #getSourceIndex(long)}得到要显示的图片
+ */
+public final class FrameTimeline {
+
+    private final int mFrameCount;
+    private final long mDurationNs;//均匀时间轴的总时间，第一帧开始到最后一帧结束
+    private final long[] mTimesNs;//非均匀时间轴每一帧的开始时间，最后多一个结束时间
+    private final int[] mSources;//每一帧对应的图片，为null时一一对应
+    private final int mSourceCount;
+
+    private FrameTimeline(int frameCount, long durationNs, long[] timesNs) {
+        this(frameCount, durationNs, timesNs, null, frameCount);
+    }
+
+    private FrameTimeline(int frameCount, long durationNs, long[] timesNs, int[] sources, int sourceCount) {
+        this.mFrameCount = frameCount;
+        this.mDurationNs = durationNs;
+        this.mTimesNs = timesNs;
+        this.mSources = sources;
+        this.mSourceCount = sourceCount;
+    }
+
+    /**
+     * 均匀时间轴，每一帧停留duration / frameCount，最后一帧显示完时正好是duration
+     *
+     * @param duration   总时间，毫秒
+     * @param frameCount 总帧数
+     */
+    public static FrameTimeline uniform(@IntRange(from = 1) long duration, @IntRange(from = 2) int frameCount) {
+        if (frameCount > duration) {
+            throw new RuntimeException("duration must be greater than frameCount");
+        }
+        if (duration < 1) {
+            throw new RuntimeException("duration must be greater than 0");
+        }
+        if (frameCount < 2) {
+            throw new RuntimeException("frameCount must be greater than 2");
+        }
+        return new FrameTimeline(frameCount, duration * 1000000L, null);
+    }
+
+    /**
+     * 按每一帧的时长生成时间轴
+     *
+     * @param durations 每一帧的时长，毫秒
+     */
+    public static FrameTimeline ofDurations(@NonNull long[] durations) {
+        int count = durations.length;
+        if (count < 1) {
+            throw new RuntimeException("frameCount must be greater than 0");
+        }
+        long[] timesNs = new long[count + 1];
+        for (int i = 0; i < count; i++) {
+            if (durations[i] < 1) {
+                throw new RuntimeException("duration must be greater than 0");
+            }
+            timesNs[i + 1] = timesNs[i] + durations[i] * 1000000L;
+        }
+        return new FrameTimeline(count, 0, timesNs);
+    }
+
+    /**
+     * 倒放，从最后一张图片播放到第一张，每张图片的时长不变
+     */
+    public FrameTimeline reverse() {
+        int[] frames = new int[mFrameCount];
+        for (int i = 0; i < mFrameCount; i++) {
+            frames[i] = mFrameCount - 1 - i;
+        }
+        return sequence(frames);
+    }
+
+    /**
+     * 往返播放，正放到最后一张后倒放回来，折返处的图片不重复显示
+     *
+     * @param isLoop 是否循环，循环时不包含最后回到的第一张，由下一次循环显示
+     */
+    public FrameTimeline bounce(boolean isLoop) {
+        int end = isLoop ? 1 : 0;
+        int count = mFrameCount + Math.max(0, mFrameCount - 1 - end);
+        int[] frames = new int[count];
+        for (int i = 0; i < mFrameCount; i++) {
+            frames[i] = i;
+        }
+        for (int i = mFrameCount; i < count; i++) {
+            frames[i] = 2 * mFrameCount - 2 - i;
+        }
+        return sequence(frames);
+    }
+
+    //按frames的顺序重新排列，frames为当前时间轴的帧序列
+    private FrameTimeline sequence(int[] frames) {
+        int count = frames.length;
+        long[] timesNs = new long[count + 1];
+        int[] sources = new int[count];
+        for (int i = 0; i < count; i++) {
+            timesNs[i + 1] = timesNs[i] + getFrameDurationNs(frames[i]);
+            sources[i] = getSourceIndex(frames[i]);
+        }
+        return new FrameTimeline(count, 0, timesNs, sources, mSourceCount);
+    }
+
+    /**
+     * 返回总帧数
+     */
+    public int getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * 返回图片数量
+     */
+    public int getSourceCount() {
+        return mSourceCount;
+    }
+
+    /**
+     * 返回帧对应的图片
+     *
+     * @param frameIndex 帧序列
+     * @return 图片序列
+     */
+    public int getSourceIndex(long frameIndex) {
+        if (mSources == null) {
+            return (int) frameIndex;
+        }
+        return mSources[(int) frameIndex];
+    }
+
+    /**
+     * 返回显示某张图片的帧，有多个时返回离nearFrameIndex最近的
+     *
+     * @param sourceIndex    图片序列
+     * @param nearFrameIndex 参考帧序列
+     * @return 帧序列，没有时返回-1
+     */
+    public long getFrameIndexOf(int sourceIndex, long nearFrameIndex) {
+        if (mSources == null) {
+            return sourceIndex < mFrameCount ? sourceIndex : -1;
+        }
+        long frameIndex = -1;
+        long distance = Long.MAX_VALUE;
+        for (int i = 0; i < mFrameCount; i++) {
+            if (mSources[i] == sourceIndex && Math.abs(i - nearFrameIndex) < distance) {
+                frameIndex = i;
+                distance = Math.abs(i - nearFrameIndex);
+            }
+        }
+        return frameIndex;
+    }
+
+    /**
+     * 是否为均匀时间轴
+     */
+    public boolean isUniform() {
+        return mTimesNs == null;
+    }
+
+    /**
+     * 返回播放完最后一帧的时间，纳秒
+     */
+    public long getEndTimeNs() {
+        return getTimeNs(mFrameCount);
+    }
+
+    /**
+     * 返回帧开始显示的时间，均匀时间轴可以超出范围，非均匀时间轴超出范围时返回边界
+     *
+     * @param frameIndex 帧序列
+     * @return 纳秒
+     */
+    public long getTimeNs(long frameIndex) {
+        if (mTimesNs == null) {
+            return frameIndex * mDurationNs / mFrameCount;
+        }
+        if (frameIndex <= 0) {
+            return 0;
+        }
+        if (frameIndex >= mFrameCount) {
+            return mTimesNs[mFrameCount];
+        }
+        return mTimesNs[(int) frameIndex];
+    }
+
+    /**
+     * 返回帧的时长，纳秒
+     *
+     * @param frameIndex 帧序列
+     */
+    public long getFrameDurationNs(long frameIndex) {
+        return getTimeNs(frameIndex + 1) - getTimeNs(frameIndex);
+    }
+
+    /**
+     * 返回某个时间应该显示的帧，即开始时间小于等于timeNs的最后一帧
+     *
+     * @param timeNs 时间
+     * @return 帧序列，小于0时返回-1，非均匀时间轴超过结束时间时返回总帧数
+     */
+    public long getFrameAt(long timeNs) {
+        if (timeNs < 0) {
+            return -1;
+        }
+        if (mTimesNs == null) {
+            long frameIndex = timeNs * mFrameCount / mDurationNs;
+            while (getTimeNs(frameIndex + 1) <= timeNs) {//整数除法的误差修正
+                frameIndex++;
+            }
+            return frameIndex;
+        }
+        if (timeNs >= mTimesNs[mFrameCount]) {
+            return mFrameCount;
+        }
+        int low = 0;
+        int high = mFrameCount - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (mTimesNs[mid] <= timeNs) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,22 @@
+package com.xiuyukeji.scheduler;
+
+/**
+ * 不阻塞的跳转回调，都在调度线程回调
+ */
+public interface OnAsyncSeekToListener {
+    /**
+     * 开始跳转，不能阻塞，准备好这一帧后调用{@link Scheduler#seekReady(long)}
+     * 连续跳转时会回调多次，只有最后一个目标会完成
+     */
+    void onSeekTo(long frameIndex);
+
+    /**
+     * 暂停中跳转，显示这一帧
+     */
+    void onSeekUpdate(long frameIndex);
+
+    /**
+     * 跳转完成
+     */
+    void onSeekToComplete(long frameIndex);
+}
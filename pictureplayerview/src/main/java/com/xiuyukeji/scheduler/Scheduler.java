@@ -1,12 +1,19 @@
 package com.xiuyukeji.scheduler;
 
 import android.annotation.SuppressLint;
+import android.annotation.TargetApi;
+import android.os.Build;
 import android.os.Handler;
 import android.os.HandlerThread;
+import android.os.Looper;
 import android.os.Message;
 import android.os.SystemClock;
+import android.support.annotation.FloatRange;
 import android.support.annotation.IntRange;
 import android.support.annotation.NonNull;
+import android.view.Choreographer;
+
+import java.util.Arrays;
 
 /**
  * 调度器
@@ -15,34 +22,46 @@ import android.support.annotation.NonNull;
  */
 public final class Scheduler {
 
-    private static final int MSG_QUIT = -1, MSG_FRAME = 0, MSG_SEEK = 1;
+    private static final int MSG_QUIT = -1, MSG_FRAME = 0, MSG_SEEK = 1, MSG_START = 2, MSG_RESUME = 3, MSG_RATE = 4, MSG_SEEK_READY = 5, MSG_RESTART = 6;
+
+    private static final long DEFAULT_VSYNC_INTERVAL_NS = 16666667L;
+    private static final long MIN_VSYNC_INTERVAL_NS = 4000000L;
+    private static final long MAX_VSYNC_INTERVAL_NS = 50000000L;//超过时中间漏掉了刷新
+    private static final int VSYNC_SAMPLE_COUNT = 9;
 
-    private final Object mLock = new Object();
+    private final SchedulerState mState = new SchedulerState();
+    private final SeekRequest mSeekRequest = new SeekRequest();
+    private final Object mQuitLock = new Object();
 
     private FrameThread mFrameThread;
-    private FrameHandler mHandler;
+    private volatile FrameHandler mHandler;
+    private volatile VsyncCallback mVsyncCallback;
 
-    private long mDuration;
     private long mFrameCount;
 
-    private double mDelayTime;
-    private double mCurrentUptimeMs;
+    private FramePacer mPacer;
+    private FrameLoop mLoop;//每一帧什么时候显示、显示后下一帧是哪一帧
+    private FrameClock mClock = FrameClock.SYSTEM;
 
     private volatile long mFrameIndex;
+    private volatile long mEndFrame;//显示到这一帧之前结束，循环时没有结束
 
     private boolean mIsSkipFrame = false;
+    private boolean mIsVsync = false;
+    private boolean mIsSharedThread = false;
+    private boolean mIsRestartable = false;
+
+    private long mLastVsyncNs;//0为下一次刷新不测量间隔
+    private volatile long mVsyncIntervalNs = DEFAULT_VSYNC_INTERVAL_NS;
 
-    private volatile boolean mIsStared = false;
-    private volatile boolean mIsRunning = false;
-    private volatile boolean mIsPaused = false;
-    private volatile boolean mIsCancel = false;
-    private volatile boolean mIsRunPause = false;
-    private volatile boolean mIsWaitResume = false;
-    private volatile boolean mIsSeekToComplete = true;
+    private volatile float mPlaybackRate = 1;
+    private volatile long mSeekLatencyNs = -1;
+
+    private boolean mIsQuit = false;
 
     private OnFrameUpdateListener mOnFrameUpdateListener;
     private OnFrameListener mOnFrameListener;
-    private OnSeekToListener mOnSeekToListener;
+    private OnAsyncSeekToListener mOnSeekToListener;//只在调度线程使用
 
     /**
      * 调度器只能运行一次
@@ -64,138 +83,342 @@ public final class Scheduler {
      * @param fl         其他回调
      */
     public Scheduler(@IntRange(from = 1) long duration, @IntRange(from = 2) long frameCount, @NonNull OnFrameUpdateListener l, OnFrameListener fl) {
-        if (frameCount > duration) {
-            throw new RuntimeException("duration must be greater than frameCount");
-        }
-        if (duration < 1) {
-            throw new RuntimeException("duration must be greater than 0");
-        }
-        if (frameCount < 2) {
-            throw new RuntimeException("frameCount must be greater than 2");
-        }
+        this(FrameTimeline.uniform(duration, (int) frameCount), l, fl);
+    }
+
+    /**
+     * 构造函数
+     *
+     * @param timeline 时间轴
+     * @param l        更新回调
+     */
+    public Scheduler(@NonNull FrameTimeline timeline, @NonNull OnFrameUpdateListener l) {
+        this(timeline, l, null);
+    }
 
-        this.mDuration = duration;
-        this.mFrameCount = frameCount;
+    /**
+     * 构造函数
+     *
+     * @param timeline 时间轴
+     * @param l        更新回调
+     * @param fl       其他回调
+     */
+    public Scheduler(@NonNull FrameTimeline timeline, @NonNull OnFrameUpdateListener l, OnFrameListener fl) {
+        this.mFrameCount = timeline.getFrameCount();
+        this.mEndFrame = mFrameCount;
         this.mOnFrameUpdateListener = l;
         this.mOnFrameListener = fl;
 
-        mDelayTime = mDuration / (double) (mFrameCount - 1);
+        mPacer = new FramePacer(timeline);
+        mLoop = new FrameLoop(mPacer);
     }
 
     /**
-     * 开始调度器，只能运行一次
+     * 开始调度器，只能调用一次，需要重复播放时使用{@link #setRestartable(boolean)}和{@link #restart()}
      */
     public void start() {
-        if (isStarted()) {
+        if (!mState.start()) {
             throw new RuntimeException("scheduler can only run once");
         }
-        mIsStared = true;
 
-        mFrameThread = new FrameThread("scheduler");
-        mFrameThread.start();
+        if (mIsSharedThread) {
+            mHandler = new FrameHandler(SharedFrameThread.acquire());
+            mHandler.sendEmptyMessage(MSG_START);
+        } else {
+            mFrameThread = new FrameThread("scheduler");
+            mFrameThread.start();
+        }
     }
 
     /**
-     * 恢复调度器，{@link #isRunning()}返回true调用才有效
+     * 播放结束后从第一帧重新开始，调度线程、时钟和统计都继续使用，{@link #isEnded()}返回true调用才有效
      *
      * @return 是否调用成功
      */
-    public boolean resume() {
-        if (!isRunning() || !isPaused() || mIsCancel) {
+    public boolean restart() {
+        if (!mState.restart()) {
             return false;
         }
-        if (!isSeekToComplete()) {
-            mIsWaitResume = true;
-            return true;
-        }
+        mHandler.sendEmptyMessage(MSG_RESTART);
+        return true;
+    }
 
-        synchronized (mLock) {
-            if (mIsRunPause) {//如果暂停被阻塞，则等待
-                SchedulerUtil.lockWait(mLock);
-            }
-            if (!mIsRunning) {//如果在等待过程中发现线程被停止则跳出
-                return false;
-            }
-            mIsPaused = false;
-            mCurrentUptimeMs = SystemClock.uptimeMillis();
-            next(mCurrentUptimeMs);
+    /**
+     * 恢复调度器，{@link #isRunning()}返回true调用才有效，不会阻塞，由调度线程重新开始调度
+     *
+     * @return 是否调用成功
+     */
+    public boolean resume() {
+        int result = mState.resume();
+        if (result == SchedulerState.RESUME_DONE) {
+            mHandler.sendEmptyMessage(MSG_RESUME);
         }
-
-        return true;
+        return result != SchedulerState.RESUME_FAILED;//seekTo中恢复会在seekTo完成后执行
     }
 
     /**
-     * 暂停调度器，{@link #isRunning()}返回true调用才有效
+     * 暂停调度器，{@link #isRunning()}返回true调用才有效，不会阻塞
      *
      * @return 是否调用成功
      */
     public boolean pause() {
-        if (!isRunning() || isPaused() || mIsCancel) {
+        if (!mState.pause()) {
             return false;
         }
-
-        mIsRunPause = true;
-        mIsPaused = true;
-        mHandler.removeMessages(MSG_FRAME);
-        synchronized (mLock) {
-            mIsRunPause = false;
-            mLock.notifyAll();
-        }
-
+        removeNext();//已经在执行的帧会在检查到暂停后跳出
         return true;
     }
 
     /**
-     * 结束调度器，调用{@link #start()}后才能调用，且只能调用一次
+     * 结束调度器并等待调度线程结束，在调度线程上调用时不等待
      */
     public void stop() {
-        if (!isStarted()) {
-            throw new RuntimeException("scheduler not yet running");
+        stopAsync();
+        awaitStop();
+    }
+
+    /**
+     * 结束调度器，不会等待调度线程结束，需要等待时调用{@link #awaitStop()}
+     */
+    public void stopAsync() {
+        int state = mState.cancel();
+        if (SchedulerState.is(state, SchedulerState.QUIT)) {//代表调度器已经结束
+            return;
         }
-        if (mIsCancel) {
-            throw new RuntimeException("scheduler has stopped");
+        if (SchedulerState.is(state, SchedulerState.ENDED)) {//播放结束后保留的线程
+            nextQuit();
+            return;
         }
-        if (!isRunning()) {//代表调度器已经结束
+        if (!SchedulerState.is(state, SchedulerState.RUNNING)) {//调度线程还没有准备好，准备好后会直接结束
             return;
         }
 
-        mIsCancel = true;
-        mHandler.removeMessages(MSG_FRAME);
+        removeNext();
         mHandler.removeMessages(MSG_SEEK);
+        mHandler.removeMessages(MSG_SEEK_READY);
+        mSeekRequest.clear();
         nextQuit();
-        SchedulerUtil.join(mFrameThread);//等待线程执行结束
     }
 
     /**
-     * 跳转到某一帧，{@link #isRunning()}返回true调用才有效
+     * 等待调度线程结束，在调度线程上调用时不等待
+     */
+    public void awaitStop() {
+        if (!isStarted()) {
+            return;
+        }
+        if (mFrameThread != null && mFrameThread == Thread.currentThread()) {
+            return;
+        }
+        FrameHandler handler = mHandler;
+        if (handler != null && handler.getLooper() == Looper.myLooper()) {//如果是同一个线程调用则不等待，防止死循环
+            return;
+        }
+        synchronized (mQuitLock) {
+            while (!mIsQuit) {
+                SchedulerUtil.lockWait(mQuitLock);
+            }
+        }
+    }
+
+    /**
+     * 跳转到某一帧，{@link #isRunning()}返回true调用才有效，不会阻塞
+     * 跳转还没有完成时再次调用会覆盖目标，只有最后一个目标会完成，完成后回调{@link OnAsyncSeekToListener#onSeekToComplete(long)}
      *
      * @param frameIndex 跳转帧序列
      */
-    public void seekTo(@IntRange(from = 0) long frameIndex, @NonNull OnSeekToListener l) {
-        if (!isRunning() || mIsCancel) {
+    public void seekTo(@IntRange(from = 0) long frameIndex, @NonNull OnAsyncSeekToListener l) {
+        if (!isRunning() || isCanceled()) {
             return;
         }
-        if (frameIndex == mFrameIndex || !isSeekToComplete()) {
+        if (frameIndex >= mFrameCount) {
+            frameIndex = mFrameCount - 1;
+        } else if (frameIndex < 0) {
+            frameIndex = 0;
+        }
+        long nearFrameIndex = Math.min(mFrameIndex, mEndFrame - 1);
+        FrameSegments segments = mPacer.getSegments();
+        if (segments != null) {//分段播放时跳转到当前片段的这一遍
+            frameIndex = segments.getFrameIndexOf((int) frameIndex, nearFrameIndex);
+        } else {
+            frameIndex += nearFrameIndex / mFrameCount * mFrameCount;//循环时跳转到当前这一轮
+        }
+        if (frameIndex == mFrameIndex && isSeekToComplete()) {
             return;
         }
 
-        mIsSeekToComplete = false;
-        mOnSeekToListener = l;
+        mSeekRequest.request(frameIndex, mClock.nanoTime());
+        if (mState.seek()) {
+            removeNext();
+        }
+        mHandler.removeMessages(MSG_SEEK);//还没有开始的跳转直接合并
+        mHandler.sendMessageAtTime(mHandler.obtainMessage(MSG_SEEK, l), SystemClock.uptimeMillis());
+    }
+
+    /**
+     * 跳转到某一帧，兼容原来的阻塞回调，{@link OnSeekToListener#onSeekTo(long)}返回时代表这一帧已经准备好，
+     * 阻塞期间调度线程不能处理其他消息，新代码使用{@link #seekTo(long, OnAsyncSeekToListener)}
+     * <p>
+     * 连续跳转会自动合并，{@link OnSeekToListener#onSeekToComplete()}的返回值不再使用
+     *
+     * @param frameIndex 跳转帧序列
+     */
+    public void seekTo(@IntRange(from = 0) long frameIndex, @NonNull OnSeekToListener l) {
+        seekTo(frameIndex, new BlockingSeekToListener(l));
+    }
+
+    /**
+     * 跳转的目标帧已经准备好，可以在任意线程调用，目标已经被覆盖时忽略
+     *
+     * @param frameIndex 准备好的帧序列
+     */
+    public void seekReady(long frameIndex) {
+        if (!mSeekRequest.isCurrent(frameIndex)) {
+            return;
+        }
+        FrameHandler handler = mHandler;
+        if (handler != null) {
+            handler.sendMessageAtTime(handler.obtainMessage(MSG_SEEK_READY, (int) frameIndex, 0), SystemClock.uptimeMillis());
+        }
+    }
+
+    /**
+     * 返回最后一次跳转从调用{@link #seekTo(long, OnAsyncSeekToListener)}到显示的延迟，连续跳转时从最后一次调用开始计算
+     *
+     * @return 纳秒，没有跳转过返回-1
+     */
+    public long getSeekLatencyNs() {
+        return mSeekLatencyNs;
+    }
 
-        if (!isPaused()) {
-            pause();
-            mIsWaitResume = true;
+    /**
+     * 设置播放速度，运行中调用时从当前位置开始按新的速度调度，不需要重新开始
+     *
+     * @param rate 速度，1为正常速度
+     */
+    public void setPlaybackRate(@FloatRange(from = 0, fromInclusive = false) float rate) {
+        if (rate <= 0) {
+            throw new RuntimeException("rate must be greater than 0");
         }
+        mPlaybackRate = rate;
+        updateMinInterval();
+        if (isRunning()) {//运行中交给调度线程切换，不和正在显示的帧竞争
+            mHandler.sendMessageAtTime(mHandler.obtainMessage(MSG_RATE), SystemClock.uptimeMillis());
+        } else {
+            mPacer.setRate(rate, mClock.nanoTime());
+        }
+    }
 
-        if (frameIndex >= mFrameCount) {
-            mFrameIndex = mFrameCount - 1;
-        } else if (frameIndex < 0) {
-            mFrameIndex = 0;
+    /**
+     * 返回播放速度
+     */
+    public float getPlaybackRate() {
+        return mPlaybackRate;
+    }
+
+    /**
+     * 设置是否无缝循环，运行中也可以调用
+     * 循环时最后一帧之后直接接上下一轮的第一帧，间隔和其他帧一样，帧序列继续增加，第n轮的第i帧为n * 总帧数 + i
+     * 运行中取消循环会在这一轮结束后结束，分段播放时只循环最后一个片段
+     *
+     * @param isLoop 是否循环
+     */
+    public void setLoop(boolean isLoop) {
+        FrameSegments segments = mPacer.getSegments();
+        if (segments != null) {
+            segments = isLoop ? segments.loop() : segments.finish(mFrameIndex);
+            mPacer.setSegments(segments);
+            mEndFrame = segments.getFrameCount();
         } else {
-            mFrameIndex = frameIndex;
+            mPacer.setLoop(isLoop, mFrameIndex);
+            mEndFrame = mPacer.getEndFrame();
+        }
+    }
+
+    /**
+     * 在最后添加一个片段，播放中也可以调用，片段之间没有间隔，读取线程会接着读取下一个片段开头的帧
+     * <p>
+     * 第一次调用时切换为分段播放，还没有开始时只播放添加的片段，已经开始时当前这一轮播放完后接着播放片段，
+     * 最后一个片段无限循环时在keepFrame所在的这一遍播放完后结束
+     * <p>
+     * 帧序列和时间轴上的帧的对应关系由{@link #getTimelineFrame(long)}得到，keepFrame之前的帧不会改变，
+     * 一般在读取线程调用，传入下一个要读取的帧，已经读取的帧不用重新读取
+     *
+     * @param start     时间轴上的第一帧
+     * @param end       时间轴上的最后一帧，包括这一帧
+     * @param loopCount 播放遍数，{@link FrameSegments#LOOP_INFINITE}为无限循环
+     * @param keepFrame 这一帧之前的帧不会改变
+     */
+    public void addSegment(int start, int end, int loopCount, long keepFrame) {
+        FrameSegments segments = mPacer.getSegments();
+        if (segments == null) {
+            segments = new FrameSegments(mPacer.getTimeline());
+            if (isStarted()) {//把已经开始的播放当作第一个片段
+                long endFrame = mEndFrame;
+                segments = segments.append(0, (int) mFrameCount - 1, endFrame == Long.MAX_VALUE
+                        ? FrameSegments.LOOP_INFINITE : (int) (endFrame / mFrameCount));
+            }
         }
+        if (segments.isInfinite()) {
+            segments = segments.finish(Math.max(0, keepFrame - 1));
+        }
+        segments = segments.append(start, end, loopCount);
+        mPacer.setSegments(segments);
+        mEndFrame = segments.getFrameCount();
+    }
+
+    /**
+     * 返回分段，没有分段时返回null
+     */
+    public FrameSegments getSegments() {
+        return mPacer.getSegments();
+    }
 
-        mHandler.sendMessageAtTime(mHandler.obtainMessage(MSG_SEEK), SystemClock.uptimeMillis());
+    /**
+     * 返回帧序列对应的时间轴上的帧，循环时对总帧数取余，分段播放时按片段计算
+     *
+     * @param frameIndex 帧序列
+     * @return 时间轴帧序列
+     */
+    public int getTimelineFrame(long frameIndex) {
+        FrameSegments segments = mPacer.getSegments();
+        if (segments != null) {
+            return segments.getTimelineFrame(frameIndex);
+        }
+        return (int) (frameIndex % mFrameCount);
+    }
+
+    /**
+     * 返回结束的帧序列，循环时返回{@link Long#MAX_VALUE}
+     */
+    public long getEndFrame() {
+        return mEndFrame;
+    }
+
+    /**
+     * 按当前速度返回frameIndex之后会被调度的帧，快速播放时中间的帧不会显示，也就不需要解码
+     *
+     * @param frameIndex 帧序列
+     * @return 下一帧序列，最后一帧之后返回总帧数
+     */
+    public long getNextFrame(long frameIndex) {
+        return mPacer.getNextFrame(frameIndex);
+    }
+
+    /**
+     * 预测leadNs之后还来得及显示的第一帧，调度落后时读取线程可以直接跳到这一帧，不去解码注定被跳过的帧
+     * 没有开启跳帧、暂停或者seekTo中时不会跳帧，返回当前帧
+     *
+     * @param leadNs 提前量，一般为解码一帧的时间
+     * @return 帧序列，不会小于当前帧
+     */
+    public long getProjectedFrame(long leadNs) {
+        long frameIndex = mFrameIndex;
+        if (!mIsSkipFrame || !isRunning()
+                || mState.is(SchedulerState.PAUSED | SchedulerState.SEEKING | SchedulerState.CANCELED)) {
+            return frameIndex;
+        }
+        return mLoop.getProjectedFrame(frameIndex, mClock.nanoTime(), leadNs);
     }
 
     /**
@@ -204,7 +427,7 @@ public final class Scheduler {
      * @return 是否开始运行
      */
     public boolean isStarted() {
-        return mIsStared;
+        return mState.is(SchedulerState.STARTED);
     }
 
     /**
@@ -213,7 +436,16 @@ public final class Scheduler {
      * @return 是否在运行中
      */
     public boolean isRunning() {
-        return mIsRunning;
+        return mState.is(SchedulerState.RUNNING);
+    }
+
+    /**
+     * 可以重新开始的调度器播放结束后返回True，这时调度线程还在，调用{@link #restart()}重新开始或者{@link #stop()}结束
+     *
+     * @return 是否播放结束
+     */
+    public boolean isEnded() {
+        return mState.get() == (SchedulerState.STARTED | SchedulerState.ENDED);
     }
 
     /**
@@ -222,16 +454,16 @@ public final class Scheduler {
      * @return 是否暂停
      */
     public boolean isPaused() {
-        return mIsPaused;
+        return mState.is(SchedulerState.PAUSED);
     }
 
     /**
-     * 调用{@link #stop()}后返回True
+     * 调用{@link #stop()}或者{@link #stopAsync()}后返回True
      *
      * @return 是否被取消
      */
     public boolean isCanceled() {
-        return mIsCancel;
+        return mState.is(SchedulerState.CANCELED);
     }
 
     /**
@@ -240,11 +472,18 @@ public final class Scheduler {
      * @return seekTo是否完成
      */
     public boolean isSeekToComplete() {
-        return mIsSeekToComplete;
+        return !mState.is(SchedulerState.SEEKING);
     }
 
     /**
-     * 返回当前帧
+     * 返回时间轴
+     */
+    public FrameTimeline getTimeline() {
+        return mPacer.getTimeline();
+    }
+
+    /**
+     * 返回当前帧，循环时为包括轮数的序列，对总帧数取余得到时间轴上的序列
      *
      * @return 当前帧序列
      */
@@ -254,7 +493,7 @@ public final class Scheduler {
 
     /**
      * 是否跳帧，必须在没有开始运行之前调用
-     * 设置为True后当{@link #update(long)}被阻塞的时间超过{@link #mDelayTime}后将开始跳帧
+     * 设置为True后当{@link #update(long)}被阻塞到错过下一帧的截止时间后将开始跳帧
      *
      * @param isSkipFrame 是否跳帧
      */
@@ -266,8 +505,144 @@ public final class Scheduler {
         this.mIsSkipFrame = isSkipFrame;
     }
 
-    private void next(double uptimeMs) {
-        mHandler.sendMessageAtTime(mHandler.obtainMessage(MSG_FRAME), Math.round(uptimeMs));
+    /**
+     * 是否可以重新开始，必须在没有开始运行之前调用
+     * 设置为True后播放结束时回调{@link OnFrameListener#onStop()}但保留调度线程，可以调用{@link #restart()}重新开始，
+     * 不再使用时必须调用{@link #stop()}结束线程，这时会再次回调{@link OnFrameListener#onCancel()}和{@link OnFrameListener#onStop()}
+     *
+     * @param isRestartable 是否可以重新开始
+     */
+    public void setRestartable(boolean isRestartable) {
+        if (isStarted()) {
+            throw new RuntimeException("scheduler has been running");
+        }
+
+        this.mIsRestartable = isRestartable;
+    }
+
+    /**
+     * 是否按垂直同步调度，必须在没有开始运行之前调用
+     * 设置为True后由{@link Choreographer}的刷新时间决定显示哪一帧，回调仍然在调度线程，低于4.1的系统使用定时器
+     *
+     * @param isVsync 是否垂直同步
+     */
+    public void setVsync(boolean isVsync) {
+        if (isStarted()) {
+            throw new RuntimeException("scheduler has been running");
+        }
+
+        this.mIsVsync = isVsync;
+        updateMinInterval();
+    }
+
+    /**
+     * 是否使用共用的调度线程，必须在没有开始运行之前调用
+     * 设置为True后多个调度器在同一个线程上调度和回调，线程数不随调度器数量增加，配合{@link #setVsync(boolean)}时每次刷新只唤醒一次
+     *
+     * @param isSharedThread 是否共用线程
+     */
+    public void setSharedThread(boolean isSharedThread) {
+        if (isStarted()) {
+            throw new RuntimeException("scheduler has been running");
+        }
+
+        this.mIsSharedThread = isSharedThread;
+    }
+
+    /**
+     * 设置时钟，必须在没有开始运行之前调用，垂直同步模式下时钟必须与{@link System#nanoTime()}同源
+     *
+     * @param clock 时钟
+     */
+    public void setFrameClock(@NonNull FrameClock clock) {
+        if (isStarted()) {
+            throw new RuntimeException("scheduler has been running");
+        }
+
+        this.mClock = clock;
+    }
+
+    /**
+     * 返回因为超时被跳过的帧数
+     */
+    public long getSkippedFrameCount() {
+        return mPacer.getSkippedCount();
+    }
+
+    /**
+     * 返回错过截止时间的帧数
+     */
+    public long getMissedFrameCount() {
+        return mPacer.getMissedCount();
+    }
+
+    /**
+     * 返回延迟直方图，播放中也可以读取
+     */
+    public FrameLatencyHistogram getLatencyHistogram() {
+        return mPacer.getLatencyHistogram();
+    }
+
+    /**
+     * 返回最大节拍误差，纳秒
+     */
+    public long getMaxPacingErrorNs() {
+        return mPacer.getMaxPacingErrorNs();
+    }
+
+    /**
+     * 返回平均节拍误差，纳秒
+     */
+    public long getMeanPacingErrorNs() {
+        return mPacer.getMeanPacingErrorNs();
+    }
+
+    //Handler只能精确到毫秒，这里提前到截止时间所在的毫秒，剩下的在显示前补齐
+    private void next() {
+        long nowNs = mClock.nanoTime();
+        if (mVsyncCallback != null && mFrameIndex < mEndFrame) {
+            mVsyncCallback.post(mLoop.getDelayNs(mFrameIndex, nowNs));
+            return;
+        }
+        mHandler.sendMessageAtTime(mHandler.obtainMessage(MSG_FRAME),
+                SystemClock.uptimeMillis() + mLoop.getPostDelayMs(mFrameIndex, nowNs));
+    }
+
+    //可以在任意线程调用
+    private void removeNext() {
+        VsyncCallback vsyncCallback = mVsyncCallback;
+        if (vsyncCallback != null) {
+            vsyncCallback.remove();
+        }
+        FrameHandler handler = mHandler;
+        if (handler != null) {
+            handler.removeMessages(MSG_FRAME);
+        }
+    }
+
+    //最后一帧同样要显示完它的时长才结束
+    private void nextFrame() {
+        if (!mState.is(SchedulerState.CANCELED | SchedulerState.PAUSED)) {
+            next();
+        }
+    }
+
+    //暂停时跳出，取消时继续执行到退出
+    private boolean isPausedOnly() {
+        int state = mState.get();
+        return !SchedulerState.is(state, SchedulerState.CANCELED) && SchedulerState.is(state, SchedulerState.PAUSED);
+    }
+
+    //恢复和切换速度都在调度线程上执行，先删除已经安排的下一帧，保证只有一个调度
+    private void reschedule(boolean isAnchor) {
+        if (mState.is(SchedulerState.PAUSED | SchedulerState.CANCELED | SchedulerState.SEEKING)) {
+            return;
+        }
+        removeNext();
+        if (isAnchor) {
+            mPacer.anchor(mFrameIndex, mClock.nanoTime());
+        }
+        next();
     }
 
     private void prepare() {
@@ -281,24 +656,144 @@ public final class Scheduler {
     }
 
     private void cancel() {
-        if (mIsCancel && mOnFrameListener != null) {
+        if (mState.is(SchedulerState.CANCELED) && mOnFrameListener != null) {
             mOnFrameListener.onCancel();
         }
     }
 
     private void quit() {
-        mFrameThread.quit();
-        mFrameThread.interrupt();
-        mIsRunning = false;
+        if (mFrameThread != null) {
+            mFrameThread.quit();
+            mFrameThread.interrupt();
+        } else {
+            SharedFrameThread.release();
+        }
+        mState.quit();
+        if (mOnFrameListener != null) {
+            mOnFrameListener.onStop();
+        }
+        synchronized (mQuitLock) {
+            mIsQuit = true;
+            mQuitLock.notifyAll();
+        }
+    }
+
+    private void onPrepared() {
+        if (mIsVsync && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            mVsyncCallback = new VsyncCallback();
+        }
+
+        if (!mState.run()) {//准备好之前已经被取消
+            cancel();
+            quit();
+            return;
+        }
+
+        mPacer.anchor(mFrameIndex, mClock.nanoTime());
+
+        prepare();
+        next();
+    }
+
+    //切换到最新的目标，上一个目标还没有完成时直接放弃
+    private void onSeek(OnAsyncSeekToListener l) {
+        long target = mSeekRequest.getTarget();
+        if (target == -1) {
+            return;
+        }
+        if (!mState.is(SchedulerState.SEEKING)) {//上一次跳转刚完成，重新进入跳转
+            if (!mState.seek()) {
+                return;
+            }
+            removeNext();
+        }
+        mOnSeekToListener = l;
+        mFrameIndex = target;
+        l.onSeekTo(target);
+    }
+
+    private void onSeekReady(long frameIndex) {
+        OnAsyncSeekToListener l = mOnSeekToListener;
+        if (l == null || mFrameIndex != frameIndex || !mSeekRequest.isCurrent(frameIndex)) {//已经有新的目标
+            return;
+        }
+        if (!mState.is(SchedulerState.WAIT_RESUME)) {//保持暂停，直接显示
+            l.onSeekUpdate(frameIndex);
+        }
+        long latency = mSeekRequest.complete(frameIndex, mClock.nanoTime());
+        if (latency == -1) {//显示的同时又有新的目标，等待新的目标
+            return;
+        }
+        mSeekLatencyNs = latency;
+        mOnSeekToListener = null;
+        mState.seekComplete();
+
+        l.onSeekToComplete(frameIndex);
+
+        if (mState.resumeAfterSeek()) {
+            reschedule(true);
+        }
+    }
+
+    private void onEnd() {
+        mFrameIndex = 0;
+        if (!mPacer.isLoop()) {//循环中取消时结束的那一轮回到第一轮
+            mPacer.setLoop(false);
+        }
+        mEndFrame = getFrameCount();
         if (mOnFrameListener != null) {
             mOnFrameListener.onStop();
         }
     }
 
+    private void onRestart() {
+        if (!isRunning()) {//重新开始后马上被取消
+            return;
+        }
+        mFrameIndex = 0;
+        if (mEndFrame != Long.MAX_VALUE) {
+            mEndFrame = getFrameCount();
+        }
+        mPacer.anchor(mFrameIndex, mClock.nanoTime());
+
+        prepare();
+        next();
+    }
+
+    //分段播放时为所有片段的帧数
+    private long getFrameCount() {
+        FrameSegments segments = mPacer.getSegments();
+        return segments != null ? segments.getFrameCount() : mFrameCount;
+    }
+
     private void update(long frameIndex) {
         mOnFrameUpdateListener.onFrameUpdate(frameIndex);
     }
 
+    //显示时当前帧就是正在显示的帧，跳帧时读取线程从这一帧开始预测
+    private final FrameLoop.Host mHost = new FrameLoop.Host() {
+        @Override
+        public long nanoTime() {
+            return mClock.nanoTime();
+        }
+
+        @Override
+        public void sleepNanos(long nanos) {
+            SchedulerUtil.sleepNanos(nanos);
+        }
+
+        @Override
+        public void update(long frameIndex) {
+            mFrameIndex = frameIndex;
+            Scheduler.this.update(frameIndex);
+        }
+    };
+
+    //垂直同步时一次刷新只能显示一帧，定时器调度时只在快速播放时跳过间隔太小的帧，正常和慢速播放每一帧都显示
+    private void updateMinInterval() {
+        mPacer.setMinIntervalNs(mIsVsync || mPlaybackRate > 1 ? mVsyncIntervalNs : 0);
+    }
+
     private final class FrameThread extends HandlerThread {
         FrameThread(String name) {
             super(name);
@@ -306,67 +801,55 @@ public final class Scheduler {
 
         @Override
         public void onLooperPrepared() {
-            mHandler = new FrameHandler();
-
-            mIsRunning = true;
-
-            mCurrentUptimeMs = SystemClock.uptimeMillis();
-
-            prepare();
-            next(mCurrentUptimeMs);
+            mHandler = new FrameHandler(getLooper());
+            onPrepared();
         }
     }
 
     @SuppressLint("HandlerLeak")
     private final class FrameHandler extends Handler {
+        FrameHandler(Looper looper) {
+            super(looper);
+        }
+
         @Override
         public void handleMessage(Message msg) {
             switch (msg.what) {
+                case MSG_START:
+                    onPrepared();
+                    break;
                 case MSG_FRAME:
-                    synchronized (mLock) {
-                        if (!mIsCancel && mIsPaused) {//如果被暂停了，跳出
-                            break;
-                        }
-                        update(mFrameIndex);
-                        if (mIsSkipFrame) {
-                            double delayTime = SystemClock.uptimeMillis() - mCurrentUptimeMs - mDelayTime;
-                            if (delayTime > 0) {
-                                long delayIndex = (long) Math.ceil(delayTime / mDelayTime);
-                                mFrameIndex += delayIndex;
-                                mCurrentUptimeMs += delayIndex * mDelayTime;
-                            }
-                        }
-                        mCurrentUptimeMs += mDelayTime;
-                        mFrameIndex++;
-                        if (!mIsCancel) {
-                            if (mFrameIndex >= mFrameCount) {
-                                nextQuit();
-                            } else if (!mIsPaused) {
-                                next(mCurrentUptimeMs);
-                            }
-                        }
+                    if (isPausedOnly()) {//如果被暂停了，跳出
+                        break;
                     }
+                    if (mFrameIndex >= mEndFrame) {//最后一帧已经显示完
+                        nextQuit();
+                        break;
+                    }
+                    mFrameIndex = mLoop.showFrame(mFrameIndex, !mIsSharedThread, mIsSkipFrame, mHost);
+                    nextFrame();
+                    break;
+                case MSG_RESUME:
+                    reschedule(true);
+                    break;
+                case MSG_RATE:
+                    mPacer.setRate(mPlaybackRate, mClock.nanoTime());
+                    reschedule(false);
                     break;
                 case MSG_SEEK:
-                    mOnSeekToListener.onSeekTo(mFrameIndex);
-
-                    if (!mIsWaitResume) {
-                        mOnSeekToListener.onSeekUpdate(mFrameIndex);
-                    }
-
-                    mIsSeekToComplete = true;
-
-                    boolean isResume = mOnSeekToListener.onSeekToComplete();
-
-                    if (isResume) {
-                        mOnSeekToListener = null;
-                        if (mIsWaitResume) {
-                            resume();
-                            mIsWaitResume = false;
-                        }
-                    }
+                    onSeek((OnAsyncSeekToListener) msg.obj);
+                    break;
+                case MSG_SEEK_READY:
+                    onSeekReady(msg.arg1);
+                    break;
+                case MSG_RESTART:
+                    onRestart();
                     break;
                 case MSG_QUIT:
+                    if (mIsRestartable && mState.end()) {//保留线程，等待重新开始
+                        onEnd();
+                        break;
+                    }
                     cancel();
                     quit();
                     break;
@@ -375,4 +858,91 @@ public final class Scheduler {
             }
         }
     }
+
+    //原来的回调在onSeekTo里等待这一帧准备好，返回后直接完成
+    private final class BlockingSeekToListener implements OnAsyncSeekToListener {
+        private final OnSeekToListener mListener;
+
+        BlockingSeekToListener(OnSeekToListener l) {
+            this.mListener = l;
+        }
+
+        @Override
+        public void onSeekTo(long frameIndex) {
+            mListener.onSeekTo(frameIndex);
+            seekReady(frameIndex);
+        }
+
+        @Override
+        public void onSeekUpdate(long frameIndex) {
+            mListener.onSeekUpdate(frameIndex);
+        }
+
+        @Override
+        public void onSeekToComplete(long frameIndex) {
+            mListener.onSeekToComplete();
+        }
+    }
+
+    //Choreographer是线程单例，在调度线程获取后刷新回调也在调度线程，不会占用主线程
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private final class VsyncCallback implements Choreographer.FrameCallback {
+
+        private final Choreographer mChoreographer = Choreographer.getInstance();
+        private final long[] mIntervals = new long[VSYNC_SAMPLE_COUNT];//最近几次的刷新间隔，循环写入
+        private final long[] mSortedIntervals = new long[VSYNC_SAMPLE_COUNT];
+        private int mIntervalCount;
+        private int mIntervalPosition;
+
+        void post(long delayNs) {
+            long delayMs = (delayNs - mVsyncIntervalNs) / 1000000L;//提前一次刷新醒来
+            if (delayMs > 0) {
+                mLastVsyncNs = 0;//中间隔了多次刷新，下一次的间隔不是刷新间隔
+                mChoreographer.postFrameCallbackDelayed(this, delayMs);
+            } else {
+                mChoreographer.postFrameCallback(this);
+            }
+        }
+
+        void remove() {
+            mChoreographer.removeFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (isPausedOnly()) {//如果被暂停了，跳出
+                mLastVsyncNs = 0;
+                return;
+            }
+            measureInterval(frameTimeNanos);
+            long frameIndex = mLoop.showVsyncFrame(mFrameIndex, frameTimeNanos, mVsyncIntervalNs / 2, mIsSkipFrame, mHost);
+            if (frameIndex == -1) {//这次刷新没有需要显示的帧
+                next();
+                return;
+            }
+            mFrameIndex = frameIndex;
+            nextFrame();
+        }
+
+        //刷新间隔取最近几次的中位数，偶尔的抖动和掉帧不影响结果，刷新率变大或者变小后几次刷新就能跟上
+        private void measureInterval(long frameTimeNanos) {
+            long lastVsyncNs = mLastVsyncNs;
+            mLastVsyncNs = frameTimeNanos;
+            long interval = frameTimeNanos - lastVsyncNs;
+            if (lastVsyncNs == 0 || interval < MIN_VSYNC_INTERVAL_NS || interval > MAX_VSYNC_INTERVAL_NS) {
+                return;
+            }
+            mIntervals[mIntervalPosition] = interval;
+            mIntervalPosition = (mIntervalPosition + 1) % VSYNC_SAMPLE_COUNT;
+            mIntervalCount = Math.min(mIntervalCount + 1, VSYNC_SAMPLE_COUNT);
+
+            System.arraycopy(mIntervals, 0, mSortedIntervals, 0, mIntervalCount);
+            Arrays.sort(mSortedIntervals, 0, mIntervalCount);
+            long median = mSortedIntervals[mIntervalCount / 2];
+            if (median != mVsyncIntervalNs) {
+                mVsyncIntervalNs = median;
+                updateMinInterval();
+            }
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,218 @@
+package com.xiuyukeji.scheduler;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 调度器状态，所有状态保存在一个原子整数里，通过CAS切换，调用方不会被阻塞
+ */
+final class SchedulerState {
+
+    static final int STARTED = 1,//调用了start
+            RUNNING = 1 << 1,//调度线程已经开始
+            PAUSED = 1 << 2,//暂停
+            CANCELED = 1 << 3,//调用了stop
+            SEEKING = 1 << 4,//正在seekTo
+            WAIT_RESUME = 1 << 5,//seekTo完成后恢复
+            QUIT = 1 << 6,//调度线程已经结束
+            ENDED = 1 << 7;//播放到最后，线程保留等待重新开始
+
+    static final int RESUME_FAILED = 0, RESUME_DONE = 1, RESUME_DEFERRED = 2;
+
+    private final AtomicInteger mState = new AtomicInteger();
+
+    int get() {
+        return mState.get();
+    }
+
+    boolean is(int flag) {
+        return (mState.get() & flag) != 0;
+    }
+
+    static boolean is(int state, int flag) {
+        return (state & flag) != 0;
+    }
+
+    /**
+     * 开始，只能成功一次
+     */
+    boolean start() {
+        return mState.compareAndSet(0, STARTED);
+    }
+
+    /**
+     * 调度线程准备完成，已经取消时返回false
+     */
+    boolean run() {
+        while (true) {
+            int state = mState.get();
+            if (is(state, CANCELED | RUNNING | QUIT)) {
+                return false;
+            }
+            if (mState.compareAndSet(state, state | RUNNING)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 暂停，seekTo中暂停时只取消seekTo完成后的恢复
+     */
+    boolean pause() {
+        while (true) {
+            int state = mState.get();
+            if (!isActive(state)) {
+                return false;
+            }
+            int update;
+            if (is(state, SEEKING) && is(state, WAIT_RESUME)) {
+                update = state & ~WAIT_RESUME;
+            } else if (is(state, PAUSED)) {
+                return false;
+            } else {
+                update = state | PAUSED;
+            }
+            if (mState.compareAndSet(state, update)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 恢复，seekTo中恢复时延迟到seekTo完成
+     *
+     * @return {@link #RESUME_FAILED}、{@link #RESUME_DONE}或{@link #RESUME_DEFERRED}
+     */
+    int resume() {
+        while (true) {
+            int state = mState.get();
+            if (!isActive(state) || !is(state, PAUSED)) {
+                return RESUME_FAILED;
+            }
+            if (is(state, SEEKING)) {
+                if (mState.compareAndSet(state, state | WAIT_RESUME)) {
+                    return RESUME_DEFERRED;
+                }
+            } else if (mState.compareAndSet(state, state & ~PAUSED)) {
+                return RESUME_DONE;
+            }
+        }
+    }
+
+    /**
+     * 开始seekTo，没有暂停时先暂停，完成后恢复
+     */
+    boolean seek() {
+        while (true) {
+            int state = mState.get();
+            if (!isActive(state) || is(state, SEEKING)) {
+                return false;
+            }
+            int update = state | SEEKING;
+            if (!is(state, PAUSED)) {
+                update |= PAUSED | WAIT_RESUME;
+            }
+            if (mState.compareAndSet(state, update)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * seekTo完成
+     */
+    void seekComplete() {
+        while (true) {
+            int state = mState.get();
+            if (mState.compareAndSet(state, state & ~SEEKING)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * seekTo完成后需要恢复时清除暂停
+     *
+     * @return 是否需要恢复调度
+     */
+    boolean resumeAfterSeek() {
+        while (true) {
+            int state = mState.get();
+            if (!isActive(state) || is(state, SEEKING) || !is(state, WAIT_RESUME)) {
+                return false;
+            }
+            if (mState.compareAndSet(state, state & ~(WAIT_RESUME | PAUSED))) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 取消，只能成功一次
+     *
+     * @return 取消前的状态
+     */
+    int cancel() {
+        while (true) {
+            int state = mState.get();
+            if (!is(state, STARTED)) {
+                throw new RuntimeException("scheduler not yet running");
+            }
+            if (is(state, CANCELED)) {
+                throw new RuntimeException("scheduler has stopped");
+            }
+            if (is(state, QUIT)) {//代表调度器已经结束
+                return state;
+            }
+            if (mState.compareAndSet(state, state | CANCELED)) {
+                return state;
+            }
+        }
+    }
+
+    /**
+     * 播放到最后，保留线程，可以重新开始
+     */
+    boolean end() {
+        while (true) {
+            int state = mState.get();
+            if (!isActive(state)) {
+                return false;
+            }
+            int update = (state & ~(RUNNING | PAUSED | SEEKING | WAIT_RESUME)) | ENDED;
+            if (mState.compareAndSet(state, update)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 从播放结束的状态重新开始
+     */
+    boolean restart() {
+        while (true) {
+            int state = mState.get();
+            if (!is(state, ENDED) || is(state, CANCELED | QUIT)) {
+                return false;
+            }
+            if (mState.compareAndSet(state, (state & ~ENDED) | RUNNING)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 调度线程结束
+     */
+    void quit() {
+        while (true) {
+            int state = mState.get();
+            if (mState.compareAndSet(state, (state & ~RUNNING) | QUIT)) {
+                return;
+            }
+        }
+    }
+
+    private static boolean isActive(int state) {
+        return is(state, RUNNING) && !is(state, CANCELED | QUIT);
+    }
+}
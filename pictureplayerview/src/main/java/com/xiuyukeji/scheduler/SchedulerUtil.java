@@ -39,4 +39,17 @@ public class SchedulerUtil {
             e.printStackTrace();
         }
     }
+
+    /**
+     * 精确等待，用于补齐Handler毫秒精度以下的部分
+     *
+     * @param nanos 纳秒
+     */
+    public static void sleepNanos(long nanos) {
+        try {
+            Thread.sleep(nanos / 1000000L, (int) (nanos % 1000000L));
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
 }
@@ -0,0 +1,59 @@
+package com.xiuyukeji.scheduler;
+
+/**
+ * seekTo请求，只保留最后一个目标，连续seekTo时前面的目标被合并掉
+ * <p>
+ * 记录最后一个目标的请求时间，完成时得到从请求到显示的延迟
+ */
+final class SeekRequest {
+
+    private long mTarget = -1;
+    private long mRequestNs;
+
+    /**
+     * 请求跳转，覆盖还没有完成的目标
+     *
+     * @param target 目标帧
+     * @param nowNs  请求时间
+     */
+    synchronized void request(long target, long nowNs) {
+        mTarget = target;
+        mRequestNs = nowNs;
+    }
+
+    /**
+     * 返回当前目标，没有时返回-1
+     */
+    synchronized long getTarget() {
+        return mTarget;
+    }
+
+    /**
+     * 返回是否是当前目标，不是代表已经被新的请求覆盖
+     */
+    synchronized boolean isCurrent(long target) {
+        return target != -1 && mTarget == target;
+    }
+
+    /**
+     * 完成跳转，目标已经被覆盖时失败
+     *
+     * @param target 完成的目标帧
+     * @param nowNs  完成时间
+     * @return 从请求到完成的延迟，失败时返回-1
+     */
+    synchronized long complete(long target, long nowNs) {
+        if (!isCurrent(target)) {
+            return -1;
+        }
+        mTarget = -1;
+        return nowNs - mRequestNs;
+    }
+
+    /**
+     * 清除还没有完成的目标
+     */
+    synchronized void clear() {
+        mTarget = -1;
+    }
+}
@@ -0,0 +1,42 @@
+package com.xiuyukeji.scheduler;
+
+import android.os.HandlerThread;
+import android.os.Looper;
+
+/**
+ * 多个调度器共用的调度线程，每个调度器的截止时间由同一个消息队列排序，没有调度器使用时线程结束
+ */
+final class SharedFrameThread {
+
+    private static HandlerThread sThread;
+    private static int sCount;
+
+    private SharedFrameThread() {
+    }
+
+    /**
+     * 获得共用线程的Looper，没有时创建
+     */
+    static synchronized Looper acquire() {
+        if (sThread == null) {
+            sThread = new HandlerThread("shared-scheduler");
+            sThread.start();
+        }
+        sCount++;
+        return sThread.getLooper();
+    }
+
+    /**
+     * 释放，最后一个调度器释放后结束线程
+     */
+    static synchronized void release() {
+        if (sCount == 0) {
+            return;
+        }
+        sCount--;
+        if (sCount == 0) {
+            sThread.quit();
+            sThread = null;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.xiuyukeji.pictureplayerview;
+
+import com.xiuyukeji.pictureplayerview.utils.ImageUtil;
+
+import org.junit.Test;
+
+import static com.xiuyukeji.pictureplayerview.annotations.FitSource.FIT_CENTER;
+import static com.xiuyukeji.pictureplayerview.annotations.FitSource.FIT_CROP;
+import static com.xiuyukeji.pictureplayerview.annotations.FitSource.FIT_HEIGHT;
+import static com.xiuyukeji.pictureplayerview.annotations.FitSource.FIT_WIDTH;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 测试按显示大小解码时的大小计算
+ */
+public class DecodeSizeTestCase {
+
+    @Test
+    public void testDisplaySize() {
+        int[] size = new int[2];
+        PictureRenderer.calculateDisplaySize(FIT_WIDTH, 360, 640, 1440, 2880, size);
+        assertArrayEquals(size, new int[]{360, 720});
+
+        PictureRenderer.calculateDisplaySize(FIT_HEIGHT, 360, 640, 1440, 2880, size);
+        assertArrayEquals(size, new int[]{320, 640});
+
+        PictureRenderer.calculateDisplaySize(FIT_CENTER, 360, 640, 1440, 2880, size);//整张图片都在View里
+        assertArrayEquals(size, new int[]{320, 640});
+
+        PictureRenderer.calculateDisplaySize(FIT_CROP, 360, 640, 1440, 2880, size);//铺满View
+        assertArrayEquals(size, new int[]{360, 720});
+    }
+
+    //已经是显示大小的图片再计算一次大小不变，渲染时可以不缩放
+    @Test
+    public void testDisplaySizeStable() {
+        int[] size = new int[2];
+        int[] again = new int[2];
+        int[] scaleTypes = {FIT_WIDTH, FIT_HEIGHT, FIT_CENTER, FIT_CROP};
+        for (int scaleType : scaleTypes) {
+            PictureRenderer.calculateDisplaySize(scaleType, 720, 1280, 1080, 1920, size);
+            PictureRenderer.calculateDisplaySize(scaleType, 720, 1280, size[0], size[1], again);
+            assertArrayEquals(again, size);
+        }
+    }
+
+    @Test
+    public void testInSampleSize() {
+        assertEquals(ImageUtil.calculateInSampleSize(1440, 2560, 1440, 2560), 1);
+        assertEquals(ImageUtil.calculateInSampleSize(1440, 2560, 720, 1280), 2);
+        assertEquals(ImageUtil.calculateInSampleSize(1440, 2560, 360, 640), 4);
+        assertEquals(ImageUtil.calculateInSampleSize(1440, 2560, 400, 711), 2);//剩下的部分按密度缩放
+        assertEquals(ImageUtil.calculateInSampleSize(1440, 2560, 360, 1280), 2);//不能小于任何一边
+    }
+}
@@ -0,0 +1,137 @@
+package com.xiuyukeji.pictureplayerview;
+
+import com.xiuyukeji.pictureplayerview.utils.FrameArchive;
+import com.xiuyukeji.pictureplayerview.utils.FrameArchivePacker;
+import com.xiuyukeji.pictureplayerview.utils.FrameIndex;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static com.xiuyukeji.pictureplayerview.FrameIndexTestCase.COLOR_RGB;
+import static com.xiuyukeji.pictureplayerview.FrameIndexTestCase.COLOR_RGBA;
+import static com.xiuyukeji.pictureplayerview.FrameIndexTestCase.createPng;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 测试FrameArchive和FrameArchivePacker
+ */
+public class FrameArchiveTestCase {
+
+    @Test
+    public void testPackOpen() throws Exception {
+        byte[][] frames = {
+                createPng(640, 480, COLOR_RGBA),
+                createPng(640, 480, COLOR_RGB),
+                {1, 2, 3, 4, 5}//不是PNG
+        };
+        File file = pack(frames);
+
+        FrameArchive archive = FrameArchive.open(file);
+        file.delete();//映射后不再需要文件
+
+        assertEquals(archive.getFrameCount(), 3);
+        assertEquals(archive.getWidth(0), 640);
+        assertEquals(archive.getHeight(0), 480);
+        assertTrue(archive.hasAlpha(0));
+        assertFalse(archive.hasAlpha(1));
+        assertEquals(archive.getWidth(2), 0);
+        for (int i = 0; i < frames.length; i++) {
+            assertEquals(archive.getFrameLength(i), frames[i].length);
+            assertArrayEquals(readAll(archive.openFrame(i)), frames[i]);
+        }
+    }
+
+    @Test
+    public void testCreateIndex() throws Exception {
+        FrameArchive archive = FrameArchive.wrap(ByteBuffer.wrap(packBytes(new byte[][]{
+                createPng(32, 16, COLOR_RGBA), {1, 2, 3}
+        })));
+
+        FrameIndex index = archive.createIndex();
+
+        assertTrue(index.has(0));
+        assertEquals(index.getWidth(0), 32);
+        assertEquals(index.getByteSize(0), archive.getFrameLength(0));
+        assertFalse(index.has(1));//解码时再读取
+    }
+
+    //两个流各自有位置，并且支持读取文件头后回到开头
+    @Test
+    public void testOpenFrame() throws Exception {
+        byte[] png = createPng(32, 16, COLOR_RGB);
+        FrameArchive archive = FrameArchive.wrap(ByteBuffer.wrap(packBytes(new byte[][]{png, png})));
+
+        InputStream first = archive.openFrame(0);
+        InputStream second = archive.openFrame(1);
+
+        int[] header = FrameIndex.probePng(first);
+        assertEquals(header[0], 32);
+        assertEquals(first.available(), png.length);
+        assertEquals(first.skip(png.length + 10), png.length);
+        assertEquals(first.read(), -1);
+        assertEquals(second.read(), 0x89);
+    }
+
+    @Test
+    public void testInvalid() throws Exception {
+        try {
+            FrameArchive.wrap(ByteBuffer.wrap(createPng(32, 16, COLOR_RGB)));
+            assertTrue(false);
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("not a frame archive"));
+        }
+
+        byte[] data = packBytes(new byte[][]{createPng(32, 16, COLOR_RGB)});
+        try {
+            FrameArchive.wrap(ByteBuffer.wrap(Arrays.copyOf(data, data.length - 1)));
+            assertTrue(false);
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("truncated"));
+        }
+    }
+
+    private byte[] packBytes(byte[][] frames) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        FrameArchivePacker.pack(writeFrames(frames), os);
+        return os.toByteArray();
+    }
+
+    private File pack(byte[][] frames) throws IOException {
+        File file = File.createTempFile("frames", ".ppa");
+        file.deleteOnExit();
+        FrameArchivePacker.pack(writeFrames(frames), file);
+        return file;
+    }
+
+    private File[] writeFrames(byte[][] frames) throws IOException {
+        File[] files = new File[frames.length];
+        for (int i = 0; i < frames.length; i++) {
+            files[i] = File.createTempFile("frame" + i, ".png");
+            files[i].deleteOnExit();
+            FileOutputStream os = new FileOutputStream(files[i]);
+            os.write(frames[i]);
+            os.close();
+        }
+        return files;
+    }
+
+    private byte[] readAll(InputStream is) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        byte[] buffer = new byte[7];
+        int read;
+        while ((read = is.read(buffer)) != -1) {
+            os.write(buffer, 0, read);
+        }
+        return os.toByteArray();
+    }
+}
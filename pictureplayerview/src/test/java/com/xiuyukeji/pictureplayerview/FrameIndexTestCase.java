@@ -0,0 +1,177 @@
+package com.xiuyukeji.pictureplayerview;
+
+import com.xiuyukeji.pictureplayerview.utils.FrameIndex;
+
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * 测试FrameIndex
+ */
+public class FrameIndexTestCase {
+
+    static final int COLOR_GRAY = 0, COLOR_RGB = 2, COLOR_RGBA = 6;
+
+    @Test
+    public void testProbe() throws Exception {
+        byte[] png = createPng(640, 480, COLOR_RGBA);
+        InputStream is = new BufferedInputStream(new ByteArrayInputStream(png));
+
+        FrameIndex index = new FrameIndex(2);
+        assertFalse(index.has(1));
+        assertTrue(index.probe(1, is, png.length));
+
+        assertTrue(index.has(1));
+        assertEquals(index.getWidth(1), 640);
+        assertEquals(index.getHeight(1), 480);
+        assertTrue(index.hasAlpha(1));
+        assertEquals(index.getByteSize(1), png.length);
+        assertFalse(index.has(0));
+        assertEquals(is.read(), 0x89);//读取后回到开头
+    }
+
+    @Test
+    public void testProbeOpaque() throws Exception {
+        int[] header = FrameIndex.probePng(createStream(createPng(32, 16, COLOR_RGB)));
+
+        assertEquals(header[0], 32);
+        assertEquals(header[1], 16);
+        assertEquals(header[2], 0);
+    }
+
+    //没有透明通道的图片用tRNS指定了透明色
+    @Test
+    public void testProbeTransparency() throws Exception {
+        int[] header = FrameIndex.probePng(createStream(createPng(32, 16, COLOR_GRAY, "tRNS")));
+        assertEquals(header[2], 1);
+
+        header = FrameIndex.probePng(createStream(createPng(32, 16, COLOR_GRAY, "tEXt")));
+        assertEquals(header[2], 0);
+    }
+
+    //IDAT之前有很大的辅助块，流一次跳过的字节数比要求的少
+    @Test
+    public void testProbeLargeChunk() throws Exception {
+        byte[] png = createPng(32, 16, COLOR_RGB, 6000, "iCCP", "zTXt");
+        InputStream is = new BufferedInputStream(new ByteArrayInputStream(png), 512);
+
+        int[] header = FrameIndex.probePng(is);
+        assertEquals(header[2], 0);
+        assertEquals(is.read(), 0x89);
+    }
+
+    @Test
+    public void testProbeNotPng() throws Exception {
+        byte[] jpeg = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0, 0, 16, 'J', 'F', 'I', 'F'};
+        InputStream is = createStream(jpeg);
+
+        assertNull(FrameIndex.probePng(is));
+        assertFalse(new FrameIndex(1).probe(0, is, jpeg.length));
+        assertEquals(is.read(), 0xFF);
+    }
+
+    @Test
+    public void testReadWrite() throws Exception {
+        FrameIndex index = new FrameIndex(3);
+        index.set(0, 640, 480, true, 1000);
+        index.set(1, 640, 480, false, 2000);
+        index.set(2, 320, 240, true, 3000000000L);
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        index.write(os);
+        FrameIndex read = FrameIndex.read(new ByteArrayInputStream(("# width height alpha size\n" + os.toString("UTF-8")).getBytes("UTF-8")), 3);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(read.getWidth(i), index.getWidth(i));
+            assertEquals(read.getHeight(i), index.getHeight(i));
+            assertEquals(read.hasAlpha(i), index.hasAlpha(i));
+            assertEquals(read.getByteSize(i), index.getByteSize(i));
+        }
+    }
+
+    @Test
+    public void testReadMismatch() throws Exception {
+        try {
+            FrameIndex.read(new ByteArrayInputStream("640 480 1 1000\n".getBytes("UTF-8")), 2);
+            assertTrue(false);
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("expected 2"));
+        }
+        try {
+            new FrameIndex(1).write(new ByteArrayOutputStream());
+            assertTrue(false);
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("not been indexed"));
+        }
+    }
+
+    //所有帧都有信息并且都不透明时才是不透明的序列
+    @Test
+    public void testOpaque() throws Exception {
+        FrameIndex index = new FrameIndex(2);
+        index.set(0, 640, 480, false, 1000);
+        assertFalse(index.isOpaque());
+
+        index.set(1, 640, 480, true, 1000);
+        assertFalse(index.isOpaque());
+
+        index.set(1, 640, 480, false, 1000);//重新设置同一帧
+        assertTrue(index.isOpaque());
+
+        FrameIndex read = FrameIndex.read(new ByteArrayInputStream(
+                "640 480 0 1000\n640 480 0 1200\n".getBytes("UTF-8")), 2);
+        assertTrue(read.isOpaque());
+    }
+
+    private InputStream createStream(byte[] data) {
+        return new BufferedInputStream(new ByteArrayInputStream(data));
+    }
+
+    //只有文件头，图片数据用空的IDAT代替
+    static byte[] createPng(int width, int height, int colorType, String... chunks) throws IOException {
+        return createPng(width, height, colorType, 6, chunks);
+    }
+
+    static byte[] createPng(int width, int height, int colorType, int chunkLength, String... chunks) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        os.write(new byte[]{(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'});
+        byte[] ihdr = new byte[13];
+        writeInt(ihdr, 0, width);
+        writeInt(ihdr, 4, height);
+        ihdr[8] = 8;
+        ihdr[9] = (byte) colorType;
+        writeChunk(os, "IHDR", ihdr);
+        for (String chunk : chunks) {
+            writeChunk(os, chunk, new byte[chunkLength]);
+        }
+        writeChunk(os, "IDAT", new byte[0]);
+        writeChunk(os, "IEND", new byte[0]);
+        return os.toByteArray();
+    }
+
+    private static void writeChunk(ByteArrayOutputStream os, String type, byte[] data) throws IOException {
+        byte[] length = new byte[4];
+        writeInt(length, 0, data.length);
+        os.write(length);
+        os.write(type.getBytes("US-ASCII"));
+        os.write(data);
+        os.write(new byte[4]);//不检查CRC
+    }
+
+    private static void writeInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+}
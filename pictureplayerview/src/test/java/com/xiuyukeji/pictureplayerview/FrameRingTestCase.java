@@ -0,0 +1,151 @@
+package com.xiuyukeji.pictureplayerview;
+
+import com.xiuyukeji.pictureplayerview.utils.FrameRing;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * 测试FrameRing
+ */
+public class FrameRingTestCase {
+
+    private int mReleaseCount;
+
+    @Test
+    public void testOffer() {
+        FrameRing<Integer> ring = createRing(3);
+        assertEquals(ring.getCapacity(), 4);//向上取到2的幂
+        assertTrue(ring.isEmpty());
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ring.offer(i));
+        }
+        assertFalse(ring.offer(4));//满了不覆盖
+
+        assertEquals(ring.size(), 4);
+        assertEquals((int) ring.getFirst(), 0);
+        assertEquals((int) ring.get(3), 3);
+        assertNull(ring.get(4));
+        assertEquals(mReleaseCount, 0);
+    }
+
+    @Test
+    public void testRemoveFirst() {
+        FrameRing<Integer> ring = createRing(2);
+        ring.offer(0);
+        ring.offer(1);
+
+        assertEquals((int) ring.removeFirst(), 0);
+        assertEquals(mReleaseCount, 1);
+        assertTrue(ring.offer(2));//位置回绕
+
+        Integer first = ring.getFirst();
+        assertFalse(ring.removeFirst(2));//不是第一个时不删除
+        assertTrue(ring.removeFirst(first));
+        assertFalse(ring.removeFirst(first));//已经被删除
+        assertEquals(mReleaseCount, 2);
+
+        assertEquals((int) ring.getFirst(), 2);
+        assertEquals((int) ring.removeFirst(), 2);
+        assertNull(ring.removeFirst());
+        assertEquals(mReleaseCount, 3);
+    }
+
+    @Test
+    public void testClear() {
+        FrameRing<Integer> ring = createRing(4);
+        for (int i = 0; i < 3; i++) {
+            ring.offer(i);
+        }
+        ring.removeFirst();
+        ring.clear();
+
+        assertTrue(ring.isEmpty());
+        assertNull(ring.getFirst());
+        assertEquals(mReleaseCount, 3);
+
+        ring.clear();
+        assertEquals(mReleaseCount, 3);
+        assertTrue(ring.offer(3));
+        assertEquals((int) ring.getFirst(), 3);
+    }
+
+    //生产者添加并且不时删除第一个或者清空，消费者同时删除，每个元素都只释放一次，消费者取到的元素按顺序
+    @Test
+    public void testConcurrent() throws Exception {
+        final int total = 200000;
+        final AtomicIntegerArray released = new AtomicIntegerArray(total);
+        final FrameRing<Integer> ring = new FrameRing<>(8, new FrameRing.OnReleaseListener<Integer>() {
+            @Override
+            public void onRelease(Integer value) {
+                released.incrementAndGet(value);
+            }
+        });
+        final boolean[] isOrdered = {true};
+        final boolean[] isFinished = {false};
+
+        Thread consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                int last = -1;
+                while (true) {
+                    Integer value = ring.removeFirst();
+                    if (value == null) {
+                        synchronized (isFinished) {
+                            if (isFinished[0] && ring.isEmpty()) {
+                                return;
+                            }
+                        }
+                        Thread.yield();
+                        continue;
+                    }
+                    if (value <= last) {
+                        isOrdered[0] = false;
+                    }
+                    last = value;
+                }
+            }
+        });
+        consumer.start();
+
+        for (int i = 0; i < total; i++) {
+            while (!ring.offer(i)) {
+                Thread.yield();
+            }
+            if (i % 1000 == 999) {
+                ring.clear();
+            } else if (i % 7 == 0) {//和读取线程跳转时一样删除过时的帧，可能已经被消费者删除
+                Integer first = ring.getFirst();
+                if (first != null) {
+                    ring.removeFirst(first);
+                }
+            }
+        }
+        synchronized (isFinished) {
+            isFinished[0] = true;
+        }
+        consumer.join();
+
+        assertTrue(isOrdered[0]);
+        for (int i = 0; i < total; i++) {
+            assertEquals(released.get(i), 1);
+        }
+    }
+
+    private FrameRing<Integer> createRing(int capacity) {
+        mReleaseCount = 0;
+        return new FrameRing<>(capacity, new FrameRing.OnReleaseListener<Integer>() {
+            @Override
+            public void onRelease(Integer value) {
+                mReleaseCount++;
+            }
+        });
+    }
+}
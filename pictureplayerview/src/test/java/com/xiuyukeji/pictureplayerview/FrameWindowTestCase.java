@@ -0,0 +1,63 @@
+package com.xiuyukeji.pictureplayerview;
+
+import com.xiuyukeji.pictureplayerview.utils.FrameWindow;
+
+import org.junit.Test;
+
+import static com.xiuyukeji.pictureplayerview.utils.FrameWindow.DECODING;
+import static com.xiuyukeji.pictureplayerview.utils.FrameWindow.DISPLAYED;
+import static com.xiuyukeji.pictureplayerview.utils.FrameWindow.EMPTY;
+import static com.xiuyukeji.pictureplayerview.utils.FrameWindow.READY;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 测试FrameWindow
+ */
+public class FrameWindowTestCase {
+
+    @Test
+    public void testState() {
+        FrameWindow window = new FrameWindow(6);
+        assertEquals(window.getCapacity(), 8);//向上取到2的幂
+        assertEquals(window.getState(3), EMPTY);
+
+        window.set(3, DECODING);
+        assertEquals(window.getState(3), DECODING);
+        assertEquals(window.getState(11), EMPTY);//同一个位置的其他帧
+
+        assertFalse(window.compareAndSet(3, READY, DISPLAYED));
+        assertTrue(window.compareAndSet(3, DECODING, READY));
+        assertTrue(window.compareAndSet(3, READY, DISPLAYED));
+        assertEquals(window.getState(3), DISPLAYED);
+    }
+
+    //窗口滑动时新的帧只能覆盖已经显示或者删除的帧
+    @Test
+    public void testSlide() {
+        FrameWindow window = new FrameWindow(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(window.isAvailable(i));
+            window.set(i, i < 2 ? READY : DECODING);
+        }
+        assertFalse(window.isAvailable(4));
+        assertFalse(window.isAvailable(6));
+
+        window.compareAndSet(0, READY, DISPLAYED);
+        window.compareAndSet(2, DECODING, EMPTY);
+        assertTrue(window.isAvailable(4));
+        assertTrue(window.isAvailable(6));
+
+        window.set(4, DECODING);
+        assertEquals(window.getState(0), EMPTY);
+        assertEquals(window.getState(4), DECODING);
+        assertFalse(window.compareAndSet(0, DISPLAYED, EMPTY));//已经被覆盖
+
+        window.clear();
+        for (int i = 0; i < 8; i++) {
+            assertEquals(window.getState(i), EMPTY);
+            assertTrue(window.isAvailable(i));
+        }
+    }
+}
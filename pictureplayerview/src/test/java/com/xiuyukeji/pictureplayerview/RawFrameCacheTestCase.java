@@ -0,0 +1,189 @@
+package com.xiuyukeji.pictureplayerview;
+
+import com.xiuyukeji.pictureplayerview.utils.RawFrameCache;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static com.xiuyukeji.pictureplayerview.utils.RawFrameCache.CONFIG_ARGB_8888;
+import static com.xiuyukeji.pictureplayerview.utils.RawFrameCache.CONFIG_RGB_565;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * 测试RawFrameCache
+ */
+public class RawFrameCacheTestCase {
+
+    private static final int WIDTH = 16, HEIGHT = 8;
+    private static final int FRAME_SIZE = WIDTH * HEIGHT * 4;
+    private static final long MAX_SIZE = 64 * 1024;
+
+    private File mDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        mDirectory = File.createTempFile("raw", "");
+        mDirectory.delete();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    @Test
+    public void testWriteRead() throws Exception {
+        RawFrameCache cache = new RawFrameCache(mDirectory, MAX_SIZE);
+        RawFrameCache.Sequence sequence = cache.open("a", 3);
+
+        assertNull(sequence.read(1));
+        write(sequence, 1, 7);
+        assertNull(write(sequence, 1, 8));//已经缓存
+
+        assertTrue(sequence.has(1));
+        assertFalse(sequence.has(0));
+        assertEquals(sequence.getWidth(), WIDTH);
+        assertEquals(sequence.getConfig(), CONFIG_ARGB_8888);
+        assertPixels(sequence.read(1), 7);
+    }
+
+    //写入后没有提交的帧不能读取
+    @Test
+    public void testCommit() throws Exception {
+        RawFrameCache.Sequence sequence = new RawFrameCache(mDirectory, MAX_SIZE).open("a", 3);
+
+        ByteBuffer pixels = sequence.beginWrite(0, WIDTH, HEIGHT, CONFIG_ARGB_8888);
+        assertEquals(pixels.remaining(), FRAME_SIZE);
+        assertFalse(sequence.has(0));
+
+        sequence.commit(0);
+        assertTrue(sequence.has(0));
+    }
+
+    //再次播放时从文件读取
+    @Test
+    public void testReopen() throws Exception {
+        RawFrameCache cache = new RawFrameCache(mDirectory, MAX_SIZE);
+        RawFrameCache.Sequence sequence = cache.open("a", 3);
+        write(sequence, 2, 5);
+        sequence.close();
+        assertNull(sequence.read(2));
+
+        sequence = cache.open("a", 3);
+        assertPixels(sequence.read(2), 5);
+        assertFalse(sequence.has(0));
+
+        RawFrameCache.Sequence other = cache.open("b", 3);//不同的数据源
+        assertFalse(other.has(2));
+
+        RawFrameCache.Sequence changed = cache.open("a", 4);//帧数改变时重新缓存
+        assertFalse(changed.has(2));
+    }
+
+    //宽高或格式和第一帧不同的帧不缓存
+    @Test
+    public void testMismatch() throws Exception {
+        RawFrameCache.Sequence sequence = new RawFrameCache(mDirectory, MAX_SIZE).open("a", 3);
+        write(sequence, 0, 1);
+
+        assertNull(sequence.beginWrite(1, WIDTH * 2, HEIGHT, CONFIG_ARGB_8888));
+        assertNull(sequence.beginWrite(1, WIDTH, HEIGHT, CONFIG_RGB_565));
+        assertNotNull(sequence.beginWrite(1, WIDTH, HEIGHT, CONFIG_ARGB_8888));
+    }
+
+    //超过上限时删除最久没有使用的序列，正在使用的不删除
+    @Test
+    public void testEvict() throws Exception {
+        RawFrameCache cache = new RawFrameCache(mDirectory, 3 * 4096 + 2 * FRAME_SIZE);
+
+        RawFrameCache.Sequence first = cache.open("first", 1);
+        write(first, 0, 1);
+        first.close();
+        File[] files = mDirectory.listFiles();
+        files[0].setLastModified(System.currentTimeMillis() - 60000);
+
+        RawFrameCache.Sequence second = cache.open("second", 1);
+        write(second, 0, 2);
+        RawFrameCache.Sequence third = cache.open("third", 1);
+        write(third, 0, 3);
+
+        assertEquals(mDirectory.listFiles().length, 2);
+        assertTrue(cache.getSize() <= 3 * 4096 + 2 * FRAME_SIZE);
+        assertFalse(cache.open("first", 1).has(0));
+        assertTrue(second.has(0));
+
+        RawFrameCache.Sequence fourth = cache.open("fourth", 1);//其他序列都在使用
+        assertNull(write(fourth, 0, 4));
+        assertFalse(fourth.has(0));
+        assertTrue(second.has(0));
+        assertTrue(third.has(0));
+    }
+
+    //两个View打开同一个序列，一个关闭后另一个还在使用，不能被删除
+    @Test
+    public void testSharedOpen() throws Exception {
+        RawFrameCache cache = new RawFrameCache(mDirectory, 3 * 4096 + 2 * FRAME_SIZE);
+
+        RawFrameCache.Sequence first = cache.open("first", 1);
+        write(first, 0, 1);
+        RawFrameCache.Sequence shared = cache.open("first", 1);
+        first.close();
+        first.close();//重复关闭不会多减
+        mDirectory.listFiles()[0].setLastModified(System.currentTimeMillis() - 60000);
+
+        RawFrameCache.Sequence second = cache.open("second", 1);
+        write(second, 0, 2);
+        RawFrameCache.Sequence third = cache.open("third", 1);
+        assertNull(write(third, 0, 3));
+        assertTrue(shared.has(0));
+
+        shared.close();
+        cache.clear();//都关闭后可以删除
+        assertEquals(mDirectory.listFiles().length, 1);
+    }
+
+    //一个序列就超过上限时不缓存
+    @Test
+    public void testTooLarge() throws Exception {
+        RawFrameCache cache = new RawFrameCache(mDirectory, 4096);
+        RawFrameCache.Sequence sequence = cache.open("a", 2);
+
+        assertNull(write(sequence, 0, 1));
+        assertFalse(sequence.has(0));
+        assertEquals(cache.getSize(), 0);
+    }
+
+    private ByteBuffer write(RawFrameCache.Sequence sequence, int frame, int value) throws IOException {
+        ByteBuffer pixels = sequence.beginWrite(frame, WIDTH, HEIGHT, CONFIG_ARGB_8888);
+        if (pixels == null) {
+            return null;
+        }
+        while (pixels.hasRemaining()) {
+            pixels.put((byte) value);
+        }
+        sequence.commit(frame);
+        return pixels;
+    }
+
+    private void assertPixels(ByteBuffer pixels, int value) {
+        assertEquals(pixels.remaining(), FRAME_SIZE);
+        while (pixels.hasRemaining()) {
+            assertEquals(pixels.get(), (byte) value);
+        }
+    }
+}
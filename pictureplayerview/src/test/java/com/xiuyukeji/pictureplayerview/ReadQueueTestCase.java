@@ -0,0 +1,386 @@
+package com.xiuyukeji.pictureplayerview;
+
+import com.xiuyukeji.pictureplayerview.utils.ReadQueue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 测试ReadQueue，解码任务由测试手动完成
+ */
+public class ReadQueueTestCase {
+
+    private static final long MS = 1000000L;
+
+    //目标不在窗口里，所有解码都放弃，从目标重新读取
+    @Test
+    public void testSeekOutsideWindow() throws Throwable {
+        Recorder recorder = new Recorder();
+        ReadQueue<TestFrame, TestJob> queue = new ReadQueue<>(8, recorder);
+        List<TestJob> jobs = addJobs(queue, 0, 4);
+
+        queue.requestSeek(100);
+        for (TestJob job : jobs) {
+            assertTrue(job.isCanceled());
+        }
+        finish(jobs);
+        queue.collect();//有新的目标时先处理目标
+        assertEquals(queue.getPendingCount(), 4);
+
+        assertTrue(queue.applySeekRequest());
+        assertFalse(queue.applySeekRequest());
+        for (TestJob job : jobs) {
+            assertTrue(job.isAbandoned());
+        }
+        queue.collect();
+        assertEquals(recorder.discarded.size(), 4);
+        assertTrue(queue.isEmpty());
+        assertEquals(queue.checkSeekReady(), -1);
+
+        assertEquals(queue.nextReadFrame(1000, 4, 1, false, new TestSchedule()), 100);
+        queue.add(new TestFrame(100));
+        assertEquals(queue.checkSeekReady(), 100);
+        assertEquals(queue.checkSeekReady(), -1);//只通知一次
+    }
+
+    //目标正在解码，缓存里的帧和目标之前的解码放弃，目标之后的解码继续
+    @Test
+    public void testSeekDecoding() throws Throwable {
+        Recorder recorder = new Recorder();
+        ReadQueue<TestFrame, TestJob> queue = new ReadQueue<>(8, recorder);
+        queue.add(new TestFrame(0));
+        queue.add(new TestFrame(1));
+        List<TestJob> jobs = addJobs(queue, 2, 4);
+        queue.advance(5, new TestSchedule());
+
+        queue.requestSeek(3);
+        assertTrue(jobs.get(0).isCanceled());
+        assertFalse(jobs.get(1).isCanceled());
+
+        queue.applySeekRequest();
+        assertEquals(recorder.released.size(), 2);
+        assertTrue(queue.isEmpty());
+        assertTrue(jobs.get(0).isAbandoned());
+        for (int i = 1; i < jobs.size(); i++) {
+            assertFalse(jobs.get(i).isAbandoned());
+        }
+        assertEquals(queue.getReadFrame(), 6);//后面的帧继续读取
+
+        finish(jobs);
+        queue.collect();
+        assertEquals(recorder.discarded.size(), 1);
+        assertEquals(queue.size(), 3);
+        assertEquals(queue.checkSeekReady(), 3);
+    }
+
+    //目标已经在缓存里，删除之前的帧后马上完成
+    @Test
+    public void testSeekReady() throws Throwable {
+        Recorder recorder = new Recorder();
+        ReadQueue<TestFrame, TestJob> queue = new ReadQueue<>(8, recorder);
+        for (int i = 0; i < 4; i++) {
+            queue.add(new TestFrame(i));
+        }
+        List<TestJob> jobs = addJobs(queue, 4, 2);
+
+        queue.requestSeek(2);
+        queue.applySeekRequest();
+        assertEquals(queue.size(), 2);
+        assertFalse(jobs.get(0).isCanceled());
+        assertFalse(jobs.get(0).isAbandoned());
+        assertEquals(queue.checkSeekReady(), 2);
+    }
+
+    //取消了解码的帧在新的目标下仍然需要，从这一帧重新读取
+    @Test
+    public void testSupersededCancel() throws Throwable {
+        Recorder recorder = new Recorder();
+        ReadQueue<TestFrame, TestJob> queue = new ReadQueue<>(8, recorder);
+        List<TestJob> jobs = addJobs(queue, 0, 4);
+        queue.advance(3, new TestSchedule());
+
+        queue.requestSeek(100);//目标不在窗口里，全部取消
+        queue.requestSeek(2);//读取线程处理前又拖回来
+        queue.applySeekRequest();
+        assertTrue(jobs.get(1).isAbandoned());
+        assertFalse(jobs.get(2).isAbandoned());
+
+        finish(jobs);
+        queue.collect();
+        assertEquals(recorder.discarded.size(), 4);
+        assertTrue(queue.isEmpty());
+        assertEquals(queue.getPendingCount(), 0);
+        assertEquals(queue.getReadFrame(), 2);
+        assertEquals(queue.nextReadFrame(1000, 4, 1, false, new TestSchedule()), 2);
+    }
+
+    @Test
+    public void testNextReadFrame() throws Throwable {
+        ReadQueue<TestFrame, TestJob> queue = new ReadQueue<>(8, new Recorder());
+        TestSchedule schedule = new TestSchedule();
+
+        assertEquals(queue.nextReadFrame(0, 4, 1, false, schedule), -1);//已经读到最后
+        queue.add(new TestFrame(0));
+        queue.advance(0, schedule);
+        assertEquals(queue.nextReadFrame(10, 4, 1, true, schedule), -1);//暂停时只读一帧
+        assertEquals(queue.nextReadFrame(10, 1, 1, false, schedule), -1);//缓存已满
+        assertEquals(queue.nextReadFrame(10, 4, 1, false, schedule), 1);
+
+        addJobs(queue, 1, 1);
+        queue.advance(1, schedule);
+        assertEquals(queue.nextReadFrame(10, 4, 1, false, schedule), -1);//解码线程都在忙
+        assertEquals(queue.nextReadFrame(10, 4, 2, false, schedule), 2);
+
+        schedule.projectedFrame = 6;//调度落后
+        assertEquals(queue.nextReadFrame(10, 4, 2, false, schedule), 6);
+        assertEquals(queue.getAvoidedCount(), 4);
+
+        schedule.projectedFrame = 12;
+        assertEquals(queue.nextReadFrame(10, 4, 2, false, schedule), -1);
+        assertEquals(queue.getReadFrame(), 12);
+    }
+
+    //解码时间作为预测的提前量，按完成的顺序指数平均
+    @Test
+    public void testDecodeCost() throws Throwable {
+        ReadQueue<TestFrame, TestJob> queue = new ReadQueue<>(8, new Recorder());
+        List<TestJob> jobs = addJobs(queue, 0, 2);
+        jobs.get(0).costNs = 8 * MS;
+        jobs.get(1).costNs = 16 * MS;
+
+        jobs.get(1).isDone = true;
+        queue.collect();//前面的帧还在解码，后面的帧等待
+        assertEquals(queue.size(), 0);
+        assertEquals(queue.getDecodeCostNs(), 0);
+
+        jobs.get(0).isDone = true;
+        queue.collect();
+        assertEquals(queue.size(), 2);
+        assertEquals(queue.getDecodeCostNs(), 9 * MS);
+
+        TestSchedule schedule = new TestSchedule();
+        queue.advance(1, schedule);
+        queue.nextReadFrame(100, 8, 1, false, schedule);
+        assertEquals(schedule.leadNs, 9 * MS);
+    }
+
+    //调度线程取帧时删除过时的帧，显示后位置可以被后面的帧使用
+    @Test
+    public void testGetFrame() throws Throwable {
+        Recorder recorder = new Recorder();
+        ReadQueue<TestFrame, TestJob> queue = new ReadQueue<>(2, recorder);
+        queue.add(new TestFrame(0));
+        queue.add(new TestFrame(2));
+
+        assertEquals(queue.getFrame(1), null);
+        assertEquals(recorder.skipped.size(), 1);
+        TestFrame frame = queue.getFrame(2);
+        assertEquals(frame.getIndex(), 2);
+        queue.displayed(frame);
+        assertTrue(queue.isEmpty());
+
+        TestSchedule schedule = new TestSchedule();
+        queue.advance(9, schedule);//窗口容量为8，10和2在同一个位置
+        assertEquals(queue.nextReadFrame(100, 2, 1, false, schedule), 10);
+    }
+
+    /**
+     * 拖动进度条，2毫秒一次连续跳转100次，解码一帧10毫秒且不能中途取消，只有一个解码线程
+     * <p>
+     * 测试里按时间顺序交替执行调度线程的跳转请求和读取线程的一次读取，跳转、收集和放弃都由ReadQueue处理，
+     * 调度器只用固定的速度代替，不测试调度器里的跳转合并
+     */
+    @Test
+    public void testBurst() throws Throwable {
+        Recorder recorder = new Recorder();
+        ReadQueue<TestFrame, TestJob> queue = new ReadQueue<>(8, recorder);
+        TestSchedule schedule = new TestSchedule();
+        int seekCount = 100;
+        long seekIntervalNs = 2 * MS;
+        long decodeNs = 10 * MS;
+
+        long nowNs = 0;
+        int nextSeek = 0;
+        int lastTarget = -1;
+        long lastSeekNs = 0;
+        int readyCount = 0;
+        long latencyNs = -1;
+        List<TestJob> jobs = new ArrayList<>();
+        TestJob decoding = null;
+        while (true) {
+            long seekNs = nextSeek < seekCount ? nextSeek * seekIntervalNs : Long.MAX_VALUE;
+            long doneNs = decoding != null ? decoding.endNs : Long.MAX_VALUE;
+            if (seekNs == Long.MAX_VALUE && doneNs == Long.MAX_VALUE) {
+                break;
+            }
+            if (seekNs < doneNs) {//调度线程发出新的目标，唤醒读取线程
+                nowNs = seekNs;
+                lastTarget = nextSeek * 7 % 250;
+                lastSeekNs = nowNs;
+                queue.requestSeek(lastTarget);
+                nextSeek++;
+            } else {//解码完成，唤醒读取线程
+                nowNs = doneNs;
+                decoding.isDone = true;
+                decoding = null;
+            }
+
+            queue.applySeekRequest();
+            queue.collect();
+            int ready = queue.checkSeekReady();
+            if (ready != -1) {//目标在缓存的第一个时才完成
+                assertEquals(ready, lastTarget);
+                assertEquals(queue.get(0).getIndex(), ready);
+                readyCount++;
+                latencyNs = nowNs - lastSeekNs;
+            }
+            int frameIndex = queue.nextReadFrame(250, 1, 1, false, schedule);//解码线程在忙时等待
+            if (frameIndex != -1) {
+                decoding = new TestJob(frameIndex);
+                decoding.endNs = nowNs + decodeNs;
+                queue.addJob(decoding);
+                queue.advance(frameIndex, schedule);
+                jobs.add(decoding);
+            }
+        }
+
+        //每次解码期间的请求都被合并，解码次数由解码时间决定而不是请求次数
+        assertTrue(jobs.size() <= seekCount * seekIntervalNs / decodeNs + 2);
+        //被覆盖的目标解码完成后都被放弃，只有最后一个目标放进缓存并完成跳转
+        for (int i = 0; i < jobs.size() - 1; i++) {
+            assertTrue(jobs.get(i).isAbandoned());
+        }
+        assertEquals(recorder.discarded.size(), jobs.size() - 1);
+        assertEquals(readyCount, 1);
+        assertEquals(queue.size(), 1);
+        assertEquals(queue.get(0).getIndex(), lastTarget);
+        //最后一个目标最多等待正在解码的一帧再解码自己
+        assertTrue(latencyNs > 0 && latencyNs <= decodeNs * 2);
+    }
+
+    private static List<TestJob> addJobs(ReadQueue<TestFrame, TestJob> queue, int start, int count) {
+        List<TestJob> jobs = new ArrayList<>();
+        for (int i = start; i < start + count; i++) {
+            TestJob job = new TestJob(i);
+            queue.addJob(job);
+            jobs.add(job);
+        }
+        return jobs;
+    }
+
+    private static void finish(List<TestJob> jobs) {
+        for (TestJob job : jobs) {
+            job.isDone = true;
+        }
+    }
+
+    private static final class TestFrame implements ReadQueue.Frame {
+        private final int mIndex;
+
+        TestFrame(int index) {
+            this.mIndex = index;
+        }
+
+        @Override
+        public int getIndex() {
+            return mIndex;
+        }
+    }
+
+    private static final class TestJob implements ReadQueue.Job {
+        private final int mIndex;
+        private boolean mIsCanceled;
+        private boolean mIsAbandoned;
+        boolean isDone;
+        long costNs;
+        long endNs;
+
+        TestJob(int index) {
+            this.mIndex = index;
+        }
+
+        @Override
+        public int getIndex() {
+            return mIndex;
+        }
+
+        @Override
+        public boolean isDone() {
+            return isDone;
+        }
+
+        @Override
+        public long getCostNs() {
+            return costNs;
+        }
+
+        @Override
+        public void cancel() {
+            mIsCanceled = true;
+        }
+
+        @Override
+        public void abandon() {
+            mIsAbandoned = true;
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return mIsCanceled;
+        }
+
+        @Override
+        public boolean isAbandoned() {
+            return mIsAbandoned;
+        }
+    }
+
+    //每一帧都显示，projectedFrame之前的帧已经来不及显示
+    private static final class TestSchedule implements ReadQueue.Schedule {
+        long projectedFrame;
+        long leadNs;
+
+        @Override
+        public long getNextFrame(long frameIndex) {
+            return frameIndex + 1;
+        }
+
+        @Override
+        public long getProjectedFrame(long leadNs) {
+            this.leadNs = leadNs;
+            return projectedFrame;
+        }
+    }
+
+    private static final class Recorder implements ReadQueue.Listener<TestFrame, TestJob> {
+        final List<TestJob> discarded = new ArrayList<>();
+        final List<TestFrame> skipped = new ArrayList<>();
+        final List<TestFrame> released = new ArrayList<>();
+
+        @Override
+        public TestFrame onDecoded(TestJob job) {
+            return new TestFrame(job.getIndex());
+        }
+
+        @Override
+        public void onDiscard(TestJob job) {
+            discarded.add(job);
+        }
+
+        @Override
+        public void onSkip(TestFrame frame) {
+            skipped.add(frame);
+        }
+
+        @Override
+        public void onRelease(TestFrame frame) {
+            released.add(frame);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.xiuyukeji.pictureplayerview;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 测试ReadSignal
+ */
+public class ReadSignalTestCase {
+
+    //等待前发出的信号不会丢失，多次信号只唤醒一次
+    @Test
+    public void testSignalBeforeAwait() throws Exception {
+        ReadSignal signal = new ReadSignal();
+        signal.signal();
+        signal.signal();
+
+        long startNs = System.nanoTime();
+        signal.await();
+        assertTrue(System.nanoTime() - startNs < 50000000L);
+        assertEquals(signal.getWakeupCount(), 1);
+
+        Thread thread = startAwait(signal);
+        thread.join(200);
+        assertTrue(thread.isAlive());//没有信号时一直等待，不会超时返回
+        assertEquals(signal.getWakeupCount(), 1);
+
+        signal.signal();
+        thread.join(1000);
+        assertFalse(thread.isAlive());
+        assertEquals(signal.getWakeupCount(), 2);
+    }
+
+    //停止时中断等待的线程
+    @Test
+    public void testInterrupt() throws Exception {
+        ReadSignal signal = new ReadSignal();
+        Thread thread = startAwait(signal);
+        thread.join(200);
+        assertTrue(thread.isAlive());
+
+        thread.interrupt();
+        thread.join(1000);
+        assertFalse(thread.isAlive());
+    }
+
+    @Test
+    public void testSignalFromOtherThread() throws Exception {
+        final ReadSignal signal = new ReadSignal();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+                signal.signal();
+            }
+        });
+        long startNs = System.nanoTime();
+        thread.start();
+        signal.await();
+        assertTrue(System.nanoTime() - startNs < 90000000L);
+        thread.join();
+    }
+
+    private Thread startAwait(final ReadSignal signal) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                signal.await();
+            }
+        });
+        thread.start();
+        return thread;
+    }
+}
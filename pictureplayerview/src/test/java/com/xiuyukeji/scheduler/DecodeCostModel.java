@@ -0,0 +1,62 @@
+package com.xiuyukeji.scheduler;
+
+import java.util.Random;
+
+/**
+ * 模拟解码一帧的耗时，随机的模型使用固定的种子，每次运行结果一样
+ */
+public abstract class DecodeCostModel {
+
+    /**
+     * 返回解码这一帧的耗时
+     *
+     * @param frameIndex 帧序列
+     * @return 纳秒
+     */
+    public abstract long nextCostNs(long frameIndex);
+
+    /**
+     * 每一帧耗时一样
+     *
+     * @param costNs 纳秒
+     */
+    public static DecodeCostModel fixed(final long costNs) {
+        return new DecodeCostModel() {
+            @Override
+            public long nextCostNs(long frameIndex) {
+                return costNs;
+            }
+        };
+    }
+
+    /**
+     * 在minNs到maxNs之间均匀随机
+     */
+    public static DecodeCostModel uniform(final long minNs, final long maxNs, long seed) {
+        final Random random = new Random(seed);
+        return new DecodeCostModel() {
+            @Override
+            public long nextCostNs(long frameIndex) {
+                return minNs + (long) (random.nextDouble() * (maxNs - minNs));
+            }
+        };
+    }
+
+    /**
+     * 重尾分布(帕累托)，大部分帧接近baseNs，偶尔有很慢的帧，比如GC或者IO抖动
+     *
+     * @param baseNs 最小耗时
+     * @param alpha  形状参数，越小慢帧越多越慢，一般为1到3
+     * @param maxNs  最大耗时
+     */
+    public static DecodeCostModel heavyTailed(final long baseNs, final double alpha, final long maxNs, long seed) {
+        final Random random = new Random(seed);
+        return new DecodeCostModel() {
+            @Override
+            public long nextCostNs(long frameIndex) {
+                double u = 1 - random.nextDouble();//(0, 1]
+                return Math.min(maxNs, (long) (baseNs / Math.pow(u, 1 / alpha)));
+            }
+        };
+    }
+}
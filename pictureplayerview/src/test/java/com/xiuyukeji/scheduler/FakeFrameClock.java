@@ -0,0 +1,32 @@
+package com.xiuyukeji.scheduler;
+
+/**
+ * 测试用的时钟，只有手动推进才会走
+ */
+public class FakeFrameClock implements FrameClock {
+
+    private long mNanoTime;
+
+    public FakeFrameClock() {
+        this(0);
+    }
+
+    public FakeFrameClock(long nanoTime) {
+        this.mNanoTime = nanoTime;
+    }
+
+    @Override
+    public long nanoTime() {
+        return mNanoTime;
+    }
+
+    public void advance(long nanos) {
+        mNanoTime += nanos;
+    }
+
+    public void advanceTo(long nanoTime) {
+        if (nanoTime > mNanoTime) {
+            mNanoTime = nanoTime;
+        }
+    }
+}
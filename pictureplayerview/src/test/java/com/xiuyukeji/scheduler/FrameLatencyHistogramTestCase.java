@@ -0,0 +1,66 @@
+package com.xiuyukeji.scheduler;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 测试FrameLatencyHistogram
+ */
+public class FrameLatencyHistogramTestCase {
+
+    private static final long MS = 1000000L;
+
+    @Test
+    public void testRecord() throws Exception {
+        FrameLatencyHistogram histogram = new FrameLatencyHistogram();
+
+        histogram.record(-5 * MS);//提前
+        histogram.record(MS);//1毫秒以内算准时
+        histogram.record(MS + 1);
+        histogram.record(3 * MS + MS / 2);
+        histogram.record(1000 * MS);
+
+        assertEquals(histogram.getCount(), 5);
+        assertEquals(histogram.getOnTimeCount(), 2);
+        assertEquals(histogram.getBucketCount(1), 1);
+        assertEquals(histogram.getBucketCount(3), 1);
+        assertEquals(histogram.getBucketCount(FrameLatencyHistogram.BUCKET_COUNT - 1), 1);
+    }
+
+    @Test
+    public void testPercentile() throws Exception {
+        FrameLatencyHistogram histogram = new FrameLatencyHistogram();
+
+        assertEquals(histogram.getP50Ms(), 0);
+
+        for (int i = 0; i < 90; i++) {
+            histogram.record(0);
+        }
+        for (int i = 0; i < 8; i++) {
+            histogram.record(5 * MS + 1);
+        }
+        histogram.record(20 * MS + 1);
+        histogram.record(40 * MS + 1);
+
+        assertEquals(histogram.getP50Ms(), 0);
+        assertEquals(histogram.getP95Ms(), 5);
+        assertEquals(histogram.getP99Ms(), 20);
+        assertEquals(histogram.getPercentileMs(100), 40);
+    }
+
+    @Test
+    public void testPacer() throws Exception {
+        FramePacer pacer = new FramePacer(1000, 25);//每帧40毫秒
+        pacer.anchor(0, 0);
+
+        pacer.onFrameUpdate(0, 0);
+        pacer.onFrameUpdate(1, 40 * MS + 2 * MS + 1);
+        long next = pacer.nextFrame(1, 200 * MS, true);
+
+        FrameLatencyHistogram histogram = pacer.getLatencyHistogram();
+        assertEquals(histogram.getCount(), 2);
+        assertEquals(histogram.getBucketCount(2), 1);
+        assertEquals(histogram.getSkippedCount(), next - 2);
+    }
+}
@@ -0,0 +1,123 @@
+package com.xiuyukeji.scheduler;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 测试FrameLoop
+ */
+public class FrameLoopTestCase {
+
+    private static final long MS = 1000000L;
+    private static final long DURATION = 1000;//32帧1秒，帧间隔31.25毫秒
+    private static final int FRAME_COUNT = 32;
+
+    //消息提前到截止时间所在的毫秒，剩下的不到1毫秒在显示前补齐
+    @Test
+    public void testPostDelay() throws Exception {
+        FramePacer pacer = new FramePacer(DURATION, FRAME_COUNT);
+        pacer.anchor(0, 0);
+        FrameLoop loop = new FrameLoop(pacer);
+
+        assertEquals(loop.getDelayNs(1, 0), 31250000L);
+        assertEquals(loop.getPostDelayMs(1, 0), 31);
+        assertEquals(loop.getPostDelayMs(1, 40 * MS), 0);//已经过了截止时间
+        assertEquals(loop.getDelayNs(1, 40 * MS), -8750000L);
+    }
+
+    @Test
+    public void testShowFrame() throws Exception {
+        FramePacer pacer = new FramePacer(DURATION, FRAME_COUNT);
+        pacer.anchor(0, 0);
+        FrameLoop loop = new FrameLoop(pacer);
+        TestHost host = new TestHost(31 * MS);
+
+        assertEquals(loop.showFrame(1, true, true, host), 2);
+        assertEquals(host.sleptNs, 250000L);
+        assertEquals(host.updateNs.get(0).longValue(), 31250000L);//显示落在截止时间上
+
+        host.nowNs = 62 * MS;
+        assertEquals(loop.showFrame(2, false, true, host), 3);//共用线程时不补齐
+        assertEquals(host.sleptNs, 250000L);
+        assertEquals(host.updateNs.get(1).longValue(), 62 * MS);
+    }
+
+    //画得太慢，按画完的时间跳过已经错过的帧
+    @Test
+    public void testShowFrame_Late() throws Exception {
+        FramePacer pacer = new FramePacer(DURATION, FRAME_COUNT);
+        pacer.anchor(0, 0);
+        FrameLoop loop = new FrameLoop(pacer);
+        TestHost host = new TestHost(31250000L);
+        host.drawNs = 70 * MS;
+
+        long next = loop.showFrame(1, true, true, host);
+        assertEquals(next, pacer.getDueFrame(host.nowNs));
+        assertTrue(next > 2);
+        assertEquals(pacer.getSkippedCount(), next - 2);
+
+        host.nowNs = pacer.getDeadlineNs(next);
+        assertEquals(loop.showFrame(next, true, false, host), next + 1);//不跳帧时按顺序显示
+    }
+
+    @Test
+    public void testShowVsyncFrame() throws Exception {
+        FramePacer pacer = new FramePacer(DURATION, FRAME_COUNT);
+        pacer.anchor(0, 0);
+        FrameLoop loop = new FrameLoop(pacer);
+        TestHost host = new TestHost(0);
+        long halfVsyncNs = 8 * MS;
+
+        assertEquals(loop.showVsyncFrame(1, 16 * MS, halfVsyncNs, true, host), -1);//还没有到时间
+        assertTrue(host.updateNs.isEmpty());
+        assertEquals(loop.showVsyncFrame(1, 25 * MS, halfVsyncNs, true, host), 2);
+        assertEquals(host.updateFrames.get(0).longValue(), 1);
+        assertEquals(loop.showVsyncFrame(2, 100 * MS, halfVsyncNs, true, host), 4);//刷新时间决定显示的帧
+        assertEquals(host.updateFrames.get(1).longValue(), 3);
+    }
+
+    @Test
+    public void testProjectedFrame() throws Exception {
+        FramePacer pacer = new FramePacer(DURATION, FRAME_COUNT);
+        pacer.anchor(0, 0);
+        FrameLoop loop = new FrameLoop(pacer);
+
+        assertEquals(loop.getProjectedFrame(5, 0, 10 * MS), 5);//不会小于当前帧
+        assertEquals(loop.getProjectedFrame(1, 90 * MS, 10 * MS), pacer.getDueFrame(100 * MS));
+    }
+
+    private static final class TestHost implements FrameLoop.Host {
+        long nowNs;
+        long sleptNs;
+        long drawNs;
+        final List<Long> updateNs = new ArrayList<>();
+        final List<Long> updateFrames = new ArrayList<>();
+
+        TestHost(long nowNs) {
+            this.nowNs = nowNs;
+        }
+
+        @Override
+        public long nanoTime() {
+            return nowNs;
+        }
+
+        @Override
+        public void sleepNanos(long nanos) {
+            sleptNs += nanos;
+            nowNs += nanos;
+        }
+
+        @Override
+        public void update(long frameIndex) {
+            updateNs.add(nowNs);
+            updateFrames.add(frameIndex);
+            nowNs += drawNs;
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package com.xiuyukeji.scheduler;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 测试FramePacer
+ */
+public class FramePacerTestCase {
+
+    private static final long DURATION = 1000;//32帧1秒，帧间隔不是整毫秒
+    private static final int FRAME_COUNT = 32;
+
+    @Test
+    public void testDeadline_NoDrift() throws Exception {
+        FramePacer pacer = new FramePacer(DURATION, FRAME_COUNT);
+        pacer.anchor(0, 0);
+
+        assertEquals(pacer.getDeadlineNs(0), 0);
+        assertEquals(pacer.getDeadlineNs(FRAME_COUNT), DURATION * 1000000L);
+        assertEquals(pacer.getDeadlineNs(FRAME_COUNT * 1000), 1000 * DURATION * 1000000L);
+    }
+
+    @Test
+    public void testDeadline_Anchor() throws Exception {
+        FramePacer pacer = new FramePacer(DURATION, FRAME_COUNT);
+        pacer.anchor(FRAME_COUNT / 2, 5000000000L);
+
+        assertEquals(pacer.getDeadlineNs(FRAME_COUNT / 2), 5000000000L);
+        assertEquals(pacer.getDeadlineNs(FRAME_COUNT), 5000000000L + DURATION * 1000000L / 2);
+    }
+
+    @Test
+    public void testGetFrameAt() throws Exception {
+        FramePacer pacer = new FramePacer(DURATION, FRAME_COUNT);
+        pacer.anchor(0, 1000);
+
+        for (long i = 0; i < FRAME_COUNT; i++) {
+            long deadline = pacer.getDeadlineNs(i);
+            assertEquals(pacer.getFrameAt(deadline), i);
+            assertEquals(pacer.getFrameAt(deadline - 1), i - 1);
+        }
+    }
+
+    @Test
+    public void testNextFrame_NoSkip() throws Exception {
+        FramePacer pacer = new FramePacer(DURATION, FRAME_COUNT);
+        pacer.anchor(0, 0);
+
+        assertEquals(pacer.nextFrame(0, pacer.getDeadlineNs(5), false), 1);
+        assertEquals(pacer.getSkippedCount(), 0);
+    }
+
+    @Test
+    public void testNextFrame_Skip() throws Exception {
+        FramePacer pacer = new FramePacer(DURATION, FRAME_COUNT);
+        pacer.anchor(0, 0);
+
+        assertEquals(pacer.nextFrame(0, pacer.getDeadlineNs(1), true), 1);
+        assertEquals(pacer.nextFrame(0, pacer.getDeadlineNs(5) - 1, true), 5);
+        assertEquals(pacer.nextFrame(0, pacer.getDeadlineNs(5) + 1, true), 6);
+        assertEquals(pacer.getSkippedCount(), 4 + 5);
+        assertEquals(pacer.nextFrame(20, pacer.getDeadlineNs(100), true), FRAME_COUNT);
+    }
+
+    @Test
+    public void testGetDueFrame() throws Exception {
+        FramePacer pacer = new FramePacer(DURATION, FRAME_COUNT);
+        pacer.anchor(0, 0);
+        long period = pacer.getPeriodNs();
+
+        assertEquals(pacer.getDueFrame(-period), 0);
+        assertEquals(pacer.getDueFrame(0), 0);
+        assertEquals(pacer.getDueFrame(1), 1);
+        assertEquals(pacer.getDueFrame(pacer.getDeadlineNs(3)), 3);
+        assertEquals(pacer.getDueFrame(pacer.getDeadlineNs(3) + 1), 4);
+        assertEquals(pacer.getDueFrame(period * (FRAME_COUNT + 2)), FRAME_COUNT);
+    }
+
+    //循环时最后一帧和下一轮第一帧的间隔等于正常的帧间隔
+    @Test
+    public void testLoop_Boundary() throws Exception {
+        FramePacer pacer = new FramePacer(DURATION, FRAME_COUNT);
+        pacer.setLoop(true);
+        pacer.anchor(0, 0);
+        long period = pacer.getDeadlineNs(1) - pacer.getDeadlineNs(0);
+
+        for (int pass = 1; pass <= 3; pass++) {
+            long first = pass * FRAME_COUNT;
+            assertEquals(pacer.getDeadlineNs(first) - pacer.getDeadlineNs(first - 1), period);
+            assertEquals(pacer.getDeadlineNs(first + 1) - pacer.getDeadlineNs(first), period);
+        }
+        assertEquals(pacer.getNextFrame(FRAME_COUNT - 1), FRAME_COUNT);
+        assertEquals(pacer.getFrameAt(pacer.getDeadlineNs(FRAME_COUNT * 2 + 3)), FRAME_COUNT * 2 + 3);
+        assertEquals(pacer.getDueFrame(pacer.getDeadlineNs(FRAME_COUNT) + 1), FRAME_COUNT + 1);
+    }
+
+    @Test
+    public void testLoop_BoundaryDurations() throws Exception {
+        FramePacer pacer = new FramePacer(FrameTimeline.ofDurations(new long[]{10, 20, 30}));
+        pacer.setLoop(true);
+        pacer.anchor(0, 0);
+
+        //最后一帧显示完自己的时长后接下一轮
+        assertEquals(pacer.getDeadlineNs(3) - pacer.getDeadlineNs(2), 30 * 1000000L);
+        assertEquals(pacer.getDeadlineNs(4) - pacer.getDeadlineNs(3), 10 * 1000000L);
+        assertEquals(pacer.getFrameAt(65 * 1000000L), 3);
+    }
+
+    //循环中取消时在这一轮结束，已经在后面几轮的帧的时间不变
+    @Test
+    public void testLoop_Off() throws Exception {
+        FramePacer pacer = new FramePacer(DURATION, FRAME_COUNT);
+        pacer.setLoop(true);
+        pacer.anchor(0, 0);
+        long frameIndex = FRAME_COUNT * 2 + 3;
+        long deadline = pacer.getDeadlineNs(frameIndex);
+        long endNs = pacer.getDeadlineNs(FRAME_COUNT * 3);
+
+        pacer.setLoop(false, frameIndex);
+
+        assertFalse(pacer.isLoop());
+        assertEquals(pacer.getEndFrame(), FRAME_COUNT * 3);
+        assertEquals(pacer.getDeadlineNs(frameIndex), deadline);
+        assertEquals(pacer.getFrameAt(deadline), frameIndex);
+        assertEquals(pacer.getNextFrame(FRAME_COUNT * 3 - 1), FRAME_COUNT * 3);
+        assertEquals(pacer.getDueFrame(endNs * 2), FRAME_COUNT * 3);//不再进入下一轮
+
+        pacer.setLoop(false);//重新开始后只有第一轮
+        assertEquals(pacer.getEndFrame(), FRAME_COUNT);
+        assertEquals(pacer.getDueFrame(endNs), FRAME_COUNT);
+    }
+
+    //模拟帧循环播放三轮，每一轮交界处的实际间隔和其他帧一样
+    @Test
+    public void testLoop_Playback() throws Exception {
+        FakeFrameClock clock = new FakeFrameClock();
+        FramePacer pacer = new FramePacer(DURATION, FRAME_COUNT);
+        pacer.setLoop(true);
+        pacer.anchor(0, clock.nanoTime());
+
+        long[] updateNs = new long[FRAME_COUNT * 3];
+        long frameIndex = 0;
+        while (frameIndex < updateNs.length) {
+            clock.advanceTo(pacer.getDeadlineNs(frameIndex));
+            pacer.onFrameUpdate(frameIndex, clock.nanoTime());
+            updateNs[(int) frameIndex] = clock.nanoTime();
+            frameIndex = pacer.nextFrame(frameIndex, clock.nanoTime(), true);
+        }
+
+        long period = updateNs[1] - updateNs[0];
+        assertEquals(updateNs[FRAME_COUNT] - updateNs[FRAME_COUNT - 1], period);
+        assertEquals(updateNs[FRAME_COUNT * 2] - updateNs[FRAME_COUNT * 2 - 1], period);
+        assertEquals(pacer.getSkippedCount(), 0);
+    }
+
+    //先播放一遍开头，再循环后面的部分，片段交界处的实际间隔和其他帧一样
+    @Test
+    public void testSegments_Playback() throws Exception {
+        FakeFrameClock clock = new FakeFrameClock();
+        FramePacer pacer = new FramePacer(DURATION, FRAME_COUNT);
+        pacer.setSegments(new FrameSegments(pacer.getTimeline())
+                .append(0, 9, 1)
+                .append(10, FRAME_COUNT - 1, FrameSegments.LOOP_INFINITE));
+        pacer.anchor(0, clock.nanoTime());
+
+        long[] updateNs = new long[40];
+        long frameIndex = 0;
+        while (frameIndex < updateNs.length) {
+            clock.advanceTo(pacer.getDeadlineNs(frameIndex));
+            pacer.onFrameUpdate(frameIndex, clock.nanoTime());
+            updateNs[(int) frameIndex] = clock.nanoTime();
+            frameIndex = pacer.nextFrame(frameIndex, clock.nanoTime(), true);
+        }
+
+        long period = updateNs[1] - updateNs[0];
+        assertEquals(updateNs[10] - updateNs[9], period);
+        assertEquals(updateNs[FRAME_COUNT] - updateNs[FRAME_COUNT - 1], period);//第二遍从第10帧开始
+        assertEquals(pacer.getSegments().getTimelineFrame(FRAME_COUNT), 10);
+        assertEquals(pacer.getSkippedCount(), 0);
+    }
+
+    @Test
+    public void testGetVsyncFrame() throws Exception {
+        FramePacer pacer = new FramePacer(DURATION, FRAME_COUNT);
+        pacer.anchor(0, 0);
+
+        long vsync = 16666667L;
+        long tolerance = vsync / 2;
+
+        assertEquals(pacer.getVsyncFrame(0, 0, tolerance, true), 0);
+        //第1帧在31.25ms，落在第2次和第3次刷新之间，离第3次刷新更近
+        assertEquals(pacer.getVsyncFrame(1, vsync, tolerance, true), -1);
+        assertEquals(pacer.getVsyncFrame(1, vsync * 2, tolerance, true), 1);
+        //每次刷新最多显示一帧
+        assertEquals(pacer.getVsyncFrame(2, vsync * 2, tolerance, true), -1);
+        //落后时直接显示这次刷新对应的帧
+        assertEquals(pacer.getVsyncFrame(2, vsync * 12, tolerance, true), 6);
+        assertEquals(pacer.getSkippedCount(), 4);
+        assertEquals(pacer.getVsyncFrame(2, vsync * 12, tolerance, false), 2);
+    }
+
+    @Test
+    public void testRate() throws Exception {
+        FramePacer pacer = new FramePacer(DURATION, FRAME_COUNT);
+        pacer.anchor(0, 0);
+        long half = pacer.getDeadlineNs(12);
+
+        pacer.setRate(2, 0);
+
+        assertEquals(pacer.getDeadlineNs(12), half / 2);
+        assertEquals(pacer.getFrameAt(half / 2), 12);
+    }
+
+    @Test
+    public void testRate_ChangeWhilePlaying() throws Exception {
+        FramePacer pacer = new FramePacer(DURATION, FRAME_COUNT);
+        pacer.anchor(0, 0);
+        long now = pacer.getDeadlineNs(6);
+
+        //切换速度时当前位置不变，之后的帧按新速度计算
+        pacer.setRate(0.5, now);
+
+        assertEquals(pacer.getMediaTimeNs(now), pacer.getOffsetNs(6));
+        assertEquals(pacer.getDeadlineNs(6), now);
+        assertEquals(pacer.getDeadlineNs(7) - now, (pacer.getOffsetNs(7) - pacer.getOffsetNs(6)) * 2);
+    }
+
+    @Test
+    public void testGetNextFrame() throws Exception {
+        FramePacer pacer = new FramePacer(DURATION, FRAME_COUNT);
+        pacer.setMinIntervalNs(16666667L);
+
+        assertEquals(pacer.getNextFrame(0), 1);
+
+        //32帧3倍速为96帧，超过刷新率，隔一帧显示一帧
+        pacer.setRate(3, 0);
+        assertEquals(pacer.getNextFrame(0), 2);
+        assertEquals(pacer.getNextFrame(2), 4);
+        //最后一帧始终显示
+        assertEquals(pacer.getNextFrame(FRAME_COUNT - 2), FRAME_COUNT - 1);
+        assertEquals(pacer.getNextFrame(FRAME_COUNT - 1), FRAME_COUNT);
+
+        pacer.setRate(10, 0);
+        assertEquals(pacer.getNextFrame(0), 6);
+    }
+
+    @Test
+    public void testPacing_OnTime() throws Exception {
+        FakeFrameClock clock = new FakeFrameClock(123456789L);
+        FramePacer pacer = new FramePacer(DURATION, FRAME_COUNT);
+
+        runLoop(pacer, clock, new Random(1), 0);
+
+        assertEquals(pacer.getUpdateCount(), FRAME_COUNT);
+        assertEquals(pacer.getMaxPacingErrorNs(), 0);
+        assertEquals(pacer.getMissedCount(), 0);
+        assertEquals(clock.nanoTime() - 123456789L, DURATION * 1000000L * (FRAME_COUNT - 1) / FRAME_COUNT);//最后一帧的截止时间
+    }
+
+    @Test
+    public void testPacing_UnderLoad() throws Exception {
+        FakeFrameClock clock = new FakeFrameClock();
+        FramePacer pacer = new FramePacer(DURATION, FRAME_COUNT);
+
+        //每帧随机耗时，最多为帧间隔的90%
+        runLoop(pacer, clock, new Random(2), pacer.getPeriodNs() * 9 / 10);
+
+        assertEquals(pacer.getUpdateCount(), FRAME_COUNT);
+        assertEquals(pacer.getSkippedCount(), 0);
+        assertEquals(pacer.getMissedCount(), 0);
+        assertTrue(pacer.getMaxPacingErrorNs() < 1000000L);
+    }
+
+    @Test
+    public void testPacing_Overload() throws Exception {
+        FakeFrameClock clock = new FakeFrameClock();
+        FramePacer pacer = new FramePacer(DURATION, FRAME_COUNT);
+
+        runLoop(pacer, clock, new Random(3), pacer.getPeriodNs() * 3);
+
+        assertTrue(pacer.getSkippedCount() > 0);
+        assertEquals(pacer.getUpdateCount() + pacer.getSkippedCount(), FRAME_COUNT);
+        //跳帧后每一帧都应该落在自己的截止时间上
+        assertEquals(pacer.getMissedCount(), 0);
+    }
+
+    //模拟Scheduler的帧循环，work为每帧的最大耗时
+    private void runLoop(FramePacer pacer, FakeFrameClock clock, Random random, long work) {
+        long frameIndex = 0;
+        pacer.anchor(frameIndex, clock.nanoTime());
+        while (frameIndex < FRAME_COUNT) {
+            clock.advanceTo(pacer.getDeadlineNs(frameIndex));
+            pacer.onFrameUpdate(frameIndex, clock.nanoTime());
+            if (work > 0) {
+                clock.advance((long) (random.nextDouble() * work));
+            }
+            frameIndex = pacer.nextFrame(frameIndex, clock.nanoTime(), true);
+        }
+    }
+}
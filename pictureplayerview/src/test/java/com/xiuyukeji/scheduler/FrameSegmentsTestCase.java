@@ -0,0 +1,97 @@
+package com.xiuyukeji.scheduler;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 测试FrameSegments
+ */
+public class FrameSegmentsTestCase {
+
+    private static final long MS = 1000000L;
+
+    //开头播放一遍，后面一直循环
+    private FrameSegments createSegments() {
+        FrameTimeline timeline = FrameTimeline.ofDurations(new long[]{10, 20, 30, 40, 50});
+        return new FrameSegments(timeline)
+                .append(0, 1, 1)
+                .append(2, 4, FrameSegments.LOOP_INFINITE);
+    }
+
+    @Test
+    public void testGetTimelineFrame() throws Exception {
+        FrameSegments segments = createSegments();
+
+        assertTrue(segments.isInfinite());
+        assertEquals(segments.getFrameCount(), Long.MAX_VALUE);
+        assertEquals(segments.getSegmentFrame(1), 2);
+        assertEquals(segments.getTimelineFrame(1), 1);
+        assertEquals(segments.getTimelineFrame(2), 2);
+        assertEquals(segments.getTimelineFrame(4), 4);
+        assertEquals(segments.getTimelineFrame(5), 2);//第二遍
+        assertEquals(segments.getTimelineFrame(3 * 100 + 2 + 1), 3);
+    }
+
+    @Test
+    public void testGetTimeNs() throws Exception {
+        FrameSegments segments = createSegments();
+
+        assertEquals(segments.getTimeNs(1), 10 * MS);
+        assertEquals(segments.getTimeNs(2), 30 * MS);//片段之间没有间隔
+        assertEquals(segments.getTimeNs(4), 100 * MS);
+        assertEquals(segments.getTimeNs(5), 150 * MS);//最后一帧显示完自己的时长后接下一遍
+        assertEquals(segments.getTimeNs(6), 180 * MS);
+    }
+
+    @Test
+    public void testGetFrameAt() throws Exception {
+        FrameSegments segments = createSegments();
+
+        assertEquals(segments.getFrameAt(-1), -1);
+        assertEquals(segments.getFrameAt(29 * MS), 1);
+        assertEquals(segments.getFrameAt(30 * MS), 2);
+        assertEquals(segments.getFrameAt(149 * MS), 4);
+        assertEquals(segments.getFrameAt(150 * MS), 5);
+        for (long i = 0; i < 20; i++) {
+            assertEquals(segments.getFrameAt(segments.getTimeNs(i)), i);
+        }
+    }
+
+    @Test
+    public void testFinish() throws Exception {
+        FrameSegments segments = createSegments().finish(6);//第二遍播放完后结束
+
+        assertFalse(segments.isInfinite());
+        assertEquals(segments.getFrameCount(), 8);
+        assertEquals(segments.getEndTimeNs(), 270 * MS);
+        assertEquals(segments.getFrameAt(270 * MS), 8);
+        assertEquals(segments.getTimelineFrame(8), 4);
+
+        segments = segments.append(0, 0, 2);
+        assertEquals(segments.getFrameCount(), 10);
+        assertEquals(segments.getTimelineFrame(8), 0);
+        assertEquals(segments.getTimeNs(9), 280 * MS);
+    }
+
+    @Test
+    public void testGetFrameIndexOf() throws Exception {
+        FrameSegments segments = createSegments();
+
+        assertEquals(segments.getFrameIndexOf(3, 6), 6);//当前片段的这一遍
+        assertEquals(segments.getFrameIndexOf(2, 7), 5);
+        assertEquals(segments.getFrameIndexOf(0, 6), 0);//其他片段的第一遍
+    }
+
+    @Test
+    public void testAppendAfterInfinite() throws Exception {
+        try {
+            createSegments().append(0, 1, 1);
+            assertTrue(false);
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("infinite"));
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.xiuyukeji.scheduler;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 测试FrameTimeline
+ */
+public class FrameTimelineTestCase {
+
+    private static final long MS = 1000000L;
+
+    @Test
+    public void testUniform() throws Exception {
+        FrameTimeline timeline = FrameTimeline.uniform(1000, 10);
+
+        assertEquals(timeline.getFrameCount(), 10);
+        assertEquals(timeline.getTimeNs(0), 0);
+        assertEquals(timeline.getTimeNs(9), 900 * MS);
+        assertEquals(timeline.getEndTimeNs(), 1000 * MS);//最后一帧显示完正好是总时间
+        assertEquals(timeline.getFrameDurationNs(9), 100 * MS);
+    }
+
+    @Test
+    public void testOfDurations() throws Exception {
+        FrameTimeline timeline = FrameTimeline.ofDurations(new long[]{40, 500, 40, 40});
+
+        assertEquals(timeline.getFrameCount(), 4);
+        assertEquals(timeline.getTimeNs(1), 40 * MS);
+        assertEquals(timeline.getTimeNs(2), 540 * MS);
+        assertEquals(timeline.getEndTimeNs(), 620 * MS);
+        assertEquals(timeline.getFrameDurationNs(1), 500 * MS);
+    }
+
+    @Test
+    public void testGetFrameAt() throws Exception {
+        FrameTimeline timeline = FrameTimeline.ofDurations(new long[]{40, 500, 40, 40});
+
+        assertEquals(timeline.getFrameAt(-1), -1);
+        assertEquals(timeline.getFrameAt(0), 0);
+        assertEquals(timeline.getFrameAt(40 * MS - 1), 0);
+        assertEquals(timeline.getFrameAt(40 * MS), 1);
+        assertEquals(timeline.getFrameAt(539 * MS), 1);
+        assertEquals(timeline.getFrameAt(540 * MS), 2);
+        assertEquals(timeline.getFrameAt(619 * MS), 3);
+        assertEquals(timeline.getFrameAt(620 * MS), 4);
+    }
+
+    @Test
+    public void testReverse() throws Exception {
+        FrameTimeline timeline = FrameTimeline.ofDurations(new long[]{40, 500, 40, 80}).reverse();
+
+        assertEquals(timeline.getFrameCount(), 4);
+        assertEquals(timeline.getSourceIndex(0), 3);
+        assertEquals(timeline.getSourceIndex(3), 0);
+        //每张图片的时长不变
+        assertEquals(timeline.getFrameDurationNs(0), 80 * MS);
+        assertEquals(timeline.getFrameDurationNs(2), 500 * MS);
+        assertEquals(timeline.getEndTimeNs(), 660 * MS);
+        //倒放两次等于正放
+        assertEquals(timeline.reverse().getSourceIndex(0), 0);
+    }
+
+    @Test
+    public void testBounce() throws Exception {
+        FrameTimeline timeline = FrameTimeline.uniform(400, 4).bounce(false);
+
+        int[] sources = {0, 1, 2, 3, 2, 1, 0};
+        assertEquals(timeline.getFrameCount(), sources.length);
+        for (int i = 0; i < sources.length; i++) {
+            assertEquals(timeline.getSourceIndex(i), sources[i]);
+        }
+        assertEquals(timeline.getEndTimeNs(), 700 * MS);
+        assertEquals(timeline.getSourceCount(), 4);
+    }
+
+    @Test
+    public void testBounce_Loop() throws Exception {
+        FrameTimeline timeline = FrameTimeline.uniform(300, 4).bounce(true);
+
+        //循环时不包含回到的第一张
+        int[] sources = {0, 1, 2, 3, 2, 1};
+        assertEquals(timeline.getFrameCount(), sources.length);
+        for (int i = 0; i < sources.length; i++) {
+            assertEquals(timeline.getSourceIndex(i), sources[i]);
+        }
+    }
+
+    @Test
+    public void testGetFrameIndexOf() throws Exception {
+        FrameTimeline timeline = FrameTimeline.uniform(300, 4).bounce(false);
+
+        assertEquals(timeline.getFrameIndexOf(1, 0), 1);
+        assertEquals(timeline.getFrameIndexOf(1, 4), 5);
+        assertEquals(timeline.getFrameIndexOf(3, 0), 3);
+        assertEquals(timeline.getFrameIndexOf(4, 0), -1);
+    }
+
+    @Test
+    public void testSkipFrame_Hold() throws Exception {
+        FramePacer pacer = new FramePacer(FrameTimeline.ofDurations(new long[]{40, 500, 40, 40}));
+        pacer.anchor(0, 0);
+
+        //停留的帧只调度一次
+        assertEquals(pacer.nextFrame(0, 10 * MS, true), 1);
+        assertEquals(pacer.nextFrame(1, 100 * MS, true), 2);
+        assertEquals(pacer.getDeadlineNs(2), 540 * MS);
+        //按时间轴跳帧
+        assertEquals(pacer.nextFrame(1, 541 * MS, true), 3);
+        assertEquals(pacer.getSkippedCount(), 1);
+    }
+}
@@ -0,0 +1,568 @@
+package com.xiuyukeji.scheduler;
+
+import com.xiuyukeji.pictureplayerview.utils.ReadQueue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 播放流程的模拟，在虚拟时钟上运行调度线程和读取线程，不需要设备，也不用真的等待，相同的参数每次结果一样
+ * <p>
+ * 每一步的决定和播放时是同一份代码：调度线程什么时候显示、显示后下一帧是哪一帧由{@link FrameLoop}决定，
+ * 读取线程的跳转、按顺序收集、跳过来不及显示的帧和读取哪一帧由{@link ReadQueue}决定。
+ * 这里只按时间顺序安排两个线程的事件：Handler消息、ReadSignal的等待和唤醒、跳转的开始和完成，
+ * 解码线程的完成时间由{@link DecodeCostModel}给出
+ */
+public final class PlaybackSimulator {
+
+    public static final int DEFAULT_CACHE_FRAME_NUMBER = 12;
+
+    private static final long NEVER = Long.MAX_VALUE;
+
+    private final FrameTimeline mTimeline;
+
+    private int mCacheFrameNumber = DEFAULT_CACHE_FRAME_NUMBER;
+    private DecodeCostModel mDecodeCost = DecodeCostModel.fixed(0);
+    private int mDecodeThreadCount = 1;
+    private long mDrawCostNs;
+    private boolean mIsSkipFrame = true;
+    private boolean mIsSkipAware = true;
+    private double mRate = 1;
+    private long mMinIntervalNs = 16666667L;
+    private long mMaxDurationNs = 600 * 1000000000L;
+    private final List<long[]> mSeeks = new ArrayList<>();
+
+    public PlaybackSimulator(FrameTimeline timeline) {
+        this.mTimeline = timeline;
+    }
+
+    public PlaybackSimulator setCacheFrameNumber(int cacheFrameNumber) {
+        this.mCacheFrameNumber = cacheFrameNumber;
+        return this;
+    }
+
+    public PlaybackSimulator setDecodeCost(DecodeCostModel decodeCost) {
+        this.mDecodeCost = decodeCost;
+        return this;
+    }
+
+    /**
+     * 解码线程数，大于1时同时解码后面的帧，按顺序放进缓存
+     */
+    public PlaybackSimulator setDecodeThreadCount(int decodeThreadCount) {
+        this.mDecodeThreadCount = decodeThreadCount;
+        return this;
+    }
+
+    /**
+     * 调度线程画一帧的耗时
+     */
+    public PlaybackSimulator setDrawCostNs(long drawCostNs) {
+        this.mDrawCostNs = drawCostNs;
+        return this;
+    }
+
+    public PlaybackSimulator setSkipFrame(boolean isSkipFrame) {
+        this.mIsSkipFrame = isSkipFrame;
+        return this;
+    }
+
+    /**
+     * 读取线程是否按预测跳过来不及显示的帧
+     */
+    public PlaybackSimulator setSkipAware(boolean isSkipAware) {
+        this.mIsSkipAware = isSkipAware;
+        return this;
+    }
+
+    public PlaybackSimulator setPlaybackRate(double rate) {
+        this.mRate = rate;
+        return this;
+    }
+
+    /**
+     * 屏幕刷新间隔，0为不限制
+     */
+    public PlaybackSimulator setMinIntervalNs(long minIntervalNs) {
+        this.mMinIntervalNs = minIntervalNs;
+        return this;
+    }
+
+    /**
+     * 最长模拟时间，防止参数错误时一直运行
+     */
+    public PlaybackSimulator setMaxDurationNs(long maxDurationNs) {
+        this.mMaxDurationNs = maxDurationNs;
+        return this;
+    }
+
+    /**
+     * 在某个时间跳转
+     *
+     * @param timeNs     虚拟时间
+     * @param frameIndex 目标帧
+     */
+    public PlaybackSimulator addSeek(long timeNs, long frameIndex) {
+        mSeeks.add(new long[]{timeNs, frameIndex});
+        return this;
+    }
+
+    public Result run() {
+        return new Run().run();
+    }
+
+    //一次模拟的状态，事件按时间顺序执行，同一时间先跳转，再调度，最后读取
+    private final class Run {
+        private final FakeFrameClock mClock = new FakeFrameClock();
+        private final FramePacer mPacer = new FramePacer(mTimeline);
+        private final FrameLoop mLoop = new FrameLoop(mPacer);
+        private final SeekRequest mSeekRequest = new SeekRequest();
+        private final ReadQueue<SimFrame, SimJob> mQueue = new ReadQueue<>(mCacheFrameNumber * 2, new SimListener());
+        private final Result mResult = new Result();
+        private final long mEndFrame = mTimeline.getFrameCount();
+        private final int mReadAheadNumber = Math.max(2, Math.min(mCacheFrameNumber, (int) Math.ceil(mCacheFrameNumber * mRate)));
+
+        //调度线程
+        private boolean mIsStarted;
+        private boolean mIsSeeking;
+        private long mFrameIndex;
+        private long mFrameNs = NEVER;//下一个MSG_FRAME的时间
+        private long mThreadNs;//调度线程处理一个消息时自己的时间，包括补齐和画的时间
+        private long mSeekReadyNs = NEVER;
+        private long mSeekReadyFrame = -1;
+
+        //读取线程
+        private long mReaderNs;
+        private boolean mIsWaiting;//读取线程在等待信号
+        private boolean mIsSignaled;//等待前发出的信号不会丢失
+
+        private int mNextSeek;
+
+        Result run() {
+            mPacer.setMinIntervalNs(mMinIntervalNs);
+            mPacer.setRate(mRate, 0);
+            while (true) {
+                long seekNs = mNextSeek < mSeeks.size() ? mSeeks.get(mNextSeek)[0] : NEVER;
+                long nowNs = Math.min(Math.min(seekNs, mSeekReadyNs), Math.min(mFrameNs, mReaderNs));
+                if (nowNs == NEVER || nowNs > mMaxDurationNs) {
+                    break;
+                }
+                mClock.advanceTo(nowNs);
+                if (nowNs == seekNs) {
+                    seekTo(mSeeks.get(mNextSeek++)[1]);
+                } else if (nowNs == mSeekReadyNs) {
+                    onSeekReady();
+                } else if (nowNs == mFrameNs) {
+                    onFrame();
+                } else {
+                    onRead();
+                }
+            }
+            mResult.mEndNs = mClock.nanoTime();
+            mResult.mSkippedCount = mPacer.getSkippedCount();
+            mResult.mMissedCount = mPacer.getMissedCount();
+            mResult.mAvoidedDecodeCount = mQueue.getAvoidedCount();
+            mResult.mHistogram = mPacer.getLatencyHistogram();
+            return mResult;
+        }
+
+        //Scheduler.seekTo和onSeek，目标交给读取线程，调度暂停到目标准备好
+        private void seekTo(long frameIndex) {
+            if (!mIsStarted || mFrameIndex >= mEndFrame) {
+                return;
+            }
+            mSeekRequest.request(frameIndex, mClock.nanoTime());
+            mIsSeeking = true;
+            mFrameNs = NEVER;
+            mFrameIndex = frameIndex;
+            mResult.mSeekCount++;
+            mQueue.requestSeek((int) frameIndex);
+            signal();
+        }
+
+        //Scheduler.onSeekReady，从目标帧重新设置锚点继续播放
+        private void onSeekReady() {
+            long frameIndex = mSeekReadyFrame;
+            mSeekReadyNs = NEVER;
+            if (mFrameIndex != frameIndex) {
+                return;
+            }
+            long latency = mSeekRequest.complete(frameIndex, mClock.nanoTime());
+            if (latency == -1) {
+                return;
+            }
+            mResult.mSeekLatenciesNs.add(latency);
+            mIsSeeking = false;
+            mPacer.anchor(mFrameIndex, mClock.nanoTime());
+            next(mClock.nanoTime());
+        }
+
+        //Scheduler.next，按Handler的毫秒精度安排下一个MSG_FRAME
+        private void next(long nowNs) {
+            mFrameNs = nowNs + mLoop.getPostDelayMs(mFrameIndex, nowNs) * 1000000L;
+        }
+
+        //Scheduler的MSG_FRAME，调度线程补齐和画的时间由mHost推进
+        private void onFrame() {
+            if (mFrameIndex >= mEndFrame) {
+                mFrameNs = NEVER;
+                mReaderNs = NEVER;//播放结束，读取线程也结束
+                return;
+            }
+            mThreadNs = mClock.nanoTime();
+            mFrameIndex = mLoop.showFrame(mFrameIndex, true, mIsSkipFrame, mHost);
+            next(mThreadNs);
+        }
+
+        private final FrameLoop.Host mHost = new FrameLoop.Host() {
+            @Override
+            public long nanoTime() {
+                return mThreadNs;
+            }
+
+            @Override
+            public void sleepNanos(long nanos) {
+                mThreadNs += nanos;
+            }
+
+            //PicturePlayer.update
+            @Override
+            public void update(long frameIndex) {
+                SimFrame frame = mQueue.getFrame((int) frameIndex);
+                mResult.recordCacheDepth(mThreadNs, mQueue.size());
+                if (frame != null) {
+                    mQueue.displayed(frame);
+                    signal();
+                    mResult.mShownCount++;
+                } else {
+                    mResult.mDroppedCount++;
+                }
+                mThreadNs += mDrawCostNs;
+            }
+        };
+
+        //PicturePlayer.ReadTask.read，单线程解码时读取线程等到解码完成，多线程解码时分派后继续读取
+        private void onRead() {
+            long nowNs = mClock.nanoTime();
+            if (mIsWaiting) {
+                mIsWaiting = false;
+                mResult.mReaderWakeupCount++;
+            }
+            mQueue.applySeekRequest();
+            collect();
+            int seekReady = mQueue.checkSeekReady();
+            if (seekReady != -1) {
+                mSeekReadyFrame = seekReady;
+                mSeekReadyNs = nowNs;
+            }
+            if (!mIsStarted && !mQueue.isEmpty()) {//读取到第一帧后开始
+                mIsStarted = true;
+                mPacer.anchor(mFrameIndex, nowNs);
+                next(nowNs);
+            }
+            int frameIndex = mQueue.nextReadFrame(mEndFrame, mReadAheadNumber, mDecodeThreadCount, false, mSchedule);
+            if (frameIndex == -1) {
+                await();
+                return;
+            }
+            long costNs = mDecodeCost.nextCostNs(frameIndex);
+            mQueue.addJob(new SimJob(frameIndex, nowNs + costNs, costNs));
+            mResult.mDecodeCount++;
+            mQueue.advance(frameIndex, mSchedule);
+            if (mDecodeThreadCount == 1) {
+                mReaderNs = nowNs + costNs;
+            }
+        }
+
+        private void collect() {
+            try {
+                mQueue.collect();
+            } catch (Throwable e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        //ReadSignal.await，等到调度线程发出信号或者多线程解码完成一帧
+        private void await() {
+            long nowNs = mClock.nanoTime();
+            mIsWaiting = true;
+            if (mIsSignaled) {
+                mIsSignaled = false;
+                mReaderNs = nowNs;
+                return;
+            }
+            long wakeNs = NEVER;
+            if (mDecodeThreadCount > 1) {
+                for (int i = 0; i < mJobs.size(); i++) {
+                    long endNs = mJobs.get(i).mEndNs;
+                    if (endNs > nowNs) {
+                        wakeNs = Math.min(wakeNs, endNs);
+                    }
+                }
+            }
+            mReaderNs = wakeNs;
+        }
+
+        //ReadSignal.signal，读取线程在等待时马上醒来
+        private void signal() {
+            if (mIsWaiting) {
+                mReaderNs = Math.min(mReaderNs, mClock.nanoTime());
+            } else {
+                mIsSignaled = true;
+            }
+        }
+
+        //Scheduler.getNextFrame和getProjectedFrame，没有开启跳帧、还没开始或者seekTo中时不跳帧
+        private final ReadQueue.Schedule mSchedule = new ReadQueue.Schedule() {
+            @Override
+            public long getNextFrame(long frameIndex) {
+                return mPacer.getNextFrame(frameIndex);
+            }
+
+            @Override
+            public long getProjectedFrame(long leadNs) {
+                if (!mIsSkipAware) {//不预测，不跳过
+                    return 0;
+                }
+                if (!mIsSkipFrame || !mIsStarted || mIsSeeking) {
+                    return mFrameIndex;
+                }
+                return mLoop.getProjectedFrame(mFrameIndex, mClock.nanoTime(), leadNs);
+            }
+        };
+
+        //还没有完成的解码任务，多线程解码时读取线程在最早完成的时间醒来
+        private final List<SimJob> mJobs = new ArrayList<>();
+
+        private final class SimJob implements ReadQueue.Job {
+            private final int mIndex;
+            private final long mEndNs;
+            private final long mCostNs;
+            private boolean mIsCanceled;
+            private boolean mIsAbandoned;
+
+            SimJob(int index, long endNs, long costNs) {
+                this.mIndex = index;
+                this.mEndNs = endNs;
+                this.mCostNs = costNs;
+                mJobs.add(this);
+            }
+
+            @Override
+            public int getIndex() {
+                return mIndex;
+            }
+
+            @Override
+            public boolean isDone() {
+                return mClock.nanoTime() >= mEndNs;
+            }
+
+            @Override
+            public long getCostNs() {
+                return mCostNs;
+            }
+
+            @Override
+            public void cancel() {//解码不能中途取消，只是结果不再使用
+                mIsCanceled = true;
+            }
+
+            @Override
+            public void abandon() {
+                mIsAbandoned = true;
+            }
+
+            @Override
+            public boolean isCanceled() {
+                return mIsCanceled;
+            }
+
+            @Override
+            public boolean isAbandoned() {
+                return mIsAbandoned;
+            }
+        }
+
+        private final class SimListener implements ReadQueue.Listener<SimFrame, SimJob> {
+            @Override
+            public SimFrame onDecoded(SimJob job) {
+                mJobs.remove(job);
+                return new SimFrame(job.getIndex());
+            }
+
+            @Override
+            public void onDiscard(SimJob job) {
+                mJobs.remove(job);
+                mResult.mAbandonedCount++;
+            }
+
+            @Override
+            public void onSkip(SimFrame frame) {
+                signal();
+            }
+
+            @Override
+            public void onRelease(SimFrame frame) {
+            }
+        }
+    }
+
+    private static final class SimFrame implements ReadQueue.Frame {
+        private final int mIndex;
+
+        SimFrame(int index) {
+            this.mIndex = index;
+        }
+
+        @Override
+        public int getIndex() {
+            return mIndex;
+        }
+    }
+
+    /**
+     * 模拟结果
+     */
+    public static final class Result {
+        private long mShownCount;
+        private long mDroppedCount;
+        private long mSkippedCount;
+        private long mMissedCount;
+        private long mDecodeCount;
+        private long mAvoidedDecodeCount;
+        private long mAbandonedCount;
+        private long mReaderWakeupCount;
+        private long mSeekCount;
+        private long mEndNs;
+        private FrameLatencyHistogram mHistogram;
+        private final List<Long> mSeekLatenciesNs = new ArrayList<>();
+        private final List<long[]> mCacheDepths = new ArrayList<>();
+
+        private void recordCacheDepth(long nowNs, int depth) {
+            mCacheDepths.add(new long[]{nowNs, depth});
+        }
+
+        /**
+         * 按时显示的帧数
+         */
+        public long getShownCount() {
+            return mShownCount;
+        }
+
+        /**
+         * 到了显示时间但还没有解码好的帧数，这一帧画面不会更新
+         */
+        public long getDroppedCount() {
+            return mDroppedCount;
+        }
+
+        /**
+         * 调度落后被跳过的帧数
+         */
+        public long getSkippedCount() {
+            return mSkippedCount;
+        }
+
+        public long getMissedCount() {
+            return mMissedCount;
+        }
+
+        public long getDecodeCount() {
+            return mDecodeCount;
+        }
+
+        public long getAvoidedDecodeCount() {
+            return mAvoidedDecodeCount;
+        }
+
+        /**
+         * 解码完成前有了新的跳转目标而放弃的帧数
+         */
+        public long getAbandonedCount() {
+            return mAbandonedCount;
+        }
+
+        /**
+         * 读取线程从等待中醒来的次数
+         */
+        public long getReaderWakeupCount() {
+            return mReaderWakeupCount;
+        }
+
+        public long getSeekCount() {
+            return mSeekCount;
+        }
+
+        public long getEndNs() {
+            return mEndNs;
+        }
+
+        public FrameLatencyHistogram getLatencyHistogram() {
+            return mHistogram;
+        }
+
+        /**
+         * 完成的跳转的延迟，从调用到目标帧准备好，纳秒
+         */
+        public List<Long> getSeekLatenciesNs() {
+            return mSeekLatenciesNs;
+        }
+
+        public long getMaxSeekLatencyNs() {
+            long max = 0;
+            for (long latency : mSeekLatenciesNs) {
+                max = Math.max(max, latency);
+            }
+            return max;
+        }
+
+        /**
+         * 每次显示时的缓存帧数，{时间, 帧数}
+         */
+        public List<long[]> getCacheDepths() {
+            return mCacheDepths;
+        }
+
+        public int getMinCacheDepth() {
+            long min = mCacheDepths.isEmpty() ? 0 : Long.MAX_VALUE;
+            for (long[] depth : mCacheDepths) {
+                min = Math.min(min, depth[1]);
+            }
+            return (int) min;
+        }
+
+        public int getMaxCacheDepth() {
+            long max = 0;
+            for (long[] depth : mCacheDepths) {
+                max = Math.max(max, depth[1]);
+            }
+            return (int) max;
+        }
+
+        public double getMeanCacheDepth() {
+            if (mCacheDepths.isEmpty()) {
+                return 0;
+            }
+            long sum = 0;
+            for (long[] depth : mCacheDepths) {
+                sum += depth[1];
+            }
+            return (double) sum / mCacheDepths.size();
+        }
+
+        @Override
+        public String toString() {
+            return "shown: " + mShownCount
+                    + ", dropped: " + mDroppedCount
+                    + ", skipped: " + mSkippedCount
+                    + ", decodes: " + mDecodeCount
+                    + ", avoided: " + mAvoidedDecodeCount
+                    + ", abandoned: " + mAbandonedCount
+                    + ", cache: " + getMinCacheDepth() + "/" + String.format("%.1f", getMeanCacheDepth()) + "/" + getMaxCacheDepth()
+                    + ", p99: " + (mHistogram == null ? 0 : mHistogram.getP99Ms()) + "ms"
+                    + ", seeks: " + mSeekLatenciesNs.size() + "/" + mSeekCount
+                    + ", max seek latency: " + getMaxSeekLatencyNs() / 1000000L + "ms";
+        }
+    }
+}
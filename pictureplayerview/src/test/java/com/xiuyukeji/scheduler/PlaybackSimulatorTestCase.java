@@ -0,0 +1,155 @@
+package com.xiuyukeji.scheduler;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertTrue;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 在虚拟时钟上用{@link PlaybackSimulator}模拟播放，防止节拍、跳帧和跳转的改动带来卡顿
+ */
+public class PlaybackSimulatorTestCase {
+
+    private static final long MS = 1000000L;
+    private static final int FRAME_COUNT = 250;
+    private static final long PERIOD_MS = 40;//25帧每秒
+
+    private FrameTimeline createTimeline() {
+        return FrameTimeline.uniform(PERIOD_MS * FRAME_COUNT, FRAME_COUNT);
+    }
+
+    //解码比帧间隔快，每一帧都准时显示
+    @Test
+    public void testFixedCost_OnTime() throws Exception {
+        PlaybackSimulator.Result result = new PlaybackSimulator(createTimeline())
+                .setDecodeCost(DecodeCostModel.fixed(10 * MS))
+                .run();
+
+        assertEquals(result.getShownCount(), FRAME_COUNT);
+        assertEquals(result.getDroppedCount(), 0);
+        assertEquals(result.getSkippedCount(), 0);
+        assertEquals(result.getMissedCount(), 0);
+        assertEquals(result.getDecodeCount(), FRAME_COUNT);
+        assertEquals(result.getMaxCacheDepth(), PlaybackSimulator.DEFAULT_CACHE_FRAME_NUMBER);
+    }
+
+    //解码比帧间隔慢，跳过来不及显示的帧，不会越来越落后
+    @Test
+    public void testFixedCost_Overload() throws Exception {
+        PlaybackSimulator.Result result = new PlaybackSimulator(createTimeline())
+                .setDecodeCost(DecodeCostModel.fixed(55 * MS))
+                .run();
+
+        long updateCount = result.getShownCount() + result.getDroppedCount();
+        assertEquals(updateCount + result.getSkippedCount(), FRAME_COUNT);
+        assertTrue(result.getAvoidedDecodeCount() > 0);
+        assertTrue(result.getDecodeCount() < FRAME_COUNT);
+        assertTrue(result.getShownCount() >= result.getDecodeCount() * 8 / 10);//解码的帧大部分来得及显示
+        //不会因为落后而拖长播放时间
+        assertTrue(result.getEndNs() <= (PERIOD_MS * FRAME_COUNT + 120) * MS);
+    }
+
+    //画一帧比帧间隔慢，调度跳过错过的帧，显示的帧仍然落在截止时间上
+    @Test
+    public void testDrawCost_Skip() throws Exception {
+        PlaybackSimulator.Result result = new PlaybackSimulator(createTimeline())
+                .setDecodeCost(DecodeCostModel.fixed(5 * MS))
+                .setDrawCostNs(50 * MS)
+                .run();
+
+        assertTrue(result.getSkippedCount() > 0);
+        assertEquals(result.getShownCount() + result.getDroppedCount() + result.getSkippedCount(), FRAME_COUNT);
+        assertEquals(result.getMissedCount(), 0);
+    }
+
+    //读取线程只在缓存空出位置等事件时醒来，不再每毫秒轮询
+    @Test
+    public void testReaderWakeup() throws Exception {
+        PlaybackSimulator.Result result = new PlaybackSimulator(createTimeline())
+                .setDecodeCost(DecodeCostModel.fixed(10 * MS))
+                .run();
+
+        assertTrue(result.getReaderWakeupCount() <= FRAME_COUNT + 1);//每显示一帧最多醒来一次
+    }
+
+    //读取线程按预测跳帧时解码次数更少，显示的帧不会更少
+    @Test
+    public void testSkipAware() throws Exception {
+        PlaybackSimulator.Result aware = new PlaybackSimulator(createTimeline())
+                .setDecodeCost(DecodeCostModel.fixed(55 * MS))
+                .run();
+        PlaybackSimulator.Result unaware = new PlaybackSimulator(createTimeline())
+                .setDecodeCost(DecodeCostModel.fixed(55 * MS))
+                .setSkipAware(false)
+                .run();
+
+        assertTrue(aware.getShownCount() > unaware.getShownCount());
+        assertTrue(aware.getDroppedCount() <= unaware.getDroppedCount());
+    }
+
+    //单线程解码跟不上时，多个线程同时解码后面的帧，按顺序放进缓存后每一帧都能准时显示
+    @Test
+    public void testDecodeThreads() throws Exception {
+        PlaybackSimulator.Result single = new PlaybackSimulator(createTimeline())
+                .setDecodeCost(DecodeCostModel.fixed(100 * MS))
+                .run();
+        PlaybackSimulator.Result parallel = new PlaybackSimulator(createTimeline())
+                .setDecodeCost(DecodeCostModel.fixed(100 * MS))
+                .setDecodeThreadCount(4)
+                .run();
+
+        assertTrue(single.getDroppedCount() > FRAME_COUNT / 2);
+        assertEquals(parallel.getShownCount(), FRAME_COUNT);
+        assertEquals(parallel.getDecodeCount(), FRAME_COUNT);
+        assertTrue(parallel.getMaxCacheDepth() <= PlaybackSimulator.DEFAULT_CACHE_FRAME_NUMBER);
+    }
+
+    //偶尔很慢的帧由缓存吸收，缓存越大丢帧越少
+    @Test
+    public void testHeavyTailed() throws Exception {
+        PlaybackSimulator.Result large = new PlaybackSimulator(createTimeline())
+                .setDecodeCost(DecodeCostModel.heavyTailed(15 * MS, 1.5, 300 * MS, 7))
+                .run();
+        PlaybackSimulator.Result small = new PlaybackSimulator(createTimeline())
+                .setCacheFrameNumber(2)
+                .setDecodeCost(DecodeCostModel.heavyTailed(15 * MS, 1.5, 300 * MS, 7))
+                .run();
+
+        assertTrue(large.getDroppedCount() + large.getSkippedCount()
+                < small.getDroppedCount() + small.getSkippedCount());
+        assertTrue(large.getMeanCacheDepth() > small.getMeanCacheDepth());
+    }
+
+    //相同的种子每次结果一样
+    @Test
+    public void testDeterministic() throws Exception {
+        String first = new PlaybackSimulator(createTimeline())
+                .setDecodeCost(DecodeCostModel.uniform(20 * MS, 70 * MS, 3))
+                .addSeek(3000 * MS, 200)
+                .run().toString();
+        String second = new PlaybackSimulator(createTimeline())
+                .setDecodeCost(DecodeCostModel.uniform(20 * MS, 70 * MS, 3))
+                .addSeek(3000 * MS, 200)
+                .run().toString();
+
+        assertEquals(first, second);
+    }
+
+    //拖动进度条，连续跳转只完成最后一个，延迟不超过两次解码
+    @Test
+    public void testSeekLatency() throws Exception {
+        long decodeNs = 25 * MS;
+        PlaybackSimulator simulator = new PlaybackSimulator(createTimeline())
+                .setDecodeCost(DecodeCostModel.fixed(decodeNs));
+        for (int i = 0; i < 50; i++) {
+            simulator.addSeek(2000 * MS + i * 5 * MS, 20 + i * 3);
+        }
+        simulator.addSeek(5000 * MS, 10);
+        PlaybackSimulator.Result result = simulator.run();
+
+        assertEquals(result.getSeekCount(), 51);
+        assertTrue(result.getSeekLatenciesNs().size() < 51);//连续的跳转被合并
+        assertTrue(result.getMaxSeekLatencyNs() <= decodeNs * 2);
+        assertTrue(result.getAbandonedCount() > 0);
+    }
+}
@@ -0,0 +1,254 @@
+package com.xiuyukeji.scheduler;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 测试SchedulerState
+ */
+public class SchedulerStateTestCase {
+
+    private static final int THREAD_COUNT = 8;
+    private static final int LOOP_COUNT = 20000;
+
+    @Test
+    public void testStart() throws Exception {
+        SchedulerState state = new SchedulerState();
+
+        assertFalse(state.pause());
+        assertTrue(state.start());
+        assertFalse(state.start());
+        assertFalse(state.pause());//还没有准备好
+        assertTrue(state.run());
+        assertTrue(state.pause());
+    }
+
+    @Test
+    public void testPauseResume() throws Exception {
+        SchedulerState state = getRunningState();
+
+        assertEquals(state.resume(), SchedulerState.RESUME_FAILED);
+        assertTrue(state.pause());
+        assertFalse(state.pause());
+        assertEquals(state.resume(), SchedulerState.RESUME_DONE);
+        assertFalse(state.is(SchedulerState.PAUSED));
+    }
+
+    @Test
+    public void testSeek() throws Exception {
+        SchedulerState state = getRunningState();
+
+        assertTrue(state.seek());
+        assertFalse(state.seek());
+        assertTrue(state.is(SchedulerState.PAUSED));
+
+        state.seekComplete();
+        assertTrue(state.resumeAfterSeek());
+        assertFalse(state.is(SchedulerState.PAUSED));
+    }
+
+    @Test
+    public void testPauseWhileSeek() throws Exception {
+        SchedulerState state = getRunningState();
+
+        assertTrue(state.seek());
+        assertTrue(state.pause());//取消seekTo完成后的恢复
+        assertFalse(state.pause());
+
+        state.seekComplete();
+        assertFalse(state.resumeAfterSeek());
+        assertTrue(state.is(SchedulerState.PAUSED));
+    }
+
+    @Test
+    public void testResumeWhileSeek() throws Exception {
+        SchedulerState state = getRunningState();
+
+        assertTrue(state.pause());
+        assertTrue(state.seek());
+        assertEquals(state.resume(), SchedulerState.RESUME_DEFERRED);
+        assertTrue(state.is(SchedulerState.PAUSED));
+
+        state.seekComplete();
+        assertTrue(state.resumeAfterSeek());
+        assertFalse(state.is(SchedulerState.PAUSED));
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        SchedulerState state = new SchedulerState();
+        state.start();
+
+        int old = state.cancel();
+        assertFalse(SchedulerState.is(old, SchedulerState.RUNNING));
+        assertFalse(state.run());//准备好之前被取消
+
+        try {
+            state.cancel();
+            assertTrue(false);
+        } catch (RuntimeException e) {
+            assertTrue(state.is(SchedulerState.CANCELED));
+        }
+    }
+
+    @Test
+    public void testQuit() throws Exception {
+        SchedulerState state = getRunningState();
+
+        state.quit();
+
+        assertFalse(state.is(SchedulerState.RUNNING));
+        assertFalse(state.pause());
+        assertTrue(SchedulerState.is(state.cancel(), SchedulerState.QUIT));
+        assertFalse(state.is(SchedulerState.CANCELED));
+    }
+
+    @Test
+    public void testEndRestart() throws Exception {
+        SchedulerState state = getRunningState();
+
+        assertFalse(state.restart());//还没有结束
+        assertTrue(state.pause());
+        assertTrue(state.end());
+        assertEquals(state.get(), SchedulerState.STARTED | SchedulerState.ENDED);
+        assertFalse(state.pause());
+
+        assertTrue(state.restart());
+        assertFalse(state.restart());
+        assertTrue(state.is(SchedulerState.RUNNING));
+        assertTrue(state.pause());
+
+        assertTrue(state.end());
+        int old = state.cancel();//结束后取消，需要结束线程
+        assertTrue(SchedulerState.is(old, SchedulerState.ENDED));
+        assertFalse(state.restart());
+        assertFalse(state.end());
+    }
+
+    //每次成功的暂停都必须对应一次成功的恢复，最后的状态由两者的差决定
+    @Test
+    public void testConcurrentPauseResume() throws Exception {
+        final SchedulerState state = getRunningState();
+        final AtomicInteger pauseCount = new AtomicInteger();
+        final AtomicInteger resumeCount = new AtomicInteger();
+
+        runConcurrently(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < LOOP_COUNT; i++) {
+                    if (state.pause()) {
+                        pauseCount.incrementAndGet();
+                    }
+                    if (state.resume() == SchedulerState.RESUME_DONE) {
+                        resumeCount.incrementAndGet();
+                    }
+                }
+            }
+        });
+
+        int paused = state.is(SchedulerState.PAUSED) ? 1 : 0;
+        assertEquals(pauseCount.get() - resumeCount.get(), paused);
+        assertTrue(pauseCount.get() > 0);
+    }
+
+    //seekTo和暂停恢复同时进行，seekTo完成后不会丢失最后一次暂停或恢复
+    @Test
+    public void testConcurrentSeek() throws Exception {
+        final SchedulerState state = getRunningState();
+        final AtomicInteger seekCount = new AtomicInteger();
+
+        runConcurrently(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < LOOP_COUNT; i++) {
+                    if (state.seek()) {
+                        seekCount.incrementAndGet();
+                        state.seekComplete();
+                        state.resumeAfterSeek();
+                    }
+                    if (i % 2 == 0) {
+                        state.pause();
+                    } else {
+                        state.resume();
+                    }
+                }
+            }
+        });
+
+        assertFalse(state.is(SchedulerState.SEEKING));
+        assertTrue(seekCount.get() > 0);
+
+        //最后的操作没有被seekTo吞掉，再次暂停恢复结果一致
+        boolean isPaused = state.is(SchedulerState.PAUSED);
+        assertEquals(state.pause(), !isPaused);
+        assertEquals(state.resume(), SchedulerState.RESUME_DONE);
+    }
+
+    //只有一个线程能取消，取消后其他调用全部失败
+    @Test
+    public void testConcurrentCancel() throws Exception {
+        final SchedulerState state = getRunningState();
+        final AtomicInteger cancelCount = new AtomicInteger();
+        final AtomicInteger lateCount = new AtomicInteger();
+
+        runConcurrently(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < LOOP_COUNT; i++) {
+                    boolean isCanceled = state.is(SchedulerState.CANCELED);
+                    boolean isChanged = state.pause() | state.resume() != SchedulerState.RESUME_FAILED;
+                    if (isCanceled && isChanged) {
+                        lateCount.incrementAndGet();
+                    }
+                    if (i == LOOP_COUNT / 2) {
+                        try {
+                            state.cancel();
+                            cancelCount.incrementAndGet();
+                        } catch (RuntimeException ignored) {
+                        }
+                    }
+                }
+            }
+        });
+
+        assertEquals(cancelCount.get(), 1);
+        assertEquals(lateCount.get(), 0);
+    }
+
+    private SchedulerState getRunningState() {
+        SchedulerState state = new SchedulerState();
+        state.start();
+        state.run();
+        return state;
+    }
+
+    private void runConcurrently(final Runnable runnable) throws Exception {
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        final CountDownLatch endLatch = new CountDownLatch(THREAD_COUNT);
+        final AtomicInteger errorCount = new AtomicInteger();
+        for (int i = 0; i < THREAD_COUNT; i++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        startLatch.await();
+                        runnable.run();
+                    } catch (Throwable e) {
+                        e.printStackTrace();
+                        errorCount.incrementAndGet();
+                    }
+                    endLatch.countDown();
+                }
+            }.start();
+        }
+        startLatch.countDown();
+        endLatch.await();
+        assertEquals(errorCount.get(), 0);
+    }
+}
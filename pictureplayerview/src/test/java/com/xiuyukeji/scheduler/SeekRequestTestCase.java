@@ -0,0 +1,94 @@
+package com.xiuyukeji.scheduler;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 测试SeekRequest
+ */
+public class SeekRequestTestCase {
+
+    private static final long MS = 1000000L;
+
+    @Test
+    public void testComplete() throws Exception {
+        SeekRequest request = new SeekRequest();
+
+        assertEquals(request.getTarget(), -1);
+        assertFalse(request.isCurrent(-1));
+
+        request.request(10, 0);
+        request.request(20, 5 * MS);//覆盖
+
+        assertFalse(request.isCurrent(10));
+        assertEquals(request.complete(10, 8 * MS), -1);
+        assertEquals(request.complete(20, 8 * MS), 3 * MS);//从最后一次请求开始计算
+        assertEquals(request.getTarget(), -1);
+        assertEquals(request.complete(20, 9 * MS), -1);
+    }
+
+    @Test
+    public void testClear() throws Exception {
+        SeekRequest request = new SeekRequest();
+
+        request.request(10, 0);
+        request.clear();
+
+        assertFalse(request.isCurrent(10));
+    }
+
+    //拖动进度条，2毫秒一次连续跳转100次，解码一帧10毫秒且不能中途取消
+    //这里只测试请求的合并和延迟，解码由测试模拟，读取线程真正的跳转和放弃在ReadQueueTestCase.testBurst里测试
+    @Test
+    public void testBurst() throws Exception {
+        SeekRequest request = new SeekRequest();
+        int seekCount = 100;
+        long seekIntervalNs = 2 * MS;
+        long decodeNs = 10 * MS;
+
+        long nowNs = 0;
+        int nextSeek = 0;
+        int decodeCount = 0;
+        int completeCount = 0;
+        long latencyNs = -1;
+        long decodingTarget = -1;
+        long decodeEndNs = 0;
+        while (nextSeek < seekCount || request.getTarget() != -1) {
+            long seekNs = nextSeek < seekCount ? nextSeek * seekIntervalNs : Long.MAX_VALUE;
+            if (decodingTarget == -1) {//读取线程空闲，开始解码最新的目标
+                long target = request.getTarget();
+                if (target != -1) {
+                    decodingTarget = target;
+                    decodeEndNs = nowNs + decodeNs;
+                    decodeCount++;
+                    continue;
+                }
+                nowNs = seekNs;
+            } else if (seekNs < decodeEndNs) {
+                nowNs = seekNs;
+            } else {
+                nowNs = decodeEndNs;
+                long latency = request.complete(decodingTarget, nowNs);//被覆盖的目标解码完成后放弃
+                if (latency != -1) {
+                    latencyNs = latency;
+                    completeCount++;
+                }
+                decodingTarget = -1;
+                continue;
+            }
+            request.request(nextSeek * 7 % 250, nowNs);
+            nextSeek++;
+        }
+
+        //每次解码期间的请求都被合并，解码次数由解码时间决定而不是请求次数
+        assertTrue(decodeCount <= seekCount * seekIntervalNs / decodeNs + 2);
+        //连续请求期间被覆盖的目标都不会完成，只有最后一个目标完成
+        assertEquals(completeCount, 1);
+        //最后一个目标最多等待正在解码的一帧再解码自己
+        assertTrue(latencyNs > 0 && latencyNs <= decodeNs * 2);
+        assertEquals(request.getTarget(), -1);
+    }
+}
@@ -0,0 +1,46 @@
+package com.xiuyukeji.pictureplayerview.tools;
+
+import com.xiuyukeji.pictureplayerview.utils.DeltaEncoder;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 用{@link DeltaEncoder}把PNG序列编码成差量帧文件：
+ * <pre>
+ * java -cp tools.jar com.xiuyukeji.pictureplayerview.tools.DeltaEncoderTool [-t 图块大小] [-k 关键帧间隔] 输出文件 图片文件夹
+ * </pre>
+ * 文件夹里的PNG按名称排序
+ */
+public class DeltaEncoderTool {
+
+    private DeltaEncoderTool() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        int tileSize = DeltaEncoder.DEFAULT_TILE_SIZE;
+        int keyframeInterval = DeltaEncoder.DEFAULT_KEYFRAME_INTERVAL;
+        int index = 0;
+        while (index + 1 < args.length && args[index].startsWith("-")) {
+            if (args[index].equals("-t")) {
+                tileSize = Integer.parseInt(args[index + 1]);
+            } else if (args[index].equals("-k")) {
+                keyframeInterval = Integer.parseInt(args[index + 1]);
+            } else {
+                break;
+            }
+            index += 2;
+        }
+        if (args.length - index < 2) {
+            System.out.println("usage: DeltaEncoderTool [-t tileSize] [-k keyframeInterval] <output> <directory | image...>");
+            return;
+        }
+        File output = new File(args[index]);
+        File[] frames = FrameFiles.list(args, index + 1);
+        DeltaEncoder encoder = DeltaEncoder.encode(frames, tileSize, keyframeInterval);
+        encoder.write(output);
+        System.out.println("encoded " + frames.length + " frames into " + output + ", " + output.length()
+                + " bytes, " + encoder.getTilePixelCount() * 100 / ((long) frames.length * encoder.getWidth() * encoder.getHeight())
+                + "% pixels stored");
+    }
+}
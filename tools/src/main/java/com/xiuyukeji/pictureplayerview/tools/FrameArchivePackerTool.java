@@ -0,0 +1,30 @@
+package com.xiuyukeji.pictureplayerview.tools;
+
+import com.xiuyukeji.pictureplayerview.utils.FrameArchivePacker;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 用{@link FrameArchivePacker}打包图片序列：
+ * <pre>
+ * java -cp tools.jar com.xiuyukeji.pictureplayerview.tools.FrameArchivePackerTool 输出文件 图片文件夹
+ * </pre>
+ * 文件夹里的图片按名称排序
+ */
+public class FrameArchivePackerTool {
+
+    private FrameArchivePackerTool() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("usage: FrameArchivePackerTool <output> <directory | image...>");
+            return;
+        }
+        File[] frames = FrameFiles.list(args, 1);
+        File output = new File(args[0]);
+        FrameArchivePacker.pack(frames, output);
+        System.out.println("packed " + frames.length + " frames into " + output + ", " + output.length() + " bytes");
+    }
+}
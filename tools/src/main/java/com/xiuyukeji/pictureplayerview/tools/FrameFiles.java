@@ -0,0 +1,37 @@
+package com.xiuyukeji.pictureplayerview.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * 命令行参数里的图片
+ */
+final class FrameFiles {
+
+    private FrameFiles() {
+    }
+
+    /**
+     * 只有一个参数并且是文件夹时返回文件夹里按名称排序的文件，否则按参数顺序返回
+     *
+     * @param args  命令行参数
+     * @param start 第一张图片的位置
+     */
+    static File[] list(String[] args, int start) throws IOException {
+        File directory = new File(args[start]);
+        if (args.length - start == 1 && directory.isDirectory()) {
+            File[] frames = directory.listFiles();
+            if (frames == null) {
+                throw new IOException("can not list " + directory);
+            }
+            Arrays.sort(frames);
+            return frames;
+        }
+        File[] frames = new File[args.length - start];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = new File(args[start + i]);
+        }
+        return frames;
+    }
+}
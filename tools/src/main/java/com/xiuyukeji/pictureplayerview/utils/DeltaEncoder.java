@@ -0,0 +1,234 @@
+package com.xiuyukeji.pictureplayerview.utils;
+
+import android.support.annotation.NonNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * 生成{@link DeltaArchive}，只用到JDK，在电脑上运行，不打进库里，命令行见{@link com.xiuyukeji.pictureplayerview.tools.DeltaEncoderTool}
+ * <p>
+ * 所有图片必须一样大
+ */
+public class DeltaEncoder {
+
+    public static final int DEFAULT_TILE_SIZE = 32;
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 30;
+
+    private final int mWidth;
+    private final int mHeight;
+    private final int mTileSize;
+    private final int mKeyframeInterval;
+
+    private final List<byte[]> mFrames = new ArrayList<>();
+    private final List<int[]> mEntries = new ArrayList<>();//{标志, 左, 上, 右, 下}
+    private int[] mPrevious;
+    private long mTilePixelCount;
+
+    /**
+     * 构造函数
+     *
+     * @param width            宽
+     * @param height           高
+     * @param tileSize         图块大小，越小保存的像素越少，但是图块数量越多
+     * @param keyframeInterval 关键帧间隔，跳转时最多需要画这么多帧
+     */
+    public DeltaEncoder(int width, int height, int tileSize, int keyframeInterval) {
+        if (width <= 0 || height <= 0 || tileSize <= 0 || keyframeInterval <= 0) {
+            throw new RuntimeException("size, tileSize and keyframeInterval must be greater than 0");
+        }
+        this.mWidth = width;
+        this.mHeight = height;
+        this.mTileSize = tileSize;
+        this.mKeyframeInterval = keyframeInterval;
+    }
+
+    /**
+     * 编码PNG序列
+     *
+     * @param frames 按播放顺序排列的PNG
+     */
+    public static DeltaEncoder encode(@NonNull File[] frames, int tileSize, int keyframeInterval) throws IOException {
+        DeltaEncoder encoder = null;
+        int[] size = new int[2];
+        for (File frame : frames) {
+            InputStream is = new BufferedInputStream(new FileInputStream(frame));
+            int[] pixels;
+            try {
+                pixels = PngDecoder.decode(is, size);
+            } finally {
+                is.close();
+            }
+            if (encoder == null) {
+                encoder = new DeltaEncoder(size[0], size[1], tileSize, keyframeInterval);
+            } else if (size[0] != encoder.mWidth || size[1] != encoder.mHeight) {
+                throw new IOException("all frames must have the same size: " + frame);
+            }
+            encoder.addFrame(pixels);
+        }
+        if (encoder == null) {
+            throw new IOException("no frames to encode");
+        }
+        return encoder;
+    }
+
+    /**
+     * 添加一帧
+     *
+     * @param pixels 按行排列的ARGB像素
+     */
+    public void addFrame(@NonNull int[] pixels) throws IOException {
+        if (pixels.length != mWidth * mHeight) {
+            throw new IOException("frame must have " + mWidth * mHeight + " pixels");
+        }
+        boolean isKeyframe = mFrames.size() % mKeyframeInterval == 0;
+        List<int[]> tiles = isKeyframe ? wholeFrame() : findChangedTiles(pixels);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        DataOutputStream os = new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(bytes, deflater)));
+        os.writeInt(tiles.size());
+        int[] dirty = {mWidth, mHeight, 0, 0};
+        for (int[] tile : tiles) {
+            for (int value : tile) {
+                os.writeInt(value);
+            }
+            dirty[0] = Math.min(dirty[0], tile[0]);
+            dirty[1] = Math.min(dirty[1], tile[1]);
+            dirty[2] = Math.max(dirty[2], tile[0] + tile[2]);
+            dirty[3] = Math.max(dirty[3], tile[1] + tile[3]);
+        }
+        for (int[] tile : tiles) {
+            for (int y = tile[1]; y < tile[1] + tile[3]; y++) {
+                for (int x = tile[0]; x < tile[0] + tile[2]; x++) {
+                    os.writeInt(pixels[y * mWidth + x]);
+                }
+            }
+            mTilePixelCount += tile[2] * tile[3];
+        }
+        os.close();
+        deflater.end();
+        if (tiles.isEmpty()) {
+            dirty = new int[]{0, 0, 0, 0};
+        }
+
+        mFrames.add(bytes.toByteArray());
+        mEntries.add(new int[]{isKeyframe ? DeltaArchive.FLAG_KEYFRAME : 0, dirty[0], dirty[1], dirty[2], dirty[3]});
+        mPrevious = pixels.clone();
+    }
+
+    private List<int[]> wholeFrame() {
+        List<int[]> tiles = new ArrayList<>();
+        tiles.add(new int[]{0, 0, mWidth, mHeight});
+        return tiles;
+    }
+
+    //同一行相邻的改变的图块合成一个，减少图块数量
+    private List<int[]> findChangedTiles(int[] pixels) {
+        List<int[]> tiles = new ArrayList<>();
+        for (int top = 0; top < mHeight; top += mTileSize) {
+            int height = Math.min(mTileSize, mHeight - top);
+            int runLeft = -1;
+            for (int left = 0; left < mWidth; left += mTileSize) {
+                boolean isChanged = isChanged(pixels, left, top, Math.min(mTileSize, mWidth - left), height);
+                if (isChanged && runLeft == -1) {
+                    runLeft = left;
+                } else if (!isChanged && runLeft != -1) {
+                    tiles.add(new int[]{runLeft, top, left - runLeft, height});
+                    runLeft = -1;
+                }
+            }
+            if (runLeft != -1) {
+                tiles.add(new int[]{runLeft, top, mWidth - runLeft, height});
+            }
+        }
+        return tiles;
+    }
+
+    private boolean isChanged(int[] pixels, int left, int top, int width, int height) {
+        for (int y = top; y < top + height; y++) {
+            int offset = y * mWidth;
+            for (int x = left; x < left + width; x++) {
+                if (pixels[offset + x] != mPrevious[offset + x]) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * 返回保存的像素数，包括关键帧
+     */
+    public long getTilePixelCount() {
+        return mTilePixelCount;
+    }
+
+    /**
+     * 写入文件
+     */
+    public void write(@NonNull File output) throws IOException {
+        OutputStream os = new BufferedOutputStream(new FileOutputStream(output));
+        try {
+            write(os);
+        } finally {
+            os.close();
+        }
+    }
+
+    /**
+     * 写入
+     *
+     * @param os 输出，不会关闭
+     */
+    public void write(@NonNull OutputStream os) throws IOException {
+        int count = mFrames.size();
+        if (count == 0) {
+            throw new IOException("no frames to encode");
+        }
+        ByteBuffer header = ByteBuffer.allocate(DeltaArchive.HEADER_SIZE + count * DeltaArchive.ENTRY_SIZE);
+        header.putInt(DeltaArchive.MAGIC);
+        header.putInt(DeltaArchive.VERSION);
+        header.putInt(count);
+        header.putInt(mWidth);
+        header.putInt(mHeight);
+        header.putInt(mTileSize);
+        header.putInt(mKeyframeInterval);
+        header.putInt(0);
+        long offset = header.capacity();
+        for (int i = 0; i < count; i++) {
+            header.putLong(offset);
+            header.putInt(mFrames.get(i).length);
+            for (int value : mEntries.get(i)) {
+                header.putInt(value);
+            }
+            offset += mFrames.get(i).length;
+        }
+        os.write(header.array());
+        for (byte[] frame : mFrames) {
+            os.write(frame);
+        }
+        os.flush();
+    }
+}
@@ -0,0 +1,208 @@
+package com.xiuyukeji.pictureplayerview.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * 只用JDK解码PNG，给电脑上运行的{@link DeltaEncoder}使用，只支持8位深度、不隔行扫描的图片
+ */
+final class PngDecoder {
+
+    private static final long SIGNATURE = 0x89504E470D0A1A0AL;
+
+    private PngDecoder() {
+    }
+
+    /**
+     * 解码
+     *
+     * @param is   图片流
+     * @param size 返回{宽, 高}
+     * @return 按行排列的ARGB像素
+     */
+    static int[] decode(InputStream is, int[] size) throws IOException {
+        DataInputStream data = new DataInputStream(is);
+        if (data.readLong() != SIGNATURE) {
+            throw new IOException("not a png");
+        }
+        int width = 0, height = 0, colorType = -1;
+        int[] palette = new int[0];
+        int[] transparent = null;//非调色板图片的透明色
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        while (true) {
+            int length = data.readInt();
+            byte[] type = new byte[4];
+            data.readFully(type);
+            byte[] chunk = new byte[length];
+            data.readFully(chunk);
+            data.readInt();//不检查CRC
+            String name = new String(type, "US-ASCII");
+            if (name.equals("IHDR")) {
+                width = readInt(chunk, 0);
+                height = readInt(chunk, 4);
+                colorType = chunk[9];
+                if (chunk[8] != 8 || chunk[12] != 0) {
+                    throw new IOException("only 8-bit non-interlaced png is supported");
+                }
+            } else if (name.equals("PLTE")) {
+                palette = new int[length / 3];
+                for (int i = 0; i < palette.length; i++) {
+                    palette[i] = 0xFF000000 | (chunk[i * 3] & 0xFF) << 16
+                            | (chunk[i * 3 + 1] & 0xFF) << 8 | (chunk[i * 3 + 2] & 0xFF);
+                }
+            } else if (name.equals("tRNS")) {
+                if (colorType == 3) {
+                    for (int i = 0; i < length && i < palette.length; i++) {
+                        palette[i] = (palette[i] & 0xFFFFFF) | (chunk[i] & 0xFF) << 24;
+                    }
+                } else {
+                    transparent = new int[length / 2];
+                    for (int i = 0; i < transparent.length; i++) {
+                        transparent[i] = (chunk[i * 2] & 0xFF) << 8 | (chunk[i * 2 + 1] & 0xFF);
+                    }
+                }
+            } else if (name.equals("IDAT")) {
+                compressed.write(chunk);
+            } else if (name.equals("IEND")) {
+                break;
+            }
+        }
+        int channels = getChannels(colorType);
+        byte[] raw = inflate(compressed.toByteArray(), (width * channels + 1) * height);
+        size[0] = width;
+        size[1] = height;
+        return toArgb(unfilter(raw, width, height, channels), width, height, colorType, palette, transparent);
+    }
+
+    private static int getChannels(int colorType) throws IOException {
+        switch (colorType) {
+            case 0://灰度
+            case 3://调色板
+                return 1;
+            case 4://灰度和透明
+                return 2;
+            case 2://真彩色
+                return 3;
+            case 6://真彩色和透明
+                return 4;
+            default:
+                throw new IOException("unsupported png color type " + colorType);
+        }
+    }
+
+    private static byte[] inflate(byte[] compressed, int length) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] raw = new byte[length];
+            int offset = 0;
+            while (offset < length && !inflater.finished()) {
+                int count = inflater.inflate(raw, offset, length - offset);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                offset += count;
+            }
+            if (offset != length) {
+                throw new IOException("png data is truncated");
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    //每行第一个字节是过滤方式，还原后去掉
+    private static byte[] unfilter(byte[] raw, int width, int height, int channels) throws IOException {
+        int stride = width * channels;
+        byte[] pixels = new byte[stride * height];
+        for (int y = 0; y < height; y++) {
+            int filter = raw[y * (stride + 1)];
+            int in = y * (stride + 1) + 1;
+            int out = y * stride;
+            for (int x = 0; x < stride; x++) {
+                int a = x >= channels ? pixels[out + x - channels] & 0xFF : 0;
+                int b = y > 0 ? pixels[out + x - stride] & 0xFF : 0;
+                int c = x >= channels && y > 0 ? pixels[out + x - stride - channels] & 0xFF : 0;
+                int value = raw[in + x] & 0xFF;
+                switch (filter) {
+                    case 0:
+                        break;
+                    case 1:
+                        value += a;
+                        break;
+                    case 2:
+                        value += b;
+                        break;
+                    case 3:
+                        value += (a + b) / 2;
+                        break;
+                    case 4:
+                        value += paeth(a, b, c);
+                        break;
+                    default:
+                        throw new IOException("invalid png filter " + filter);
+                }
+                pixels[out + x] = (byte) value;
+            }
+        }
+        return pixels;
+    }
+
+    private static int paeth(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a), pb = Math.abs(p - b), pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc) {
+            return a;
+        }
+        return pb <= pc ? b : c;
+    }
+
+    private static int[] toArgb(byte[] pixels, int width, int height, int colorType, int[] palette, int[] transparent) {
+        int[] argb = new int[width * height];
+        int channels = pixels.length / argb.length;
+        for (int i = 0; i < argb.length; i++) {
+            int p = i * channels;
+            int r, g, b, a = 0xFF;
+            switch (colorType) {
+                case 3:
+                    int index = pixels[p] & 0xFF;
+                    argb[i] = index < palette.length ? palette[index] : 0;
+                    continue;
+                case 0:
+                case 4:
+                    r = g = b = pixels[p] & 0xFF;
+                    if (colorType == 4) {
+                        a = pixels[p + 1] & 0xFF;
+                    } else if (transparent != null && transparent.length >= 1 && transparent[0] == r) {
+                        a = 0;
+                    }
+                    break;
+                default:
+                    r = pixels[p] & 0xFF;
+                    g = pixels[p + 1] & 0xFF;
+                    b = pixels[p + 2] & 0xFF;
+                    if (colorType == 6) {
+                        a = pixels[p + 3] & 0xFF;
+                    } else if (transparent != null && transparent.length >= 3
+                            && transparent[0] == r && transparent[1] == g && transparent[2] == b) {
+                        a = 0;
+                    }
+                    break;
+            }
+            argb[i] = a << 24 | r << 16 | g << 8 | b;
+        }
+        return argb;
+    }
+
+    private static int readInt(byte[] buffer, int offset) {
+        return (buffer[offset] & 0xFF) << 24 | (buffer[offset + 1] & 0xFF) << 16
+                | (buffer[offset + 2] & 0xFF) << 8 | (buffer[offset + 3] & 0xFF);
+    }
+}
@@ -0,0 +1,202 @@
+package com.xiuyukeji.pictureplayerview;
+
+import com.xiuyukeji.pictureplayerview.utils.DeltaArchive;
+import com.xiuyukeji.pictureplayerview.utils.DeltaEncoder;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.DeflaterOutputStream;
+
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 测试DeltaEncoder和DeltaArchive
+ */
+public class DeltaArchiveTestCase {
+
+    private static final int WIDTH = 200, HEIGHT = 120;
+    private static final int TILE_SIZE = 16;
+    private static final int FRAME_COUNT = 24;
+    private static final int KEYFRAME_INTERVAL = 10;
+    private static final int BOX_SIZE = 20;
+
+    //按顺序把图块画到上一帧上，每一帧都和原图一样
+    @Test
+    public void testReplay() throws Exception {
+        int[][] frames = createFrames();
+        DeltaArchive archive = encode(frames);
+
+        assertEquals(archive.getFrameCount(), FRAME_COUNT);
+        assertEquals(archive.getWidth(), WIDTH);
+        int[] canvas = new int[WIDTH * HEIGHT];
+        for (int i = 0; i < FRAME_COUNT; i++) {
+            archive.readFrame(i).apply(canvas, WIDTH);
+            assertArrayEquals(canvas, frames[i]);
+        }
+    }
+
+    //跳转时从前面的关键帧开始画
+    @Test
+    public void testKeyframe() throws Exception {
+        int[][] frames = createFrames();
+        DeltaArchive archive = encode(frames);
+
+        assertTrue(archive.isKeyframe(0));
+        assertTrue(archive.isKeyframe(KEYFRAME_INTERVAL));
+        assertFalse(archive.isKeyframe(KEYFRAME_INTERVAL + 1));
+        assertEquals(archive.getKeyframe(KEYFRAME_INTERVAL * 2 - 1), KEYFRAME_INTERVAL);
+
+        int target = KEYFRAME_INTERVAL + 5;
+        int[] canvas = new int[WIDTH * HEIGHT];
+        for (int i = archive.getKeyframe(target); i <= target; i++) {
+            archive.readFrame(i).apply(canvas, WIDTH);
+        }
+        assertArrayEquals(canvas, frames[target]);
+    }
+
+    //只有方块移动的区域改变，保存的像素和改变的区域成比例
+    @Test
+    public void testDirty() throws Exception {
+        DeltaArchive archive = encode(createFrames());
+
+        int[] dirty = new int[4];
+        archive.getDirty(0, dirty);
+        assertArrayEquals(dirty, new int[]{0, 0, WIDTH, HEIGHT});
+
+        archive.getDirty(1, dirty);//没有改变
+        assertEquals(dirty[0], dirty[2]);
+        assertEquals(archive.readFrame(1).getTileCount(), 0);
+
+        DeltaArchive.Frame frame = archive.readFrame(2);
+        archive.getDirty(2, dirty);
+        int dirtyArea = (dirty[2] - dirty[0]) * (dirty[3] - dirty[1]);
+        assertTrue(dirtyArea > 0);
+        assertTrue(dirtyArea <= (BOX_SIZE + TILE_SIZE * 2) * (BOX_SIZE + TILE_SIZE * 2));
+        assertTrue(frame.getPixels().length <= dirtyArea);
+        assertTrue(archive.getFrameLength(2) < archive.getFrameLength(0));
+    }
+
+    @Test
+    public void testEncodePng() throws Exception {
+        int[][] frames = createFrames();
+        File[] files = new File[3];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = File.createTempFile("delta" + i, ".png");
+            files[i].deleteOnExit();
+            FileOutputStream os = new FileOutputStream(files[i]);
+            os.write(createPng(frames[i]));
+            os.close();
+        }
+
+        DeltaEncoder encoder = DeltaEncoder.encode(files, TILE_SIZE, KEYFRAME_INTERVAL);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        encoder.write(os);
+        DeltaArchive archive = DeltaArchive.wrap(ByteBuffer.wrap(os.toByteArray()));
+
+        int[] canvas = new int[WIDTH * HEIGHT];
+        for (int i = 0; i < files.length; i++) {
+            archive.readFrame(i).apply(canvas, WIDTH);
+            assertArrayEquals(canvas, frames[i]);
+        }
+        assertTrue(encoder.getTilePixelCount() < WIDTH * HEIGHT * 2);
+    }
+
+    @Test
+    public void testInvalid() throws Exception {
+        assertFalse(DeltaArchive.isDeltaArchive(ByteBuffer.wrap(new byte[64])));
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        DeltaEncoder encoder = new DeltaEncoder(WIDTH, HEIGHT, TILE_SIZE, KEYFRAME_INTERVAL);
+        encoder.addFrame(new int[WIDTH * HEIGHT]);
+        encoder.write(os);
+        byte[] data = os.toByteArray();
+        try {
+            DeltaArchive.wrap(ByteBuffer.wrap(data, 0, data.length - 1).slice());
+            assertTrue(false);
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("truncated"));
+        }
+    }
+
+    private DeltaArchive encode(int[][] frames) throws IOException {
+        DeltaEncoder encoder = new DeltaEncoder(WIDTH, HEIGHT, TILE_SIZE, KEYFRAME_INTERVAL);
+        for (int[] frame : frames) {
+            encoder.addFrame(frame);
+        }
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        encoder.write(os);
+        return DeltaArchive.wrap(ByteBuffer.wrap(os.toByteArray()));
+    }
+
+    //半透明的背景上一个方块每两帧移动一次
+    private int[][] createFrames() {
+        int[][] frames = new int[FRAME_COUNT][WIDTH * HEIGHT];
+        for (int i = 0; i < FRAME_COUNT; i++) {
+            int box = i / 2 * 7;
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < WIDTH; x++) {
+                    boolean isBox = x >= box && x < box + BOX_SIZE && y >= 30 && y < 30 + BOX_SIZE;
+                    frames[i][y * WIDTH + x] = isBox ? 0xFFFF0000 : 0x80000000 | (x * 255 / WIDTH) << 8 | y;
+                }
+            }
+        }
+        return frames;
+    }
+
+    //RGBA的PNG，每行用不同的过滤方式
+    private byte[] createPng(int[] pixels) throws IOException {
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        byte[] previous = new byte[WIDTH * 4];
+        for (int y = 0; y < HEIGHT; y++) {
+            byte[] row = new byte[WIDTH * 4];
+            for (int x = 0; x < WIDTH; x++) {
+                int argb = pixels[y * WIDTH + x];
+                row[x * 4] = (byte) (argb >> 16);
+                row[x * 4 + 1] = (byte) (argb >> 8);
+                row[x * 4 + 2] = (byte) argb;
+                row[x * 4 + 3] = (byte) (argb >>> 24);
+            }
+            int filter = y % 3;//不过滤、左、上
+            raw.write(filter);
+            for (int i = 0; i < row.length; i++) {
+                int reference = filter == 1 ? (i >= 4 ? row[i - 4] : 0) : (filter == 2 ? previous[i] : 0);
+                raw.write(row[i] - reference);
+            }
+            previous = row;
+        }
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        DeflaterOutputStream deflater = new DeflaterOutputStream(compressed);
+        deflater.write(raw.toByteArray());
+        deflater.close();
+
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        DataOutputStream os = new DataOutputStream(png);
+        os.writeLong(0x89504E470D0A1A0AL);
+        ByteBuffer ihdr = ByteBuffer.allocate(13);
+        ihdr.putInt(WIDTH).putInt(HEIGHT).put((byte) 8).put((byte) 6);
+        writeChunk(os, "IHDR", ihdr.array());
+        writeChunk(os, "IDAT", compressed.toByteArray());
+        writeChunk(os, "IEND", new byte[0]);
+        return png.toByteArray();
+    }
+
+    private void writeChunk(DataOutputStream os, String type, byte[] data) throws IOException {
+        os.writeInt(data.length);
+        os.writeBytes(type);
+        os.write(data);
+        CRC32 crc = new CRC32();
+        crc.update(type.getBytes("US-ASCII"));
+        crc.update(data);
+        os.writeInt((int) crc.getValue());
+    }
+}